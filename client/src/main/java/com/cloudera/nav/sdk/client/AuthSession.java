@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+
+import java.net.HttpCookie;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Authentication state shared by the requests to one Navigator server. The
+ * first requests authenticate with HTTP Basic credentials. The cookies set
+ * by an authenticated response, e.g. the session cookie, are sent instead
+ * of the credentials with later requests so that the server does not have
+ * to authenticate every request again. A request rejected with 401 despite
+ * the cookies invalidates them and is sent again with the credentials.
+ *
+ * Instances are thread-safe.
+ */
+public class AuthSession {
+
+  private final String basicAuthorization;
+  private final boolean useCookies;
+  private final Map<String, String> cookies = Maps.newLinkedHashMap();
+
+  /**
+   * @param config supplies the credentials and whether cookies are reused,
+   *               see {@link ClientConfig#isSessionCookies()}
+   */
+  public AuthSession(ClientConfig config) {
+    String plainCreds = String.format("%s:%s", config.getUsername(),
+        config.getPassword());
+    this.basicAuthorization = "Basic " +
+        new String(Base64.encodeBase64(plainCreds.getBytes()));
+    this.useCookies = config.isSessionCookies();
+  }
+
+  /**
+   * @return value of the Authorization header for the configured credentials
+   */
+  public String getBasicAuthorization() {
+    return basicAuthorization;
+  }
+
+  /**
+   * @return value of the Cookie header to authenticate the next request
+   *         with, or null if the credentials have to be sent
+   */
+  public synchronized String getCookieHeader() {
+    if (cookies.isEmpty()) {
+      return null;
+    }
+    return Joiner.on("; ").withKeyValueSeparator("=").join(cookies);
+  }
+
+  /**
+   * Remember the cookies set by an authenticated response
+   *
+   * @param setCookieHeaders values of the Set-Cookie headers, may be null
+   */
+  public void captureCookies(List<String> setCookieHeaders) {
+    if (!useCookies || setCookieHeaders == null) {
+      return;
+    }
+    for (String header : setCookieHeaders) {
+      List<HttpCookie> parsed;
+      try {
+        parsed = HttpCookie.parse(header);
+      } catch (IllegalArgumentException e) {
+        continue;
+      }
+      synchronized (this) {
+        for (HttpCookie cookie : parsed) {
+          if (cookie.getMaxAge() == 0) {
+            cookies.remove(cookie.getName());
+          } else {
+            cookies.put(cookie.getName(), cookie.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Forget the cookies after a request authenticated with them was rejected.
+   * Cookies that were replaced since the request was sent are kept.
+   *
+   * @param cookieHeader Cookie header the rejected request was sent with
+   */
+  public synchronized void invalidate(String cookieHeader) {
+    if (cookieHeader.equals(getCookieHeader())) {
+      cookies.clear();
+    }
+  }
+}
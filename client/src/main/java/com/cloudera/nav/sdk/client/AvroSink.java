@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Writes results to Avro container files named
+ * prefix-entities-00000.avro and so on, compressed block by block with the
+ * codec of the SinkOptions.
+ *
+ * The attributes of entities and relations differ by source and type, so
+ * the schema is derived from the JSON value types rather than from the
+ * attributes: each result is a record with its identity and a map of all of
+ * its attributes, whose values are nested Value records holding a null,
+ * boolean, long, double, string, array or map.
+ */
+public class AvroSink extends RollingSink {
+
+  static final String EXTENSION = ".avro";
+
+  private static final String NAMESPACE = "com.cloudera.nav.sdk.avro";
+  private static final String VALUE_SCHEMA = "{\"type\":\"record\"," +
+      "\"name\":\"Value\",\"fields\":[{\"name\":\"value\",\"type\":[\"null\"," +
+      "\"boolean\",\"long\",\"double\",\"string\"," +
+      "{\"type\":\"array\",\"items\":\"Value\"}," +
+      "{\"type\":\"map\",\"values\":\"Value\"}]}]}";
+
+  private final CodecFactory codec;
+
+  public AvroSink(File directory, String prefix) {
+    this(directory, prefix, new SinkOptions());
+  }
+
+  public AvroSink(File directory, String prefix, SinkOptions options) {
+    super(directory, prefix, EXTENSION, options);
+    this.codec = "deflate".equals(options.getAvroCodec()) ?
+        CodecFactory.deflateCodec(options.getCompressionLevel()) :
+        CodecFactory.fromString(options.getAvroCodec());
+  }
+
+  /**
+   * @return schema of the records written for the given type
+   */
+  public static Schema getSchema(MetadataType type) {
+    String name = type == MetadataType.ENTITIES ? "Entity" : "Relation";
+    return new Schema.Parser().parse("{\"type\":\"record\",\"name\":\"" +
+        name + "\",\"namespace\":\"" + NAMESPACE + "\",\"fields\":[" +
+        "{\"name\":\"identity\",\"type\":[\"null\",\"string\"]}," +
+        "{\"name\":\"attributes\",\"type\":{\"type\":\"map\",\"values\":" +
+        VALUE_SCHEMA + "}}]}");
+  }
+
+  @Override
+  protected FileWriter newFileWriter(MetadataType type, OutputStream out)
+      throws IOException {
+    final Schema schema = getSchema(type);
+    final Schema valueSchema = schema.getField("attributes").schema()
+        .getValueType();
+    final DataFileWriter<GenericRecord> writer = new DataFileWriter<>(
+        new GenericDatumWriter<GenericRecord>(schema));
+    writer.setCodec(codec);
+    writer.create(schema, out);
+    return new FileWriter() {
+      @Override
+      public void write(Map<String, Object> result) throws IOException {
+        GenericRecord record = new GenericData.Record(schema);
+        Object identity = result.get("identity");
+        record.put("identity", identity == null ? null : identity.toString());
+        record.put("attributes", toValueMap(valueSchema, result));
+        writer.append(record);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        writer.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    };
+  }
+
+  private static Map<String, GenericRecord> toValueMap(Schema valueSchema,
+                                                       Map<?, ?> map) {
+    Map<String, GenericRecord> values =
+        Maps.newHashMapWithExpectedSize(map.size());
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      values.put(String.valueOf(entry.getKey()),
+          toValue(valueSchema, entry.getValue()));
+    }
+    return values;
+  }
+
+  private static GenericRecord toValue(Schema valueSchema, Object value) {
+    Object converted;
+    if (value == null || value instanceof Boolean ||
+        value instanceof String || value instanceof Double) {
+      converted = value;
+    } else if (value instanceof Integer || value instanceof Long ||
+        value instanceof Short || value instanceof Byte) {
+      converted = ((Number) value).longValue();
+    } else if (value instanceof Float) {
+      converted = ((Float) value).doubleValue();
+    } else if (value instanceof Map) {
+      converted = toValueMap(valueSchema, (Map<?, ?>) value);
+    } else if (value instanceof Iterable) {
+      List<GenericRecord> items = Lists.newArrayList();
+      for (Object item : (Iterable<?>) value) {
+        items.add(toValue(valueSchema, item));
+      }
+      converted = items;
+    } else {
+      converted = value.toString();
+    }
+    GenericRecord record = new GenericData.Record(valueSchema);
+    record.put("value", converted);
+    return record;
+  }
+}
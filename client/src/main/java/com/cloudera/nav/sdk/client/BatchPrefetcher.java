@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the pages of one or more PagingCursors on background threads while
+ * the consumer is still processing earlier pages. Pages from different
+ * cursors are handed out in the order in which they arrive. At most maxPages
+ * fetched pages are buffered; the background fetches wait for the consumer
+ * once the buffer is full.
+ *
+ * Fetching stops when all cursors are exhausted, when cancel() is called, or
+ * when the owner of the prefetcher (usually the iterator handing out the
+ * pages) has been garbage collected without being closed.
+ */
+class BatchPrefetcher {
+
+  static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("nav-extraction-%d")
+      .build();
+
+  private static final long OFFER_INTERVAL_MS = 1000L;
+
+  private final BlockingQueue<Page> pages;
+  private final WeakReference<Object> owner;
+  private final List<Future<?>> futures;
+  private int activeCursors;
+  private volatile boolean cancelled;
+
+  /**
+   * @param cursors cursors to fetch pages from, each is driven by its own
+   *                task and must not be used by any other thread while the
+   *                prefetcher is running
+   * @param maxPages maximum number of fetched pages waiting to be consumed
+   * @param executor executor to run the fetches on, dedicated threads are
+   *                 used if null
+   * @param owner object whose reachability keeps the fetch going
+   */
+  BatchPrefetcher(List<PagingCursor> cursors, int maxPages,
+                  ExecutorService executor, Object owner) {
+    this.pages = new ArrayBlockingQueue<>(maxPages);
+    this.owner = new WeakReference<>(owner);
+    this.activeCursors = cursors.size();
+    this.futures = Lists.newArrayListWithCapacity(cursors.size());
+    ExecutorService dedicated = null;
+    if (executor == null) {
+      dedicated = Executors.newFixedThreadPool(cursors.size(), THREAD_FACTORY);
+      executor = dedicated;
+    }
+    for (PagingCursor cursor : cursors) {
+      futures.add(executor.submit(new Fetcher(cursor)));
+    }
+    if (dedicated != null) {
+      dedicated.shutdown();
+    }
+  }
+
+  /**
+   * Wait for the next page. Errors raised while fetching are re-thrown here.
+   *
+   * @return the next page, or an empty list once all pages have been fetched
+   */
+  List<Map<String, Object>> take() {
+    while (activeCursors > 0 && !cancelled) {
+      Page page = Uninterruptibles.takeUninterruptibly(pages);
+      if (page.error != null) {
+        cancel();
+        throw Throwables.propagate(page.error);
+      }
+      if (!page.results.isEmpty()) {
+        return page.results;
+      }
+      // the cursor that sent the empty page has been exhausted
+      activeCursors--;
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Stop fetching and discard any fetched pages. Requests that are already
+   * in progress are allowed to finish but their results are dropped.
+   */
+  void cancel() {
+    cancelled = true;
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+    pages.clear();
+  }
+
+  private boolean offer(Page page) throws InterruptedException {
+    while (!pages.offer(page, OFFER_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+      if (cancelled || owner.get() == null) {
+        return false;
+      }
+    }
+    return !cancelled;
+  }
+
+  /**
+   * Fetches all pages of a single cursor, ending with an empty page
+   */
+  private class Fetcher implements Runnable {
+
+    private final PagingCursor cursor;
+
+    Fetcher(PagingCursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<Map<String, Object>> results;
+        do {
+          results = cursor.nextPage();
+          if (!offer(new Page(results, null))) {
+            return;
+          }
+        } while (!results.isEmpty());
+      } catch (InterruptedException e) {
+        // cancelled
+      } catch (Throwable t) {
+        try {
+          offer(new Page(null, t));
+        } catch (InterruptedException e) {
+          // cancelled
+        }
+      }
+    }
+  }
+
+  private static class Page {
+    private final List<Map<String, Object>> results;
+    private final Throwable error;
+
+    Page(List<Map<String, Object>> results, Throwable error) {
+      this.results = results;
+      this.error = error;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.client.ExtractionCheckpoint.Position;
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Keeps the ExtractionCheckpoint of an extraction up to date while its
+ * results are consumed and writes it to a local file. Updates are written
+ * at most once per interval, each write replaces the file atomically.
+ */
+class Checkpointer {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final File file;
+  private final long intervalMs;
+  private final ExtractionCheckpoint checkpoint;
+  private long lastWrite;
+  private boolean dirty;
+
+  /**
+   * @param file file the checkpoint is written to
+   * @param intervalMs minimum time between two writes
+   * @param checkpoint initial state of the extraction
+   */
+  Checkpointer(File file, long intervalMs, ExtractionCheckpoint checkpoint) {
+    this.file = file;
+    this.intervalMs = intervalMs;
+    this.checkpoint = checkpoint;
+  }
+
+  /**
+   * Read the checkpoint stored in the given file
+   */
+  static ExtractionCheckpoint read(File file) {
+    try {
+      return MAPPER.readValue(file, ExtractionCheckpoint.class);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  ExtractionCheckpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * @return copy of the position the results of the given type are read at
+   */
+  synchronized Position getPosition(MetadataType type) {
+    Position position = position(type);
+    Position copy = new Position();
+    copy.setPartition(position.getPartition());
+    copy.setCursorMark(position.getCursorMark());
+    copy.setOffset(position.getOffset());
+    copy.setEmitted(position.getEmitted());
+    copy.setDone(position.isDone());
+    return copy;
+  }
+
+  /**
+   * Record the position of the next result of the given type to read. The
+   * checkpoint is written if the interval has passed since the last write.
+   */
+  synchronized void update(MetadataType type, int partition,
+                           String cursorMark, int offset, long emitted) {
+    Position position = position(type);
+    position.setPartition(partition);
+    position.setCursorMark(cursorMark);
+    position.setOffset(offset);
+    position.setEmitted(emitted);
+    dirty = true;
+    if (System.currentTimeMillis() - lastWrite >= intervalMs) {
+      write();
+    }
+  }
+
+  /**
+   * Record that all results of the given type have been read and write the
+   * checkpoint
+   */
+  synchronized void done(MetadataType type, long emitted) {
+    Position position = position(type);
+    position.setEmitted(emitted);
+    position.setDone(true);
+    write();
+  }
+
+  /**
+   * Write the checkpoint if it has changed since the last write
+   */
+  synchronized void flush() {
+    if (dirty) {
+      write();
+    }
+  }
+
+  /**
+   * Write the checkpoint
+   */
+  synchronized void write() {
+    try {
+      LocalFiles.writeJsonAtomically(MAPPER, checkpoint, file);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    lastWrite = System.currentTimeMillis();
+    dirty = false;
+  }
+
+  private Position position(MetadataType type) {
+    switch (type) {
+      case ENTITIES:
+        return checkpoint.getEntities();
+      case RELATIONS:
+        return checkpoint.getRelations();
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+  }
+}
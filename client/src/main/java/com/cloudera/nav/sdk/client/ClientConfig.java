@@ -15,8 +15,12 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.google.common.base.Preconditions;
+
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.TrustManager;
@@ -28,6 +32,22 @@ import org.apache.hadoop.conf.Configuration;
  */
 public class ClientConfig {
 
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+  public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+  public static final long DEFAULT_CONNECTION_KEEP_ALIVE_MS = 60000L;
+  public static final long DEFAULT_SOURCE_CACHE_TTL_MS = 60000L;
+  public static final long DEFAULT_SOURCE_MISS_TTL_MS = 60000L;
+  public static final int DEFAULT_COMPRESSION_LEVEL =
+      Deflater.DEFAULT_COMPRESSION;
+  public static final int DEFAULT_CONNECT_TIMEOUT_MS = 30000;
+  public static final int DEFAULT_READ_TIMEOUT_MS = 300000;
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final long DEFAULT_RETRY_BACKOFF_MS = 200L;
+  public static final long DEFAULT_MAX_RETRY_BACKOFF_MS = 10000L;
+  public static final int DEFAULT_INITIAL_CONCURRENCY = 4;
+  public static final int DEFAULT_MIN_CONCURRENCY = 1;
+  public static final int DEFAULT_MAX_CONCURRENCY = 20;
+
   private String navigatorUrl;
   private URI metadataParentUri;
   private String applicationUrl;
@@ -43,6 +63,29 @@ public class ClientConfig {
   private String sslTrustStoreType;
   private String sslTrustStoreLocation;
   private String sslTrustStorePassword;
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+  private long connectionKeepAliveMs = DEFAULT_CONNECTION_KEEP_ALIVE_MS;
+  private boolean compressResponses = true;
+  private boolean compressRequests;
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private long sourceCacheTtlMs = DEFAULT_SOURCE_CACHE_TTL_MS;
+  private long sourceMissTtlMs = DEFAULT_SOURCE_MISS_TTL_MS;
+  private String sourceCacheFile;
+  private boolean coalesceRequests;
+  private int connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+  private int readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private long retryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+  private long maxRetryBackoffMs = DEFAULT_MAX_RETRY_BACKOFF_MS;
+  private double hedgePercentile;
+  private boolean adaptiveConcurrency;
+  private int initialConcurrency = DEFAULT_INITIAL_CONCURRENCY;
+  private int minConcurrency = DEFAULT_MIN_CONCURRENCY;
+  private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+  private ConcurrencyLimiter concurrencyLimiter;
+  private boolean sessionCookies = true;
+  private ExecutorService asyncExecutor;
 
   /**
    * @return Location of the Navigator API server
@@ -226,4 +269,331 @@ public class ClientConfig {
   public void setSslTrustStoreType(String sslTrustStoreType) {
     this.sslTrustStoreType = sslTrustStoreType;
   }
+
+  /**
+   * @return maximum number of pooled connections kept open to the Navigator
+   *         server (a single route)
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * @return maximum number of pooled connections across all routes
+   */
+  public int getMaxTotalConnections() {
+    return maxTotalConnections;
+  }
+
+  public void setMaxTotalConnections(int maxTotalConnections) {
+    this.maxTotalConnections = maxTotalConnections;
+  }
+
+  /**
+   * @return how long an idle pooled connection is kept alive when the server
+   *         does not specify a keep-alive timeout, in milliseconds
+   */
+  public long getConnectionKeepAliveMs() {
+    return connectionKeepAliveMs;
+  }
+
+  public void setConnectionKeepAliveMs(long connectionKeepAliveMs) {
+    this.connectionKeepAliveMs = connectionKeepAliveMs;
+  }
+
+  /**
+   * @return whether gzip encoded responses are requested from Navigator
+   */
+  public boolean isCompressResponses() {
+    return compressResponses;
+  }
+
+  /**
+   * Ask Navigator for gzip encoded responses. Responses are decoded while
+   * they are read. Enabled by default.
+   */
+  public void setCompressResponses(boolean compressResponses) {
+    this.compressResponses = compressResponses;
+  }
+
+  /**
+   * @return whether metadata written to Navigator is sent gzip encoded
+   */
+  public boolean isCompressRequests() {
+    return compressRequests;
+  }
+
+  /**
+   * Send gzip encoded metadata to Navigator. Only enable when the Navigator
+   * server accepts gzip encoded requests.
+   */
+  public void setCompressRequests(boolean compressRequests) {
+    this.compressRequests = compressRequests;
+  }
+
+  /**
+   * @return gzip level used for requests, see java.util.zip.Deflater
+   */
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * @return how long the Sources retrieved from Navigator are cached, in
+   *         milliseconds
+   */
+  public long getSourceCacheTtlMs() {
+    return sourceCacheTtlMs;
+  }
+
+  public void setSourceCacheTtlMs(long sourceCacheTtlMs) {
+    this.sourceCacheTtlMs = sourceCacheTtlMs;
+  }
+
+  /**
+   * @return how long a Source lookup that found nothing is remembered before
+   *         the same lookup reloads the Sources again, in milliseconds
+   */
+  public long getSourceMissTtlMs() {
+    return sourceMissTtlMs;
+  }
+
+  public void setSourceMissTtlMs(long sourceMissTtlMs) {
+    this.sourceMissTtlMs = sourceMissTtlMs;
+  }
+
+  /**
+   * @return local file the cached Sources are persisted to, or null
+   */
+  public String getSourceCacheFile() {
+    return sourceCacheFile;
+  }
+
+  /**
+   * Persist the cached Sources to the given local file so that new clients
+   * start with the Sources cached by earlier ones, as long as they are not
+   * older than the source cache TTL.
+   */
+  public void setSourceCacheFile(String sourceCacheFile) {
+    this.sourceCacheFile = sourceCacheFile;
+  }
+
+  /**
+   * @return true if identical concurrent requests share one request to
+   *         Navigator
+   */
+  public boolean isCoalesceRequests() {
+    return coalesceRequests;
+  }
+
+  /**
+   * Let concurrent calls for the same batch of entities or relations, or
+   * for all sources, share a single request to Navigator and its decoded
+   * response. Calls are identical if they go to the same URL with the same
+   * query, limit and cursorMark. Shared batches must not be modified by the
+   * caller. Batches of EntityRecords or RelationRecords, which are not
+   * thread-safe, are never shared. Defaults to false.
+   */
+  public void setCoalesceRequests(boolean coalesceRequests) {
+    this.coalesceRequests = coalesceRequests;
+  }
+
+  /**
+   * @return how long to wait for a connection to Navigator to be established,
+   *         in milliseconds, 0 for no timeout
+   */
+  public int getConnectTimeoutMs() {
+    return connectTimeoutMs;
+  }
+
+  public void setConnectTimeoutMs(int connectTimeoutMs) {
+    this.connectTimeoutMs = connectTimeoutMs;
+  }
+
+  /**
+   * @return how long to wait for data from Navigator before a request fails,
+   *         in milliseconds, 0 for no timeout
+   */
+  public int getReadTimeoutMs() {
+    return readTimeoutMs;
+  }
+
+  public void setReadTimeoutMs(int readTimeoutMs) {
+    this.readTimeoutMs = readTimeoutMs;
+  }
+
+  /**
+   * @return how often a failed paging request is retried
+   */
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Retry paging requests that fail with an I/O error, a timeout or a server
+   * error this many times. Paging requests are idempotent, so a retry returns
+   * the same page. Set to 0 to disable retries.
+   */
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * @return backoff before the first retry, in milliseconds
+   */
+  public long getRetryBackoffMs() {
+    return retryBackoffMs;
+  }
+
+  /**
+   * The backoff doubles with every retry of the same request, up to the
+   * maximum retry backoff. The actual wait is a random time up to the
+   * backoff so that clients that failed together do not retry together.
+   */
+  public void setRetryBackoffMs(long retryBackoffMs) {
+    this.retryBackoffMs = retryBackoffMs;
+  }
+
+  /**
+   * @return upper bound of the backoff between retries, in milliseconds
+   */
+  public long getMaxRetryBackoffMs() {
+    return maxRetryBackoffMs;
+  }
+
+  public void setMaxRetryBackoffMs(long maxRetryBackoffMs) {
+    this.maxRetryBackoffMs = maxRetryBackoffMs;
+  }
+
+  /**
+   * @return latency percentile after which a paging request is hedged, 0 if
+   *         requests are not hedged
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  /**
+   * Send a second, identical paging request when the first one has taken
+   * longer than the given percentile of recent paging latencies, e.g. 0.95,
+   * and use whichever response arrives first. This trades a few duplicate
+   * requests for a shorter tail latency. Streamed pages are never hedged.
+   * Defaults to 0, no hedging.
+   */
+  public void setHedgePercentile(double hedgePercentile) {
+    Preconditions.checkArgument(hedgePercentile >= 0 && hedgePercentile < 1,
+        "Hedge percentile must be in [0, 1)");
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * @return whether requests to Navigator are limited by an adaptive
+   *         concurrency limit
+   */
+  public boolean isAdaptiveConcurrency() {
+    return adaptiveConcurrency;
+  }
+
+  /**
+   * Limit the number of concurrent requests sent to Navigator by all clients
+   * and metadata writers in the process with an adaptive limit. The limit
+   * grows while latency stays flat and shrinks when latency rises or
+   * Navigator responds with server errors or 429. Defaults to false.
+   */
+  public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+    this.adaptiveConcurrency = adaptiveConcurrency;
+  }
+
+  /**
+   * @return adaptive concurrency limit before any request has completed
+   */
+  public int getInitialConcurrency() {
+    return initialConcurrency;
+  }
+
+  public void setInitialConcurrency(int initialConcurrency) {
+    this.initialConcurrency = initialConcurrency;
+  }
+
+  /**
+   * @return lowest the adaptive concurrency limit can shrink to
+   */
+  public int getMinConcurrency() {
+    return minConcurrency;
+  }
+
+  public void setMinConcurrency(int minConcurrency) {
+    this.minConcurrency = minConcurrency;
+  }
+
+  /**
+   * @return highest the adaptive concurrency limit can grow to
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * @return limiter used instead of the shared one, or null
+   */
+  public ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Use the given limiter for all requests instead of the limiter shared by
+   * the process, e.g. to share it between a subset of clients only
+   */
+  public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * @return whether the session cookie of an authenticated response is sent
+   *         instead of the credentials with later requests
+   */
+  public boolean isSessionCookies() {
+    return sessionCookies;
+  }
+
+  /**
+   * Authenticate requests with the cookies Navigator set on an earlier
+   * authenticated response, so that Navigator does not have to check the
+   * credentials, e.g. against LDAP, for every request. When Navigator
+   * rejects the cookies the request is sent again with the credentials.
+   * Enabled by default.
+   */
+  public void setSessionCookies(boolean sessionCookies) {
+    this.sessionCookies = sessionCookies;
+  }
+
+  /**
+   * @return executor the async methods of NavApiCient run on, or null
+   */
+  public ExecutorService getAsyncExecutor() {
+    return asyncExecutor;
+  }
+
+  /**
+   * Run the async methods of NavApiCient, e.g. getEntityBatchAsync, on the
+   * given executor. The executor is not shut down when the client is
+   * closed. By default every client has a pool with as many threads as
+   * connections per route, since more requests than that cannot be sent
+   * at once anyway.
+   */
+  public void setAsyncExecutor(ExecutorService asyncExecutor) {
+    this.asyncExecutor = asyncExecutor;
+  }
 }
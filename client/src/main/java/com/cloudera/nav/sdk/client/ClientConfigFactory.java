@@ -41,6 +41,17 @@ public class ClientConfigFactory {
   public static final String DISABLE_SSL_VALIDATION = "disable_ssl_validation";
   public static final String SSL_KEYSTORE_LOCATION = "ssl_truststore_location";
   public static final String SSL_KEYSTORE_PASSWORD = "ssl_truststore_password";
+  public static final String MAX_CONNECTIONS_PER_ROUTE =
+      "max_connections_per_route";
+  public static final String MAX_TOTAL_CONNECTIONS = "max_total_connections";
+  public static final String CONNECTION_KEEP_ALIVE_MS =
+      "connection_keep_alive_ms";
+  public static final String COMPRESS_RESPONSES = "compress_responses";
+  public static final String COMPRESS_REQUESTS = "compress_requests";
+  public static final String COMPRESSION_LEVEL = "compression_level";
+  public static final String SOURCE_CACHE_TTL_MS = "source_cache_ttl_ms";
+  public static final String SOURCE_MISS_TTL_MS = "source_miss_ttl_ms";
+  public static final String SOURCE_CACHE_FILE = "source_cache_file";
 
   /**
    * Create a PluginConfiguration from the properties contained in the
@@ -68,6 +79,21 @@ public class ClientConfigFactory {
           null));
       config.setSSLTrustStorePassword(props.getString(SSL_KEYSTORE_PASSWORD,
           null));
+      config.setMaxConnectionsPerRoute(props.getInt(MAX_CONNECTIONS_PER_ROUTE,
+          ClientConfig.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+      config.setMaxTotalConnections(props.getInt(MAX_TOTAL_CONNECTIONS,
+          ClientConfig.DEFAULT_MAX_TOTAL_CONNECTIONS));
+      config.setConnectionKeepAliveMs(props.getLong(CONNECTION_KEEP_ALIVE_MS,
+          ClientConfig.DEFAULT_CONNECTION_KEEP_ALIVE_MS));
+      config.setCompressResponses(props.getBoolean(COMPRESS_RESPONSES, true));
+      config.setCompressRequests(props.getBoolean(COMPRESS_REQUESTS, false));
+      config.setCompressionLevel(props.getInt(COMPRESSION_LEVEL,
+          ClientConfig.DEFAULT_COMPRESSION_LEVEL));
+      config.setSourceCacheTtlMs(props.getLong(SOURCE_CACHE_TTL_MS,
+          ClientConfig.DEFAULT_SOURCE_CACHE_TTL_MS));
+      config.setSourceMissTtlMs(props.getLong(SOURCE_MISS_TTL_MS,
+          ClientConfig.DEFAULT_SOURCE_MISS_TTL_MS));
+      config.setSourceCacheFile(props.getString(SOURCE_CACHE_FILE, null));
       return config;
     } catch (ConfigurationException e) {
       throw Throwables.propagate(e);
@@ -94,6 +120,36 @@ public class ClientConfigFactory {
         props.get(SSL_KEYSTORE_LOCATION).toString() : null);
     config.setSSLTrustStorePassword(props.containsKey(SSL_KEYSTORE_PASSWORD) ?
         props.get(SSL_KEYSTORE_PASSWORD).toString() : null);
+    config.setMaxConnectionsPerRoute(getInt(props, MAX_CONNECTIONS_PER_ROUTE,
+        ClientConfig.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+    config.setMaxTotalConnections(getInt(props, MAX_TOTAL_CONNECTIONS,
+        ClientConfig.DEFAULT_MAX_TOTAL_CONNECTIONS));
+    config.setConnectionKeepAliveMs(getLong(props, CONNECTION_KEEP_ALIVE_MS,
+        ClientConfig.DEFAULT_CONNECTION_KEEP_ALIVE_MS));
+    config.setCompressResponses(props.containsKey(COMPRESS_RESPONSES) ?
+        Boolean.valueOf(props.get(COMPRESS_RESPONSES).toString()) : true);
+    config.setCompressRequests(props.containsKey(COMPRESS_REQUESTS) ?
+        Boolean.valueOf(props.get(COMPRESS_REQUESTS).toString()) : false);
+    config.setCompressionLevel(getInt(props, COMPRESSION_LEVEL,
+        ClientConfig.DEFAULT_COMPRESSION_LEVEL));
+    config.setSourceCacheTtlMs(getLong(props, SOURCE_CACHE_TTL_MS,
+        ClientConfig.DEFAULT_SOURCE_CACHE_TTL_MS));
+    config.setSourceMissTtlMs(getLong(props, SOURCE_MISS_TTL_MS,
+        ClientConfig.DEFAULT_SOURCE_MISS_TTL_MS));
+    config.setSourceCacheFile(props.containsKey(SOURCE_CACHE_FILE) ?
+        props.get(SOURCE_CACHE_FILE).toString() : null);
     return config;
   }
+
+  private static int getInt(Map<String, Object> props, String key,
+                            int defaultValue) {
+    return props.containsKey(key) ?
+        Integer.parseInt(props.get(key).toString()) : defaultValue;
+  }
+
+  private static long getLong(Map<String, Object> props, String key,
+                              long defaultValue) {
+    return props.containsKey(key) ?
+        Long.parseLong(props.get(key).toString()) : defaultValue;
+  }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Maps;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits the number of concurrent requests to a Navigator server with an
+ * additive increase, multiplicative decrease (AIMD) algorithm. The limit
+ * grows by about one for every limit's worth of requests that complete
+ * without their latency rising above the tolerated multiple of the baseline
+ * latency, the lowest latency of the last BASELINE_WINDOW successful
+ * requests. It shrinks by the backoff ratio when a request fails with
+ * a server error, is throttled (429), times out, or is too slow. Only
+ * requests that started after the last decrease can decrease the limit
+ * again, so a burst of failures of requests sent together counts once.
+ *
+ * The baseline only looks at recent requests, so a single unusually fast
+ * request, such as a small probe query, stops counting after a while, and
+ * a lasting change of the normal latency becomes the new baseline.
+ *
+ * Clients and writers configured for adaptive concurrency share one limiter
+ * per server, see {@link #forServer(ClientConfig, String)}.
+ */
+public class ConcurrencyLimiter {
+
+  public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+  public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+  private static final ConcurrentMap<String, ConcurrencyLimiter> SHARED =
+      Maps.newConcurrentMap();
+  // number of successful requests the baseline latency is the minimum of
+  @VisibleForTesting
+  static final int BASELINE_WINDOW = 20;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double latencyTolerance;
+  private final Ticker ticker;
+  private double limit;
+  private int inFlight;
+  // the window is kept as two halves, the older one is dropped when the
+  // newer one is full
+  private long windowMinNanos = Long.MAX_VALUE;
+  private long previousMinNanos = Long.MAX_VALUE;
+  private int windowSamples;
+  private long lastDecreaseNanos;
+
+  public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+    this(initialLimit, minLimit, maxLimit, DEFAULT_BACKOFF_RATIO,
+        DEFAULT_LATENCY_TOLERANCE);
+  }
+
+  /**
+   * @param initialLimit limit before any request has completed
+   * @param minLimit lowest the limit can shrink to
+   * @param maxLimit highest the limit can grow to
+   * @param backoffRatio factor the limit is multiplied with on overload
+   * @param latencyTolerance multiple of the baseline latency above which a
+   *                         request counts as overload
+   */
+  public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                            double backoffRatio, double latencyTolerance) {
+    this(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance,
+        Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                     double backoffRatio, double latencyTolerance,
+                     Ticker ticker) {
+    Preconditions.checkArgument(0 < minLimit && minLimit <= initialLimit &&
+        initialLimit <= maxLimit, "Expected 0 < min <= initial <= max limit");
+    Preconditions.checkArgument(backoffRatio > 0 && backoffRatio < 1,
+        "Backoff ratio must be in (0, 1)");
+    Preconditions.checkArgument(latencyTolerance > 1,
+        "Latency tolerance must be greater than 1");
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyTolerance = latencyTolerance;
+    this.ticker = ticker;
+    this.lastDecreaseNanos = ticker.read();
+  }
+
+  /**
+   * The limiter shared by all clients and writers in the process that talk to
+   * the same server as the given url, or the limiter set in the
+   * configuration. The shared limiter is created with the limits of the
+   * first configuration that asks for it.
+   *
+   * @param config client configuration
+   * @param url any url of the server
+   * @return the limiter, or null if adaptive concurrency is disabled
+   */
+  public static ConcurrencyLimiter forServer(ClientConfig config,
+                                             String url) {
+    if (config.getConcurrencyLimiter() != null) {
+      return config.getConcurrencyLimiter();
+    }
+    if (!config.isAdaptiveConcurrency()) {
+      return null;
+    }
+    URI uri = URI.create(url);
+    String server = (uri.getScheme() + "://" + uri.getAuthority())
+        .toLowerCase();
+    ConcurrencyLimiter limiter = SHARED.get(server);
+    if (limiter == null) {
+      SHARED.putIfAbsent(server, new ConcurrencyLimiter(
+          config.getInitialConcurrency(), config.getMinConcurrency(),
+          config.getMaxConcurrency()));
+      limiter = SHARED.get(server);
+    }
+    return limiter;
+  }
+
+  /**
+   * Wait until fewer requests than the limit are in flight
+   *
+   * @return permit that must be released once the request completes
+   */
+  public Permit acquire() {
+    synchronized (this) {
+      try {
+        while (inFlight >= (int) limit) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+      inFlight++;
+    }
+    return new Permit(ticker.read());
+  }
+
+  /**
+   * @return current limit, rounded down
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * @return number of requests holding a permit
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return whether a response with the given HTTP status signals that the
+   *         server is overloaded
+   */
+  public static boolean isOverloadStatus(int status) {
+    return status >= 500 || status == 429;
+  }
+
+  private synchronized void release(long startNanos, boolean overloaded,
+                                    boolean sample) {
+    inFlight--;
+    if (sample) {
+      long now = ticker.read();
+      long latency = now - startNanos;
+      if (!overloaded) {
+        long baselineNanos = Math.min(windowMinNanos, previousMinNanos);
+        overloaded = baselineNanos != Long.MAX_VALUE &&
+            latency > baselineNanos * latencyTolerance;
+        addBaselineSample(latency);
+      }
+      if (overloaded) {
+        if (startNanos - lastDecreaseNanos >= 0) {
+          limit = Math.max(minLimit, limit * backoffRatio);
+          lastDecreaseNanos = now;
+        }
+      } else if (inFlight + 1 >= (int) limit) {
+        // only grow while the limit is actually in use
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+    }
+    notifyAll();
+  }
+
+  private void addBaselineSample(long latency) {
+    if (windowSamples == BASELINE_WINDOW / 2) {
+      previousMinNanos = windowMinNanos;
+      windowMinNanos = Long.MAX_VALUE;
+      windowSamples = 0;
+    }
+    windowMinNanos = Math.min(windowMinNanos, latency);
+    windowSamples++;
+  }
+
+  /**
+   * Permission to send one request. Exactly one of the release methods must
+   * be called once the request completes.
+   */
+  public class Permit {
+    private final long startNanos;
+
+    private Permit(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * The request succeeded, its latency is taken into account
+     */
+    public void release() {
+      ConcurrencyLimiter.this.release(startNanos, false, true);
+    }
+
+    /**
+     * The request failed because the server is overloaded
+     */
+    public void releaseOverloaded() {
+      ConcurrencyLimiter.this.release(startNanos, true, true);
+    }
+
+    /**
+     * The request failed for a reason unrelated to load, e.g. a bad request
+     */
+    public void releaseIgnored() {
+      ConcurrencyLimiter.this.release(startNanos, false, false);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.entities.EntityType;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * An extracted entity. See {@link MetadataRecord}.
+ */
+@JsonDeserialize(using = EntityRecord.Deserializer.class)
+public class EntityRecord extends MetadataRecord {
+
+  private static final String TYPE = "type";
+  private static final String SOURCE_TYPE = "sourceType";
+  private static final String SOURCE_ID = "sourceId";
+  private static final String ORIGINAL_NAME = "originalName";
+  private static final String PARENT_PATH = "parentPath";
+  private static final String DELETED = "deleted";
+  private static final Set<String> FIELDS = ImmutableSet.<String>builder()
+      .addAll(MetadataRecord.FIELDS)
+      .add(TYPE, SOURCE_TYPE, SOURCE_ID, ORIGINAL_NAME, PARENT_PATH, DELETED)
+      .build();
+
+  // EntityType or SourceType constants, or the raw value for unknown types
+  private Object type;
+  private Object sourceType;
+  private String sourceId;
+  private String originalName;
+  private String parentPath;
+  private Boolean deleted;
+
+  /**
+   * @return the type of the entity, or null if it is not an EntityType
+   */
+  public EntityType getType() {
+    return asEnum(EntityType.class, type);
+  }
+
+  /**
+   * @return the type of the entity as returned by Navigator
+   */
+  public String getTypeName() {
+    return toText(type);
+  }
+
+  /**
+   * @return the type of the source of the entity, or null if it is not a
+   *         SourceType
+   */
+  public SourceType getSourceType() {
+    return asEnum(SourceType.class, sourceType);
+  }
+
+  public String getSourceId() {
+    return sourceId;
+  }
+
+  public String getOriginalName() {
+    return originalName;
+  }
+
+  public String getParentPath() {
+    return parentPath;
+  }
+
+  public boolean isDeleted() {
+    return Boolean.TRUE.equals(deleted);
+  }
+
+  @Override
+  protected Set<String> getFieldNames() {
+    return FIELDS;
+  }
+
+  @Override
+  protected Object getField(String name) {
+    switch (name) {
+      case TYPE:
+        return getTypeName();
+      case SOURCE_TYPE:
+        return toText(sourceType);
+      case SOURCE_ID:
+        return sourceId;
+      case ORIGINAL_NAME:
+        return originalName;
+      case PARENT_PATH:
+        return parentPath;
+      case DELETED:
+        return deleted;
+      default:
+        return super.getField(name);
+    }
+  }
+
+  @Override
+  protected boolean readField(String name, JsonParser parser)
+      throws IOException {
+    if (name.equals(DELETED)) {
+      JsonToken token = parser.getCurrentToken();
+      if (token != JsonToken.VALUE_TRUE && token != JsonToken.VALUE_FALSE) {
+        return false;
+      }
+      deleted = token == JsonToken.VALUE_TRUE;
+      return true;
+    }
+    if (!isText(parser)) {
+      return false;
+    }
+    switch (name) {
+      case TYPE:
+        type = readEnum(EntityType.class, parser);
+        return true;
+      case SOURCE_TYPE:
+        sourceType = readEnum(SourceType.class, parser);
+        return true;
+      case SOURCE_ID:
+        sourceId = readText(parser);
+        return true;
+      case ORIGINAL_NAME:
+        originalName = readText(parser);
+        return true;
+      case PARENT_PATH:
+        parentPath = readText(parser);
+        return true;
+      default:
+        return super.readField(name, parser);
+    }
+  }
+
+  /**
+   * Reads EntityRecords from paging responses
+   */
+  public static class Deserializer extends JsonDeserializer<EntityRecord> {
+    @Override
+    public EntityRecord deserialize(JsonParser parser,
+                                    DeserializationContext context)
+        throws IOException {
+      EntityRecord record = new EntityRecord();
+      record.read(parser);
+      return record;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+/**
+ * Persisted state of an extraction that can be resumed: the markers and
+ * queries that define the extraction, and how far the entities and the
+ * relations have been read.
+ */
+class ExtractionCheckpoint {
+
+  private String startMarker;
+  private String endMarker;
+  private String marker;
+  private String entitiesQuery;
+  private String relationsQuery;
+  private Position entities = new Position();
+  private Position relations = new Position();
+
+  /**
+   * @return marker the extraction starts at, null for a full extraction
+   */
+  public String getStartMarker() {
+    return startMarker;
+  }
+
+  public void setStartMarker(String startMarker) {
+    this.startMarker = startMarker;
+  }
+
+  /**
+   * @return marker the extraction ends at, null for a full extraction
+   */
+  public String getEndMarker() {
+    return endMarker;
+  }
+
+  public void setEndMarker(String endMarker) {
+    this.endMarker = endMarker;
+  }
+
+  /**
+   * @return marker returned with the results of the extraction
+   */
+  public String getMarker() {
+    return marker;
+  }
+
+  public void setMarker(String marker) {
+    this.marker = marker;
+  }
+
+  public String getEntitiesQuery() {
+    return entitiesQuery;
+  }
+
+  public void setEntitiesQuery(String entitiesQuery) {
+    this.entitiesQuery = entitiesQuery;
+  }
+
+  public String getRelationsQuery() {
+    return relationsQuery;
+  }
+
+  public void setRelationsQuery(String relationsQuery) {
+    this.relationsQuery = relationsQuery;
+  }
+
+  public Position getEntities() {
+    return entities;
+  }
+
+  public void setEntities(Position entities) {
+    this.entities = entities;
+  }
+
+  public Position getRelations() {
+    return relations;
+  }
+
+  public void setRelations(Position relations) {
+    this.relations = relations;
+  }
+
+  /**
+   * The next result to read: the offset of the result in the page at the
+   * given cursorMark of the given query partition.
+   */
+  static class Position {
+    private int partition;
+    private String cursorMark = "*";
+    private int offset;
+    private long emitted;
+    private boolean done;
+
+    /**
+     * @return index of the query partition
+     */
+    public int getPartition() {
+      return partition;
+    }
+
+    public void setPartition(int partition) {
+      this.partition = partition;
+    }
+
+    /**
+     * @return cursorMark the page was requested with
+     */
+    public String getCursorMark() {
+      return cursorMark;
+    }
+
+    public void setCursorMark(String cursorMark) {
+      this.cursorMark = cursorMark;
+    }
+
+    /**
+     * @return offset of the result in its page
+     */
+    public int getOffset() {
+      return offset;
+    }
+
+    public void setOffset(int offset) {
+      this.offset = offset;
+    }
+
+    /**
+     * @return number of results returned before this one
+     */
+    public long getEmitted() {
+      return emitted;
+    }
+
+    public void setEmitted(long emitted) {
+      this.emitted = emitted;
+    }
+
+    /**
+     * @return whether all results have been read
+     */
+    public boolean isDone() {
+      return done;
+    }
+
+    public void setDone(boolean done) {
+      this.done = done;
+    }
+  }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options controlling how metadata is extracted by a MetadataExtractor. The
+ * defaults fetch every page synchronously on the consuming thread.
+ */
+public class ExtractionOptions {
+
+  public static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 1000L;
+  public static final int DEFAULT_MIN_PAGE_SIZE = 10;
+  public static final int DEFAULT_MAX_PAGE_SIZE = 5000;
+  public static final long DEFAULT_TARGET_PAGE_LATENCY_MS = 2000L;
+  public static final int DEFAULT_MAX_IN_MEMORY_IDENTITIES = 1000000;
+
+  private int prefetchPages;
+  private int partitionConcurrency = 1;
+  private ExecutorService executor;
+  private boolean streaming;
+  private int identityShards = 1;
+  private File checkpointFile;
+  private long checkpointIntervalMs = DEFAULT_CHECKPOINT_INTERVAL_MS;
+  private boolean probeRunIdRanges;
+  private boolean adaptivePageSize;
+  private int minPageSize = DEFAULT_MIN_PAGE_SIZE;
+  private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+  private long targetPageLatencyMs = DEFAULT_TARGET_PAGE_LATENCY_MS;
+  private long maxPageBytes;
+  private PagingMetrics pagingMetrics;
+  private long deadlineMs;
+  private boolean deduplicate;
+  private int maxInMemoryIdentities = DEFAULT_MAX_IN_MEMORY_IDENTITIES;
+  private File spillDirectory;
+
+  /**
+   * @return maximum number of pages fetched ahead of the consumer, or 0 if
+   *         pages are only fetched once the previous page has been consumed
+   */
+  public int getPrefetchPages() {
+    return prefetchPages;
+  }
+
+  /**
+   * Fetch up to the given number of pages in the background while the
+   * current page is being consumed. Iterators should be closed when
+   * iteration is abandoned early so the background fetch is cancelled.
+   *
+   * @param prefetchPages number of pages to fetch ahead, 0 to disable
+   */
+  public void setPrefetchPages(int prefetchPages) {
+    this.prefetchPages = prefetchPages;
+  }
+
+  /**
+   * @return number of query partitions fetched concurrently
+   */
+  public int getPartitionConcurrency() {
+    return partitionConcurrency;
+  }
+
+  /**
+   * Fetch up to the given number of query partitions at once. Incremental
+   * extractions split the extractorRunIds between two markers into
+   * partitions of MetadataResultIterator.MAX_QUERY_PARTITION_SIZE ids that
+   * are independent queries. When more than one partition is fetched at
+   * once, results of different partitions are interleaved.
+   *
+   * @param partitionConcurrency number of concurrent partition cursors, 1 to
+   *                             walk partitions one after another
+   */
+  public void setPartitionConcurrency(int partitionConcurrency) {
+    this.partitionConcurrency = partitionConcurrency;
+  }
+
+  /**
+   * @return executor for background fetches, null if each iterator uses its
+   *         own threads
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Run background fetches on the given executor instead of dedicated
+   * threads per iterator. The executor needs a thread for each concurrent
+   * cursor of every open iterator and is not shut down by the SDK.
+   *
+   * @param executor
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return whether results are decoded while pages are read
+   */
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * Decode results one at a time as the response of each page is read
+   * instead of decoding the whole page into memory first. Only applies when
+   * pages are fetched synchronously; prefetched and concurrently fetched
+   * pages are always decoded in full. The connection of the current page is
+   * held until the page has been consumed, so iterators should be closed
+   * when iteration is abandoned early.
+   *
+   * @param streaming
+   */
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * @return number of identity prefix shards full extractions are split into
+   */
+  public int getIdentityShards() {
+    return identityShards;
+  }
+
+  /**
+   * Split full extractions, which are not restricted to extractorRunIds, into
+   * disjoint shards by identity prefix (see
+   * QueryUtils.buildIdentityShards). The shards are independent queries that
+   * are fetched with the configured partition concurrency, so this only
+   * speeds up extraction together with a partition concurrency greater than
+   * one.
+   *
+   * @param identityShards 16 or 256, or 1 to extract with a single query
+   */
+  public void setIdentityShards(int identityShards) {
+    Preconditions.checkArgument(identityShards == 1 || identityShards == 16 ||
+        identityShards == 256, "Identity shards must be 1, 16 or 256");
+    this.identityShards = identityShards;
+  }
+
+  /**
+   * @return file extraction progress is checkpointed to, or null
+   */
+  public File getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  /**
+   * Periodically record the progress of extractions in the given file so
+   * that an interrupted extraction can be continued with
+   * MetadataExtractor.resumeExtraction. Every extraction started with these
+   * options replaces the checkpoint in the file. Checkpointed extractions
+   * fetch pages synchronously, they cannot be combined with prefetching or a
+   * partition concurrency greater than one.
+   *
+   * @param checkpointFile checkpoint file, null to disable checkpointing
+   */
+  public void setCheckpointFile(File checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /**
+   * @return minimum time between two checkpoint writes
+   */
+  public long getCheckpointIntervalMs() {
+    return checkpointIntervalMs;
+  }
+
+  /**
+   * Write the checkpoint at most once per interval while results are
+   * consumed. A resumed extraction repeats the results consumed since the
+   * last write.
+   *
+   * @param checkpointIntervalMs interval in milliseconds, 0 to write after
+   *                             every result
+   */
+  public void setCheckpointIntervalMs(long checkpointIntervalMs) {
+    this.checkpointIntervalMs = checkpointIntervalMs;
+  }
+
+  /**
+   * @return whether the extractorRunId range of every source is probed
+   *         before an incremental extraction
+   */
+  public boolean isProbeRunIdRanges() {
+    return probeRunIdRanges;
+  }
+
+  /**
+   * Before an incremental extraction pages through its results, send a
+   * single-row query for the extractorRunIds of each source and leave out
+   * the sources without results. This saves paging through empty partitions
+   * when most sources had no changes between the markers, at the cost of one
+   * small query per source. Checkpointed extractions are not probed, since
+   * the partitions they resume at must not change between runs.
+   *
+   * @param probeRunIdRanges
+   */
+  public void setProbeRunIdRanges(boolean probeRunIdRanges) {
+    this.probeRunIdRanges = probeRunIdRanges;
+  }
+
+  /**
+   * @return whether the page size is tuned to the target page latency
+   */
+  public boolean isAdaptivePageSize() {
+    return adaptivePageSize;
+  }
+
+  /**
+   * Start with the limit of the extractor and adjust the number of results
+   * requested per page after every page, between the minimum and maximum
+   * page size, so that pages take about the target latency. Narrow records
+   * end up in large pages and wide records in small ones.
+   *
+   * @param adaptivePageSize
+   */
+  public void setAdaptivePageSize(boolean adaptivePageSize) {
+    this.adaptivePageSize = adaptivePageSize;
+  }
+
+  public int getMinPageSize() {
+    return minPageSize;
+  }
+
+  /**
+   * @param minPageSize smallest page size of an adaptive page size
+   */
+  public void setMinPageSize(int minPageSize) {
+    Preconditions.checkArgument(minPageSize > 0,
+        "Minimum page size must be positive");
+    this.minPageSize = minPageSize;
+  }
+
+  public int getMaxPageSize() {
+    return maxPageSize;
+  }
+
+  /**
+   * @param maxPageSize largest page size of an adaptive page size
+   */
+  public void setMaxPageSize(int maxPageSize) {
+    this.maxPageSize = maxPageSize;
+  }
+
+  public long getTargetPageLatencyMs() {
+    return targetPageLatencyMs;
+  }
+
+  /**
+   * @param targetPageLatencyMs time an adaptive page size aims to spend
+   *                            waiting for each page
+   */
+  public void setTargetPageLatencyMs(long targetPageLatencyMs) {
+    this.targetPageLatencyMs = targetPageLatencyMs;
+  }
+
+  public long getMaxPageBytes() {
+    return maxPageBytes;
+  }
+
+  /**
+   * @param maxPageBytes decoded response size above which an adaptive page
+   *                     size shrinks regardless of latency, 0 for no limit
+   */
+  public void setMaxPageBytes(long maxPageBytes) {
+    this.maxPageBytes = maxPageBytes;
+  }
+
+  /**
+   * @return metrics updated for every fetched page, or null
+   */
+  public PagingMetrics getPagingMetrics() {
+    return pagingMetrics;
+  }
+
+  /**
+   * Record the latency, size and page size of every fetched page in the
+   * given metrics. The same metrics may be shared by several extractions.
+   *
+   * @param pagingMetrics
+   */
+  public void setPagingMetrics(PagingMetrics pagingMetrics) {
+    this.pagingMetrics = pagingMetrics;
+  }
+
+  /**
+   * @return how long an iteration over the results may take in total, in
+   *         milliseconds, 0 for no limit
+   */
+  public long getDeadlineMs() {
+    return deadlineMs;
+  }
+
+  /**
+   * Give up on an iteration over the results once it has run for the given
+   * time. The deadline is checked before every page is requested, and the
+   * iterator then fails with an UncheckedTimeoutException. The time a single
+   * request may take is bounded by the read timeout of the ClientConfig.
+   *
+   * @param deadlineMs time limit of each iteration, 0 for no limit
+   */
+  public void setDeadlineMs(long deadlineMs) {
+    this.deadlineMs = deadlineMs;
+  }
+
+  /**
+   * @return whether every identity is returned only once per iteration
+   */
+  public boolean isDeduplicate() {
+    return deduplicate;
+  }
+
+  /**
+   * Return each entity or relation only once per iteration, even if it
+   * matches several of the extractorRunIds between two markers, which
+   * happens when it changes while the pages are fetched. The copy returned
+   * is the latest one: every page is fetched twice, first to record the
+   * highest run number of the extractorRunId of each identity, then to
+   * return the copy of that run or a later one. The identities and their
+   * runs are kept as 128-bit ids, spilling to sorted files once there are
+   * more than the maximum number of in-memory identities. Not supported for
+   * checkpointed extractions, and the partitions of an iterable are
+   * de-duplicated separately. Publishers and spools return every copy.
+   *
+   * @param deduplicate
+   */
+  public void setDeduplicate(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+  }
+
+  /**
+   * @return number of identities kept in memory before they are spilled to
+   *         disk when de-duplicating
+   */
+  public int getMaxInMemoryIdentities() {
+    return maxInMemoryIdentities;
+  }
+
+  /**
+   * @param maxInMemoryIdentities identities kept in memory, between 50 and
+   *                              85 bytes each
+   */
+  public void setMaxInMemoryIdentities(int maxInMemoryIdentities) {
+    Preconditions.checkArgument(maxInMemoryIdentities > 0,
+        "maxInMemoryIdentities must be positive");
+    this.maxInMemoryIdentities = maxInMemoryIdentities;
+  }
+
+  /**
+   * @return directory spilled identities are written to, null for the
+   *         default temporary directory
+   */
+  public File getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * @param spillDirectory directory for spilled identities, the files are
+   *                       deleted when the iteration ends
+   */
+  public void setSpillDirectory(File spillDirectory) {
+    this.spillDirectory = spillDirectory;
+  }
+}
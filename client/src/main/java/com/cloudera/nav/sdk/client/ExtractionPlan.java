@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many named entity and relation queries between the same pair of
+ * markers. The markers and the extractorRunIds between them are computed
+ * once when the plan is created by MetadataExtractor.newPlan, instead of
+ * once per query as with repeated extractMetadata calls. Each query passes
+ * its results to its own consumer.
+ *
+ * Plans are not checkpointed, the checkpoint file of the ExtractionOptions
+ * is ignored.
+ */
+public class ExtractionPlan {
+
+  private final NavApiCient client;
+  private final Integer limit;
+  private final ExtractionOptions options;
+  private final String marker;
+  private final Iterable<String> extractorRunIds;
+  private final Map<String, Query> queries = Maps.newLinkedHashMap();
+
+  ExtractionPlan(NavApiCient client, Integer limit, ExtractionOptions options,
+                 String marker, Iterable<String> extractorRunIds) {
+    this.client = client;
+    this.limit = limit;
+    this.options = options;
+    this.marker = marker;
+    this.extractorRunIds = extractorRunIds;
+  }
+
+  /**
+   * @return marker to extract from next time, once the plan has completed
+   */
+  public String getMarker() {
+    return marker;
+  }
+
+  /**
+   * Add a query for entities
+   *
+   * @param name unique name of the query
+   * @param query Solr query for the entities
+   * @param consumer receives the entities of the query
+   * @return this plan
+   */
+  public ExtractionPlan addEntityQuery(String name, String query,
+                                       MetadataConsumer consumer) {
+    return addQuery(name, MetadataType.ENTITIES, query, consumer);
+  }
+
+  /**
+   * Add a query for relations
+   *
+   * @param name unique name of the query
+   * @param query Solr query for the relations
+   * @param consumer receives the relations of the query
+   * @return this plan
+   */
+  public ExtractionPlan addRelationQuery(String name, String query,
+                                         MetadataConsumer consumer) {
+    return addQuery(name, MetadataType.RELATIONS, query, consumer);
+  }
+
+  private ExtractionPlan addQuery(String name, MetadataType type,
+                                  String query, MetadataConsumer consumer) {
+    Preconditions.checkArgument(!queries.containsKey(name),
+        "Duplicate query name %s", name);
+    queries.put(name, new Query(new MetadataIterable(client, type, query,
+        limit, extractorRunIds, options), type, consumer));
+    return this;
+  }
+
+  /**
+   * Run the queries of the plan on the given executor, at most the given
+   * number at once. Queries start in the order they were added. A consumer
+   * that was added for several queries is never called concurrently.
+   *
+   * The returned future succeeds with the marker once every query has been
+   * consumed. If a query or its consumer fails, no more queries are started,
+   * the running ones are stopped and the future fails with the first error.
+   * A failed plan may be executed again, which extracts every query anew.
+   *
+   * @param executor runs the queries
+   * @param maxConcurrentQueries number of queries run at once
+   * @return future of the marker
+   */
+  public ListenableFuture<String> execute(Executor executor,
+                                          int maxConcurrentQueries) {
+    Preconditions.checkArgument(maxConcurrentQueries > 0,
+        "At least one query must run at once");
+    final SettableFuture<String> result = SettableFuture.create();
+    // fresh drains for every execution, those of a failed one are cancelled
+    final List<ResultDrain> drains = Lists.newArrayList();
+    for (Query query : queries.values()) {
+      drains.add(new ResultDrain(query.iterable, query.type, query.consumer));
+    }
+    final Queue<ResultDrain> pending = new ConcurrentLinkedQueue<>(drains);
+    int workers = Math.min(maxConcurrentQueries, queries.size());
+    if (workers == 0) {
+      result.set(marker);
+      return result;
+    }
+    final AtomicInteger running = new AtomicInteger(workers);
+    for (int i = 0; i < workers; i++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ResultDrain query;
+            while (!result.isDone() && (query = pending.poll()) != null) {
+              query.call();
+            }
+            if (running.decrementAndGet() == 0) {
+              result.set(marker);
+            }
+          } catch (Throwable t) {
+            result.setException(t);
+            for (ResultDrain drain : drains) {
+              drain.cancel();
+            }
+          }
+        }
+      });
+    }
+    return result;
+  }
+
+  /**
+   * A query added to the plan
+   */
+  private static class Query {
+    private final MetadataIterable iterable;
+    private final MetadataType type;
+    private final MetadataConsumer consumer;
+
+    Query(MetadataIterable iterable, MetadataType type,
+          MetadataConsumer consumer) {
+      this.iterable = iterable;
+      this.type = type;
+      this.consumer = consumer;
+    }
+  }
+}
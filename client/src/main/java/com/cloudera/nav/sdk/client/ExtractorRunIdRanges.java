@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The extractorRunIds between two markers, generated lazily. For every
+ * source of the start marker, the ids sourceId##i are produced for each
+ * extract iteration i from the iteration of the start marker up to and
+ * including the iteration of the end marker.
+ */
+public class ExtractorRunIdRanges implements Iterable<String> {
+
+  private final Map<String, Integer> start;
+  private final Map<String, Integer> end;
+
+  /**
+   * @param start marker for the past extraction state
+   * @param end marker for the later extraction state, with an iteration for
+   *            every source of the start marker
+   */
+  public ExtractorRunIdRanges(Map<String, Integer> start,
+                              Map<String, Integer> end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return the sources that have at least one extractorRunId in range
+   */
+  public Iterable<String> getSources() {
+    return Iterables.filter(start.keySet(), new Predicate<String>() {
+      @Override
+      public boolean apply(String source) {
+        return start.get(source) <= end.get(source);
+      }
+    });
+  }
+
+  /**
+   * @return the extractorRunIds of a single source
+   */
+  public Iterable<String> getRange(final String source) {
+    return new Iterable<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return range(source, start.get(source), end.get(source));
+      }
+    };
+  }
+
+  /**
+   * @return the ranges of the sources accepted by the given predicate
+   */
+  public ExtractorRunIdRanges filter(Predicate<String> sources) {
+    Map<String, Integer> filtered = Maps.newLinkedHashMap();
+    for (String source : getSources()) {
+      if (sources.apply(source)) {
+        filtered.put(source, start.get(source));
+      }
+    }
+    return new ExtractorRunIdRanges(filtered, end);
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Iterables.concat(Iterables.transform(getSources(),
+        new Function<String, Iterable<String>>() {
+          @Override
+          public Iterable<String> apply(String source) {
+            return getRange(source);
+          }
+        })).iterator();
+  }
+
+  private static Iterator<String> range(final String source, final int first,
+                                        final int last) {
+    return new AbstractIterator<String>() {
+      private int next = first;
+
+      @Override
+      protected String computeNext() {
+        if (next > last) {
+          return endOfData();
+        }
+        return source + "##" + Integer.toString(next++);
+      }
+    };
+  }
+}
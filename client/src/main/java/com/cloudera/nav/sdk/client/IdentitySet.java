@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.EntityId;
+import com.cloudera.nav.sdk.model.EntityIdMap;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the identities seen during an iteration, each with the highest
+ * version it was seen with, in bounded memory. Identities are held as
+ * 128-bit ids: MD5 identities as their EntityId, any other identity as the
+ * MD5 hash of its string. Up to a given number of ids are kept in an
+ * EntityIdMap; beyond that the entries are written out as a sorted run file
+ * of (id, version) triples and cleared. Lookups then also binary search the
+ * memory-mapped runs, which are merged into one once there are more than
+ * MAX_RUNS of them. An id may be in several runs, its highest version counts.
+ *
+ * Not thread-safe.
+ */
+class IdentitySet implements Closeable {
+
+  static final int MAX_RUNS = 8;
+  static final long ABSENT = -1;
+
+  private static final Logger LOG = LoggerFactory.getLogger(IdentitySet.class);
+
+  private final int maxInMemory;
+  private final File directory;
+  private final EntityIdMap<Long> memory = new EntityIdMap<>();
+  private final List<Run> runs = Lists.newArrayList();
+
+  /**
+   * @param maxInMemory number of ids kept in memory before they are spilled
+   * @param directory directory of the run files, null for the default
+   *                  temporary directory
+   */
+  IdentitySet(int maxInMemory, File directory) {
+    this.maxInMemory = maxInMemory;
+    this.directory = directory;
+  }
+
+  /**
+   * @return true if the identity had not been added before
+   */
+  boolean add(String identity) throws IOException {
+    return put(identity, 0) == ABSENT;
+  }
+
+  /**
+   * Record the version of the identity if it is higher than the one it has
+   *
+   * @param version non-negative version
+   * @return the version the identity had, or ABSENT if it had none
+   */
+  long put(String identity, long version) throws IOException {
+    EntityId id = toId(identity);
+    long previous = get(id);
+    if (version > previous) {
+      memory.put(id, version);
+      if (memory.size() >= maxInMemory) {
+        spill();
+      }
+    }
+    return previous;
+  }
+
+  /**
+   * @return the highest version of the identity, or ABSENT if it has none
+   */
+  long getVersion(String identity) {
+    return get(toId(identity));
+  }
+
+  /**
+   * @return number of spilled run files
+   */
+  int getRunCount() {
+    return runs.size();
+  }
+
+  /**
+   * Delete the run files
+   */
+  @Override
+  public void close() {
+    memory.clear();
+    for (Run run : runs) {
+      run.delete();
+    }
+    runs.clear();
+  }
+
+  private static EntityId toId(String identity) {
+    EntityId id = EntityId.parse(identity);
+    if (!id.isCompact()) {
+      ByteBuffer hash = ByteBuffer.wrap(Hashing.md5()
+          .hashBytes(identity.getBytes(Charsets.UTF_8)).asBytes());
+      id = EntityId.of(hash.getLong(), hash.getLong());
+    }
+    return id;
+  }
+
+  private long get(EntityId id) {
+    Long inMemory = memory.get(id);
+    long version = inMemory != null ? inMemory : ABSENT;
+    for (Run run : runs) {
+      version = Math.max(version, run.get(id.getHigh(), id.getLow()));
+    }
+    return version;
+  }
+
+  private void spill() throws IOException {
+    long[] entries = new long[memory.size() * 3];
+    int i = 0;
+    for (EntityId id : memory.keys()) {
+      entries[i++] = id.getHigh();
+      entries[i++] = id.getLow();
+      entries[i++] = memory.get(id);
+    }
+    memory.clear();
+    sort(entries);
+    File file = File.createTempFile("nav-identities-", ".run", directory);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      for (long entry : entries) {
+        out.writeLong(entry);
+      }
+    }
+    runs.add(new Run(file));
+    if (runs.size() > MAX_RUNS) {
+      merge();
+    }
+  }
+
+  /**
+   * Merge all runs into one, keeping the highest version of each id
+   */
+  private void merge() throws IOException {
+    File file = File.createTempFile("nav-identities-", ".run", directory);
+    int[] positions = new int[runs.size()];
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      while (true) {
+        int min = -1;
+        for (int r = 0; r < runs.size(); r++) {
+          if (positions[r] < runs.get(r).size() && (min < 0 ||
+              compare(runs.get(r), positions[r], runs.get(min),
+                  positions[min]) < 0)) {
+            min = r;
+          }
+        }
+        if (min < 0) {
+          break;
+        }
+        Run first = runs.get(min);
+        long high = first.high(positions[min]);
+        long low = first.low(positions[min]);
+        long version = ABSENT;
+        for (int r = min; r < runs.size(); r++) {
+          Run run = runs.get(r);
+          if (positions[r] < run.size() && run.high(positions[r]) == high &&
+              run.low(positions[r]) == low) {
+            version = Math.max(version, run.version(positions[r]));
+            positions[r]++;
+          }
+        }
+        out.writeLong(high);
+        out.writeLong(low);
+        out.writeLong(version);
+      }
+    }
+    for (Run run : runs) {
+      run.delete();
+    }
+    runs.clear();
+    runs.add(new Run(file));
+    LOG.debug("Merged spilled identities into " + file);
+  }
+
+  private static int compare(Run a, int i, Run b, int j) {
+    int cmp = Long.compare(a.high(i), b.high(j));
+    return cmp != 0 ? cmp : Long.compare(a.low(i), b.low(j));
+  }
+
+  /**
+   * Heap sort of the (high, low, version) triples in the array by id,
+   * without allocating
+   */
+  static void sort(long[] entries) {
+    int n = entries.length / 3;
+    for (int i = n / 2 - 1; i >= 0; i--) {
+      siftDown(entries, i, n);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      swap(entries, 0, end);
+      siftDown(entries, 0, end);
+    }
+  }
+
+  private static void siftDown(long[] entries, int i, int n) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= n) {
+        return;
+      }
+      if (child + 1 < n && greater(entries, child + 1, child)) {
+        child++;
+      }
+      if (!greater(entries, child, i)) {
+        return;
+      }
+      swap(entries, i, child);
+      i = child;
+    }
+  }
+
+  private static boolean greater(long[] entries, int i, int j) {
+    int cmp = Long.compare(entries[3 * i], entries[3 * j]);
+    return cmp != 0 ? cmp > 0 : entries[3 * i + 1] > entries[3 * j + 1];
+  }
+
+  private static void swap(long[] entries, int i, int j) {
+    for (int k = 0; k < 3; k++) {
+      long entry = entries[3 * i + k];
+      entries[3 * i + k] = entries[3 * j + k];
+      entries[3 * j + k] = entry;
+    }
+  }
+
+  /**
+   * A memory-mapped file of (high, low, version) triples sorted by id
+   */
+  private static class Run {
+    private final File file;
+    private final LongBuffer entries;
+
+    Run(File file) throws IOException {
+      this.file = file;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+           FileChannel channel = raf.getChannel()) {
+        this.entries = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size()).asLongBuffer();
+      }
+    }
+
+    int size() {
+      return entries.limit() / 3;
+    }
+
+    long high(int i) {
+      return entries.get(3 * i);
+    }
+
+    long low(int i) {
+      return entries.get(3 * i + 1);
+    }
+
+    long version(int i) {
+      return entries.get(3 * i + 2);
+    }
+
+    /**
+     * @return the version of the id, or ABSENT if it is not in the run
+     */
+    long get(long high, long low) {
+      int lo = 0;
+      int hi = size() - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int cmp = Long.compare(high(mid), high);
+        if (cmp == 0) {
+          cmp = Long.compare(low(mid), low);
+        }
+        if (cmp < 0) {
+          lo = mid + 1;
+        } else if (cmp > 0) {
+          hi = mid - 1;
+        } else {
+          return version(mid);
+        }
+      }
+      return ABSENT;
+    }
+
+    void delete() {
+      if (!file.delete() && file.exists()) {
+        LOG.warn("Failed to delete spilled identities " + file);
+      }
+    }
+  }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log-structured key value store in a directory of memory-mapped segment
+ * files. Puts and deletes are appended to the newest segment; an in-memory
+ * index maps every live key to the location of its latest value. A segment
+ * is mapped at its full size when it is created, so appends and reads are
+ * plain memory accesses.
+ *
+ * Each record is laid out as [body length][crc32 of body][body] with a body
+ * of [operation][key length][key][value]. On open, the segments are replayed
+ * oldest first to rebuild the index, stopping at the first zero length or
+ * corrupt record of a segment.
+ *
+ * Overwritten values and deletes leave garbage behind. {@link #compact()}
+ * rewrites the live values of all older segments into the newest one and
+ * deletes the older segments, oldest first, so a delete is only dropped once
+ * every older value it masks is gone.
+ *
+ * Reads may run concurrently with each other; writes and compaction are
+ * exclusive.
+ */
+class LogStore implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogStore.class);
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int HEADER_BYTES = 8;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+
+  private final File directory;
+  private final long segmentBytes;
+  private final ConcurrentMap<String, Location> index =
+      Maps.newConcurrentMap();
+  private final NavigableMap<Long, Segment> segments = Maps.newTreeMap();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Segment active;
+  private long liveBytes;
+  private long totalBytes;
+
+  /**
+   * @param directory holds the segment files, existing segments are
+   *                  replayed
+   * @param segmentBytes size of new segments, larger records get a segment
+   *                     of their own
+   */
+  LogStore(File directory, long segmentBytes) throws IOException {
+    Preconditions.checkArgument(directory.isDirectory(),
+        "%s is not a directory", directory);
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName();
+      long id = Long.parseLong(name.substring(0,
+          name.length() - SEGMENT_SUFFIX.length()));
+      Segment segment = new Segment(id, file, file.length());
+      segments.put(id, segment);
+      replay(segment);
+      active = segment;
+    }
+  }
+
+  /**
+   * @return the latest value of the key, or null if it has none
+   */
+  byte[] get(String key) {
+    lock.readLock().lock();
+    try {
+      Location location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+      ByteBuffer buffer = location.segment.read();
+      buffer.position(location.valueOffset);
+      byte[] value = new byte[location.valueLength];
+      buffer.get(value);
+      return value;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the live keys with the given prefix, a snapshot that does not
+   *         reflect later writes
+   */
+  List<String> keys(String prefix) {
+    List<String> keys = Lists.newArrayList();
+    for (String key : index.keySet()) {
+      if (key.startsWith(prefix)) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @return number of live keys
+   */
+  int size() {
+    return index.size();
+  }
+
+  void put(String key, byte[] value) throws IOException {
+    lock.writeLock().lock();
+    try {
+      append(PUT, key, value);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove the key. A delete record is only written if the key has a value.
+   */
+  void delete(String key) throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (index.containsKey(key)) {
+        append(DELETE, key, new byte[0]);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return share of the stored bytes that no longer hold a live value
+   */
+  double getGarbageRatio() {
+    lock.readLock().lock();
+    try {
+      return totalBytes == 0 ? 0 : 1 - (double) liveBytes / totalBytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Write every segment appended to since the last force to disk. Writes
+   * may fill several segments between two forces.
+   */
+  void force() {
+    lock.readLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        segment.force();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return number of segments appended to since they were last forced
+   */
+  @VisibleForTesting
+  int getUnforcedSegmentCount() {
+    lock.readLock().lock();
+    try {
+      int count = 0;
+      for (Segment segment : segments.values()) {
+        if (segment.dirty) {
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Start a new segment and rewrite the live values of all older segments
+   * into it, one segment at a time, and delete the rewritten segments.
+   * Nothing is rewritten if the store holds no garbage.
+   * Reads and writes only wait for one segment to be rewritten at a time.
+   *
+   * @return number of deleted segments
+   */
+  int compact() throws IOException {
+    List<Segment> old;
+    long firstNewId;
+    lock.writeLock().lock();
+    try {
+      if (active == null || liveBytes == totalBytes) {
+        return 0;
+      }
+      // the active segment holds garbage too, so it is rewritten as well
+      if (active.written > 0) {
+        roll(0);
+      }
+      firstNewId = active.id;
+      old = ImmutableList.copyOf(segments.headMap(firstNewId).values());
+    } finally {
+      lock.writeLock().unlock();
+    }
+    for (Segment segment : old) {
+      lock.writeLock().lock();
+      try {
+        ByteBuffer buffer = segment.read();
+        int position = 0;
+        while (true) {
+          Record record = readRecord(buffer, position);
+          if (record == null) {
+            break;
+          }
+          Location location = index.get(record.key);
+          if (record.operation == PUT && location != null &&
+              location.segment == segment &&
+              location.valueOffset == record.valueOffset) {
+            byte[] value = new byte[record.valueLength];
+            buffer.position(record.valueOffset);
+            buffer.get(value);
+            append(PUT, record.key, value);
+          }
+          position = record.end;
+        }
+        // the copies must be on disk before the originals are deleted, they
+        // may have been spread over several new segments
+        for (Segment copies : segments.tailMap(firstNewId).values()) {
+          copies.force();
+        }
+        segments.remove(segment.id);
+        totalBytes -= segment.written;
+        liveBytes -= segment.live;
+        segment.close();
+        if (!segment.file.delete()) {
+          LOG.warn("Failed to delete compacted segment " + segment.file);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+    return old.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        segment.close();
+      }
+      segments.clear();
+      index.clear();
+      active = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void append(byte operation, String key, byte[] value)
+      throws IOException {
+    byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+    int bodyLength = 1 + 4 + keyBytes.length + value.length;
+    int recordLength = HEADER_BYTES + bodyLength;
+    if (active == null || active.free() < recordLength) {
+      roll(recordLength);
+    }
+    ByteBuffer body = ByteBuffer.allocate(bodyLength);
+    body.put(operation).putInt(keyBytes.length).put(keyBytes).put(value);
+    CRC32 crc = new CRC32();
+    crc.update(body.array());
+    ByteBuffer buffer = active.buffer;
+    int start = buffer.position();
+    buffer.putInt(bodyLength).putInt((int) crc.getValue()).put(body.array());
+    active.written += recordLength;
+    active.dirty = true;
+    totalBytes += recordLength;
+    apply(active, operation, key, start + HEADER_BYTES + 5 + keyBytes.length,
+        value.length, recordLength);
+  }
+
+  private void roll(int recordLength) throws IOException {
+    long id = active == null ? 0 : active.id + 1;
+    File file = new File(directory, String.format("%016d%s", id,
+        SEGMENT_SUFFIX));
+    // leave room for the zero length that ends the segment
+    Segment segment = new Segment(id, file,
+        Math.max(segmentBytes, recordLength + 4L));
+    segments.put(id, segment);
+    active = segment;
+  }
+
+  private void replay(Segment segment) {
+    ByteBuffer buffer = segment.read();
+    int position = 0;
+    while (true) {
+      Record record = readRecord(buffer, position);
+      if (record == null) {
+        break;
+      }
+      int recordLength = record.end - position;
+      segment.written += recordLength;
+      totalBytes += recordLength;
+      apply(segment, record.operation, record.key, record.valueOffset,
+          record.valueLength, recordLength);
+      position = record.end;
+    }
+    segment.buffer.position(position);
+  }
+
+  private void apply(Segment segment, byte operation, String key,
+                     int valueOffset, int valueLength, int recordLength) {
+    Location previous;
+    if (operation == PUT) {
+      previous = index.put(key, new Location(segment, valueOffset,
+          valueLength, recordLength));
+      segment.live += recordLength;
+      liveBytes += recordLength;
+    } else {
+      previous = index.remove(key);
+    }
+    if (previous != null) {
+      previous.segment.live -= previous.recordLength;
+      liveBytes -= previous.recordLength;
+    }
+  }
+
+  /**
+   * @return the record at the given position, or null at the end of the
+   *         segment or at a torn or corrupt record
+   */
+  private static Record readRecord(ByteBuffer buffer, int position) {
+    if (buffer.limit() - position < HEADER_BYTES) {
+      return null;
+    }
+    int bodyLength = buffer.getInt(position);
+    if (bodyLength < 5 || bodyLength > buffer.limit() - position -
+        HEADER_BYTES) {
+      return null;
+    }
+    int checksum = buffer.getInt(position + 4);
+    byte[] body = new byte[bodyLength];
+    buffer.position(position + HEADER_BYTES);
+    buffer.get(body);
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    if ((int) crc.getValue() != checksum) {
+      return null;
+    }
+    ByteBuffer fields = ByteBuffer.wrap(body);
+    byte operation = fields.get();
+    int keyLength = fields.getInt();
+    if (keyLength < 0 || keyLength > bodyLength - 5) {
+      return null;
+    }
+    String key = new String(body, 5, keyLength, Charsets.UTF_8);
+    int valueOffset = position + HEADER_BYTES + 5 + keyLength;
+    return new Record(operation, key, valueOffset, bodyLength - 5 - keyLength,
+        position + HEADER_BYTES + bodyLength);
+  }
+
+  private static class Record {
+    private final byte operation;
+    private final String key;
+    private final int valueOffset;
+    private final int valueLength;
+    private final int end;
+
+    Record(byte operation, String key, int valueOffset, int valueLength,
+           int end) {
+      this.operation = operation;
+      this.key = key;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.end = end;
+    }
+  }
+
+  private static class Location {
+    private final Segment segment;
+    private final int valueOffset;
+    private final int valueLength;
+    private final int recordLength;
+
+    Location(Segment segment, int valueOffset, int valueLength,
+             int recordLength) {
+      this.segment = segment;
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.recordLength = recordLength;
+    }
+  }
+
+  /**
+   * A segment file mapped in full. Mapping a new file at the segment size
+   * extends it with zeros, which replay reads as the end of the segment.
+   */
+  private static class Segment {
+    private final long id;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private long written;
+    private long live;
+    // appended to since the last force, forces may run concurrently
+    private volatile boolean dirty;
+
+    Segment(long id, File file, long size) throws IOException {
+      Preconditions.checkArgument(size <= Integer.MAX_VALUE,
+          "Segment of %s bytes is too large to map", size);
+      this.id = id;
+      this.file = file;
+      this.raf = new RandomAccessFile(file, "rw");
+      try {
+        this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+            size);
+      } catch (IOException | RuntimeException e) {
+        raf.close();
+        throw e;
+      }
+    }
+
+    /**
+     * @return an independent view of the whole segment
+     */
+    ByteBuffer read() {
+      ByteBuffer view = buffer.duplicate();
+      view.clear();
+      return view;
+    }
+
+    void force() {
+      if (dirty) {
+        dirty = false;
+        buffer.force();
+      }
+    }
+
+    long free() {
+      // keep 4 zero bytes after the last record to mark the end
+      return buffer.remaining() - 4L;
+    }
+
+    /**
+     * Close the file. The mapping itself is released once the buffer is
+     * garbage collected.
+     */
+    void close() throws IOException {
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+
+import java.util.Map;
+
+/**
+ * Receives the results of a concurrent extraction, see
+ * MetadataResultSet.consume
+ */
+public interface MetadataConsumer {
+
+  /**
+   * Process a single result. An exception stops the whole extraction.
+   *
+   * @param type whether the result is an entity or a relation
+   * @param result the entity or relation
+   */
+  void accept(MetadataType type, Map<String, Object> result) throws Exception;
+}
@@ -15,18 +15,18 @@
  */
 package com.cloudera.nav.sdk.client;
 
-import com.cloudera.com.fasterxml.jackson.core.type.TypeReference;
-import com.cloudera.com.fasterxml.jackson.databind.ObjectMapper;
 import com.cloudera.nav.sdk.model.MetadataType;
 import com.cloudera.nav.sdk.model.Source;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -40,6 +40,10 @@ import org.apache.commons.lang.StringUtils;
  * single marker, metadata since that marker is extracted. When given 2 markers
  * metadata extracted between the 2 markers are returned.
  *
+ * If the ExtractionOptions name a checkpoint file, the progress of the
+ * extraction is recorded in that file and an extraction that was interrupted
+ * can be continued with resumeExtraction.
+ *
  * The marker isn't designed to be used public API. Under the hood it is
  * composed of extractorRunId's that is incremented by the server every time
  * it reads additional metadata from Hadoop services.
@@ -50,15 +54,29 @@ public class MetadataExtractor {
   private static final String DEFAULT_QUERY= "identity:*";
   private static final Integer DEFAULT_LIMIT = 100;
   private final Integer limit;
+  private final ExtractionOptions options;
 
   public MetadataExtractor(NavApiCient client, Integer limit) {
+    this(client, limit, new ExtractionOptions());
+  }
+
+  /**
+   * @param client client used to query Navigator
+   * @param limit number of results per page, a default is used if null
+   * @param options options controlling how pages are fetched
+   */
+  public MetadataExtractor(NavApiCient client, Integer limit,
+                           ExtractionOptions options) {
     this.client = client;
     this.limit = (limit == null) ? DEFAULT_LIMIT : limit;
+    this.options = options;
   }
 
   /**
    * Returns all of the entities and relations in Navigator,
-   * plus a marker to denote when this search took place
+   * plus a marker to denote when this search took place. The extraction is
+   * split into identity shards that are fetched concurrently if the
+   * ExtractionOptions set identity shards and a partition concurrency.
    */
   public MetadataResultSet extractMetadata() {
     return extractMetadata(null, null, DEFAULT_QUERY, DEFAULT_QUERY);
@@ -104,43 +122,101 @@ public class MetadataExtractor {
                                            String entitiesQuery,
                                            String relationsQuery) {
     try {
-      TypeReference<Map<String, Integer>> typeRef =
-          new TypeReference<Map<String, Integer>>(){};
-      Iterable<String> extractorQuery;
-      Map<String, Integer> endMarker;
-      if(StringUtils.isEmpty(startMarkerRep) && StringUtils.isEmpty(endMarkerRep)){
-        extractorQuery = Lists.newArrayList("*");
-      } else {
-        Map<String, Integer> startMarker;
-        if(StringUtils.isEmpty(startMarkerRep)) {
-          startMarker = getNavMarker(false);
-        } else {
-          startMarker = new ObjectMapper().readValue(startMarkerRep, typeRef);
-        }
-        if(StringUtils.isEmpty(endMarkerRep)) {
-          endMarker = getNavMarker(true);
-        } else {
-          endMarker = new ObjectMapper().readValue(endMarkerRep, typeRef);
-        }
-        extractorQuery = getExtractorQueryList(startMarker, endMarker);
+      ExtractionCheckpoint checkpoint = resolveMarkers(startMarkerRep,
+          endMarkerRep);
+      checkpoint.setEntitiesQuery(entitiesQuery);
+      checkpoint.setRelationsQuery(relationsQuery);
+      Checkpointer checkpointer = null;
+      if (options.getCheckpointFile() != null) {
+        checkpointer = new Checkpointer(options.getCheckpointFile(),
+            options.getCheckpointIntervalMs(), checkpoint);
+        checkpointer.write();
       }
-      String currentMarkerRep = new ObjectMapper().writeValueAsString(getNavMarker(true));
-      return aggUpdatedResults(currentMarkerRep, extractorQuery, entitiesQuery, relationsQuery);
+      return aggUpdatedResults(checkpoint, checkpointer);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Create a plan to run many entity and relation queries between the same
+   * markers. The markers are resolved once, when the plan is created, and
+   * the returned plan is executed after its queries have been added.
+   *
+   * @param startMarkerRep marker from a previous extraction, or null
+   * @param endMarkerRep marker to extract up to, or null for the current
+   *                     state
+   * @return ExtractionPlan without queries
+   */
+  public ExtractionPlan newPlan(String startMarkerRep, String endMarkerRep) {
+    try {
+      ExtractionCheckpoint markers = resolveMarkers(startMarkerRep,
+          endMarkerRep);
+      return new ExtractionPlan(client, limit, options, markers.getMarker(),
+          getExtractorRunIds(markers));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Continue the extraction recorded in the checkpoint file of the
+   * ExtractionOptions. The returned iterables start where the interrupted
+   * extraction stopped and the MetadataResultSet carries the marker of the
+   * original extraction.
+   *
+   * @return MetadataResultSet with the remaining entities and relations
+   */
+  public MetadataResultSet resumeExtraction() {
+    File file = options.getCheckpointFile();
+    Preconditions.checkState(file != null,
+        "No checkpoint file in the extraction options");
+    Checkpointer checkpointer = new Checkpointer(file,
+        options.getCheckpointIntervalMs(), Checkpointer.read(file));
+    try {
+      return aggUpdatedResults(checkpointer.getCheckpoint(), checkpointer);
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
   }
 
+  /**
+   * Resolve the markers of an extraction. Every marker is computed from the
+   * same snapshot of the sources.
+   *
+   * @return checkpoint with the start, end and next marker set, the start
+   *         and end marker are null for a full extraction
+   */
+  private ExtractionCheckpoint resolveMarkers(String startMarkerRep,
+                                              String endMarkerRep)
+      throws IOException {
+    SourceSnapshot sources = client.getSourceSnapshot();
+    ObjectMapper mapper = new ObjectMapper();
+    ExtractionCheckpoint checkpoint = new ExtractionCheckpoint();
+    if(!StringUtils.isEmpty(startMarkerRep) ||
+        !StringUtils.isEmpty(endMarkerRep)){
+      checkpoint.setStartMarker(StringUtils.isEmpty(startMarkerRep) ?
+          mapper.writeValueAsString(getNavMarker(sources, false)) :
+          startMarkerRep);
+      checkpoint.setEndMarker(StringUtils.isEmpty(endMarkerRep) ?
+          mapper.writeValueAsString(getNavMarker(sources, true)) :
+          endMarkerRep);
+    }
+    checkpoint.setMarker(mapper.writeValueAsString(
+        getNavMarker(sources, true)));
+    return checkpoint;
+  }
+
   /**
    * Generate marker from each source and its sourceExtractIteration that
    * can be used to form extractorRunIds
    *
    * @return Map of sourceId to its to extractIteration
    */
-  private Map<String, Integer> getNavMarker(boolean current) {
-    Collection<Source> sources = client.getAllSources();
+  private Map<String, Integer> getNavMarker(SourceSnapshot sources,
+                                            boolean current) {
     HashMap<String, Integer> newMarker = Maps. newHashMap();
-    for (Source source : sources) {
+    for (Source source : sources.getSources()) {
       String id = source.getIdentity();
       Integer sourceExtractIteration = (current) ?
           source.getSourceExtractIteration() : 0;
@@ -151,7 +227,8 @@ public class MetadataExtractor {
 
   /**
    * Returns an iterable of all possible extractorRunIds in between the extraction
-   * states specified by marker m1 and marker m2.
+   * states specified by marker m1 and marker m2. The ids are generated as
+   * they are iterated.
    *
    * @param m1 Marker for past extraction state
    * @param m2 Marker for later(current) extraction state
@@ -159,37 +236,48 @@ public class MetadataExtractor {
    */
   private Iterable<String> getExtractorQueryList(Map<String, Integer> m1,
                                          Map<String, Integer> m2) {
-    List<String> runIdList= Lists.newArrayList();
-    for (String key: m1.keySet()) {
-      for (int i=m1.get(key); i<(m2.get(key)+1); i++){
-        String possible = key + "##" + Integer.toString(i);
-        runIdList.add(possible);
-      }
-    }
-    return runIdList;
+    return new ExtractorRunIdRanges(m1, m2);
   }
 
   /**
    * Constructs an MetadataResultSet object with results of getAllPages
    * for entities and relations, and the marker used to generate these results.
    *
-   * @param markerRep String marker from previous extractMetadata call
-   * @param extractorRunIds List of possible extractorRunIds
-   * @param entitiesQuery Query string for filtering entities to extract
-   * @param relationsQuery Query string filtering relations to extract
+   * @param checkpoint markers and queries of the extraction
+   * @param checkpointer keeps track of the extraction, or null
    * @return MetadataResultSet with resulting entities, relations and marker
    */
-  private MetadataResultSet aggUpdatedResults(String markerRep,
-                                          Iterable<String> extractorRunIds,
-                                          String entitiesQuery,
-                                          String relationsQuery) {
-    MetadataResultSet metadataResultSet;
+  private MetadataResultSet aggUpdatedResults(ExtractionCheckpoint checkpoint,
+                                              Checkpointer checkpointer)
+      throws IOException {
+    Iterable<String> extractorRunIds = getExtractorRunIds(checkpoint);
     MetadataIterable entities = new MetadataIterable(client,
-        MetadataType.ENTITIES, entitiesQuery, limit, extractorRunIds);
+        MetadataType.ENTITIES, checkpoint.getEntitiesQuery(), limit,
+        extractorRunIds, options, checkpointer);
     MetadataIterable relations = new MetadataIterable(client,
-        MetadataType.RELATIONS, relationsQuery, limit, extractorRunIds);
-    metadataResultSet = new MetadataResultSet(markerRep, entities, relations);
-    return metadataResultSet;
+        MetadataType.RELATIONS, checkpoint.getRelationsQuery(), limit,
+        extractorRunIds, options, checkpointer);
+    return new MetadataResultSet(checkpoint.getMarker(), entities, relations);
+  }
+
+  /**
+   * @return the extractorRunIds between the start and end marker of the
+   *         given checkpoint, or the wildcard for a full extraction
+   */
+  private Iterable<String> getExtractorRunIds(ExtractionCheckpoint checkpoint)
+      throws IOException {
+    if (checkpoint.getStartMarker() == null &&
+        checkpoint.getEndMarker() == null) {
+      return Lists.newArrayList("*");
+    }
+    TypeReference<Map<String, Integer>> typeRef =
+        new TypeReference<Map<String, Integer>>(){};
+    ObjectMapper mapper = new ObjectMapper();
+    return getExtractorQueryList(
+        mapper.<Map<String, Integer>>readValue(checkpoint.getStartMarker(),
+            typeRef),
+        mapper.<Map<String, Integer>>readValue(checkpoint.getEndMarker(),
+            typeRef));
   }
 
   /**
@@ -198,7 +286,8 @@ public class MetadataExtractor {
    * @return String representation of a marker
    */
   public String getMarker() {
-    Map<String, Integer> currentMarker = getNavMarker(true);
+    Map<String, Integer> currentMarker = getNavMarker(
+        client.getSourceSnapshot(), true);
     try {
       return new ObjectMapper().writeValueAsString(currentMarker);
     } catch (IOException e){
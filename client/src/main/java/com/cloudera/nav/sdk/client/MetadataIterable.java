@@ -16,13 +16,37 @@
 package com.cloudera.nav.sdk.client;
 
 import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Iterable over metadata (entities or relations determined by given
  * MetadataType) that satisfies the given String query and the given
  * extractorRunIds. Thin wrapper around MetadataResultIterator
+ *
+ * Iterables of a checkpointed extraction start every new iterator where the
+ * previous one stopped.
  */
 public class MetadataIterable implements Iterable<Map<String, Object>> {
 
@@ -31,20 +55,264 @@ public class MetadataIterable implements Iterable<Map<String, Object>> {
   private final String query;
   private final Integer limit;
   private final Iterable<String> extractorRunIds;
+  private final ExtractionOptions options;
+  private final Checkpointer checkpointer;
+  private final boolean partition;
 
   public MetadataIterable(NavApiCient client, MetadataType type,
                           String query, Integer limit,
                           Iterable<String> extractorRunIds){
+    this(client, type, query, limit, extractorRunIds, new ExtractionOptions());
+  }
+
+  public MetadataIterable(NavApiCient client, MetadataType type,
+                          String query, Integer limit,
+                          Iterable<String> extractorRunIds,
+                          ExtractionOptions options){
+    this(client, type, query, limit, extractorRunIds, options, null);
+  }
+
+  /**
+   * @param checkpointer checkpoint iterators start at and update, or null
+   */
+  MetadataIterable(NavApiCient client, MetadataType type, String query,
+                   Integer limit, Iterable<String> extractorRunIds,
+                   ExtractionOptions options, Checkpointer checkpointer) {
     this.query = query;
     this.type = type;
     this.client = client;
     this.limit =limit;
     this.extractorRunIds = extractorRunIds;
+    this.options = options;
+    this.checkpointer = checkpointer;
+    this.partition = false;
+  }
+
+  /**
+   * Iterable over a single partition query
+   */
+  private MetadataIterable(NavApiCient client, MetadataType type,
+                           String partitionQuery, Integer limit,
+                           ExtractionOptions options) {
+    this.query = partitionQuery;
+    this.type = type;
+    this.client = client;
+    this.limit = limit;
+    this.extractorRunIds = Collections.emptyList();
+    this.options = options;
+    this.checkpointer = null;
+    this.partition = true;
   }
 
   @Override
   public MetadataResultIterator iterator() {
-    return new MetadataResultIterator(client, type, query, limit,
-        extractorRunIds);
+    return newIterator(false);
+  }
+
+  /**
+   * Split the results into the queries they are fetched with: one per
+   * partition of extractorRunIds, or one per identity shard for full
+   * extractions if the ExtractionOptions set identity shards. The partitions
+   * are disjoint and together return the same results as this iterable, so
+   * they can be consumed in parallel, for example by submitting one task per
+   * partition to an executor. Each partition is paged through on its own,
+   * prefetching and streaming options still apply.
+   *
+   * @return the partition iterables, in the order this iterable visits them
+   */
+  public List<MetadataIterable> partitions() {
+    Preconditions.checkState(checkpointer == null,
+        "A checkpointed extraction cannot be partitioned");
+    if (partition) {
+      return ImmutableList.of(this);
+    }
+    ImmutableList.Builder<MetadataIterable> partitions =
+        ImmutableList.builder();
+    Iterator<String> queries = queries();
+    while (queries.hasNext()) {
+      partitions.add(new MetadataIterable(client, type, queries.next(), limit,
+          options));
+    }
+    return partitions.build();
+  }
+
+  /**
+   * Iterate over the results as typed records whose attributes are only
+   * decoded when they are accessed. The iterators returned by the iterable
+   * implement Closeable like MetadataResultIterator.
+   *
+   * @param recordClass EntityRecord for entities, RelationRecord for
+   *                    relations
+   */
+  public <T extends MetadataRecord> Iterable<T> records(
+      final Class<T> recordClass) {
+    checkRecordClass(recordClass);
+    return new Iterable<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        return new RecordIterator<>(recordClass, newIterator(true));
+      }
+    };
+  }
+
+  /**
+   * Deliver the results to subscribers instead of iterating over them. Every
+   * subscription extracts the results anew, fetching pages on the given
+   * executor as the subscriber requests them.
+   *
+   * @param executor thread pool that fetches and delivers results
+   */
+  public MetadataPublisher<Map<String, Object>> publisher(Executor executor) {
+    return newPublisher(false, executor);
+  }
+
+  /**
+   * Same as {@link #publisher(Executor)} with the results delivered as typed
+   * records.
+   *
+   * @param recordClass EntityRecord for entities, RelationRecord for
+   *                    relations
+   * @param executor thread pool that fetches and delivers results
+   */
+  public <T extends MetadataRecord> MetadataPublisher<T> recordPublisher(
+      Class<T> recordClass, Executor executor) {
+    checkRecordClass(recordClass);
+    return newPublisher(true, executor);
+  }
+
+  /**
+   * Download all pages to a spool in the given directory without decoding
+   * them, for a later parallel {@link PageSpool#parse parse}. The pages are
+   * fetched by as many cursors as the partition concurrency of the
+   * ExtractionOptions, on the options' executor or on dedicated threads.
+   * The caller must close the returned spool to delete its files.
+   *
+   * @param directory where the spool files are created
+   * @return the spooled pages
+   */
+  public PageSpool spool(File directory) {
+    Preconditions.checkState(checkpointer == null,
+        "A checkpointed extraction cannot be spooled");
+    final PageSpool pageSpool = new PageSpool(directory,
+        PageSpool.DEFAULT_MAX_FILE_BYTES, type);
+    PageSize pageSize = new PageSize(limit, options);
+    Iterator<String> queries = queries();
+    long deadlineNanos = System.nanoTime() +
+        TimeUnit.MILLISECONDS.toNanos(options.getDeadlineMs());
+    int concurrency = Math.max(1, options.getPartitionConcurrency());
+    ExecutorService executor = options.getExecutor();
+    ExecutorService dedicated = null;
+    if (executor == null) {
+      dedicated = Executors.newFixedThreadPool(concurrency,
+          BatchPrefetcher.THREAD_FACTORY);
+      executor = dedicated;
+    }
+    List<Future<?>> tasks = Lists.newArrayListWithCapacity(concurrency);
+    try {
+      for (int i = 0; i < concurrency; i++) {
+        final PagingCursor cursor = new PagingCursor(client, type, pageSize,
+            queries, false);
+        if (options.getDeadlineMs() > 0) {
+          cursor.setDeadline(deadlineNanos);
+        }
+        tasks.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            try (PageSpool.Writer writer = pageSpool.newWriter()) {
+              while (cursor.nextSpoolPage(writer) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                  throw new InterruptedIOException("Spooling interrupted");
+                }
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        Uninterruptibles.getUninterruptibly(task);
+      }
+    } catch (ExecutionException e) {
+      cancel(tasks);
+      pageSpool.close();
+      throw Throwables.propagate(e.getCause());
+    } catch (RuntimeException e) {
+      cancel(tasks);
+      pageSpool.close();
+      throw e;
+    } finally {
+      if (dedicated != null) {
+        dedicated.shutdown();
+      }
+    }
+    return pageSpool;
+  }
+
+  private static void cancel(List<Future<?>> tasks) {
+    for (Future<?> task : tasks) {
+      task.cancel(true);
+    }
+  }
+
+  private void checkRecordClass(Class<? extends MetadataRecord> recordClass) {
+    Preconditions.checkArgument(recordClass == (type == MetadataType.ENTITIES ?
+            EntityRecord.class : RelationRecord.class),
+        "%s cannot hold %s", recordClass.getSimpleName(), type);
+  }
+
+  private <T> MetadataPublisher<T> newPublisher(final boolean records,
+                                                Executor executor) {
+    Preconditions.checkState(checkpointer == null,
+        "A checkpointed extraction cannot be published");
+    return new MetadataPublisher<T>(new Supplier<PagingCursor>() {
+      @Override
+      public PagingCursor get() {
+        return new PagingCursor(client, type, new PageSize(limit, options),
+            queries(), records);
+      }
+    }, executor);
+  }
+
+  private Iterator<String> queries() {
+    return partition ? Iterators.singletonIterator(query) :
+        MetadataResultIterator.getPartitionQueries(client, type, query,
+            extractorRunIds, options, checkpointer == null);
+  }
+
+  private MetadataResultIterator newIterator(boolean records) {
+    return new MetadataResultIterator(client, type, queries(), limit, options,
+        records, checkpointer);
+  }
+
+  private static class RecordIterator<T extends MetadataRecord>
+      implements Iterator<T>, Closeable {
+
+    private final Class<T> recordClass;
+    private final MetadataResultIterator iterator;
+
+    RecordIterator(Class<T> recordClass, MetadataResultIterator iterator) {
+      this.recordClass = recordClass;
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+      return recordClass.cast(iterator.next());
+    }
+
+    @Override
+    public void remove() {
+      iterator.remove();
+    }
+
+    @Override
+    public void close() {
+      iterator.close();
+    }
   }
 }
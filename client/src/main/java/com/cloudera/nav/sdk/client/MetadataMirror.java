@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local copy of the entities and relations of a Navigator server, kept up
+ * to date by applying incremental extractions. Lookups by identity and scans
+ * are served from a memory-mapped log-structured store in a local directory
+ * without contacting Navigator.
+ *
+ * Each {@link #update(MetadataExtractor) update} extracts what changed since
+ * the marker of the previous update, writes the results to the store and
+ * then persists the new marker next to it, so a mirror reopened from the
+ * same directory continues where it left off. Results flagged as deleted
+ * remove their identity from the mirror. Overwritten and deleted results
+ * are reclaimed by compaction in the background once they make up more than
+ * the configured share of the store.
+ *
+ * Lookups may run concurrently with an update.
+ */
+public class MetadataMirror implements Closeable {
+
+  public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+  public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+  static final String MARKER_FILE = "mirror.marker";
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(MetadataMirror.class);
+  private static final ThreadFactory COMPACTION_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("nav-mirror-compaction-%d")
+          .build();
+  private static final TypeReference<Map<String, Object>> RESULT_TYPE =
+      new TypeReference<Map<String, Object>>() { };
+
+  private final File directory;
+  private final double compactionRatio;
+  private final LogStore store;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final ExecutorService compactor =
+      Executors.newSingleThreadExecutor(COMPACTION_THREAD_FACTORY);
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  private volatile String marker;
+
+  public MetadataMirror(File directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACTION_RATIO);
+  }
+
+  /**
+   * @param directory holds the store and the marker, an existing mirror in
+   *                  the directory is reopened
+   * @param segmentBytes size of each segment file of the store
+   * @param compactionRatio share of garbage in the store above which it is
+   *                        compacted
+   */
+  public MetadataMirror(File directory, long segmentBytes,
+                        double compactionRatio) throws IOException {
+    Preconditions.checkArgument(compactionRatio > 0 && compactionRatio < 1,
+        "compactionRatio must be between 0 and 1");
+    this.directory = directory;
+    this.compactionRatio = compactionRatio;
+    this.store = new LogStore(directory, segmentBytes);
+    File markerFile = new File(directory, MARKER_FILE);
+    if (markerFile.exists()) {
+      this.marker = mapper.readValue(markerFile, MarkerFile.class)
+          .getMarker();
+    }
+  }
+
+  /**
+   * @return marker of the last applied extraction, or null if the mirror is
+   *         empty
+   */
+  public String getMarker() {
+    return marker;
+  }
+
+  /**
+   * Apply the entities and relations that changed since the last update.
+   * The first update of an empty mirror performs a full extraction. The new
+   * marker is only persisted once all results have been written, so an
+   * update that fails is repeated in full by the next one.
+   *
+   * @param extractor extractor of the Navigator server to mirror
+   * @return number of applied results
+   */
+  public long update(MetadataExtractor extractor) throws IOException {
+    MetadataResultSet results = marker == null ?
+        extractor.extractMetadata() : extractor.extractMetadata(marker);
+    long count = apply(MetadataType.ENTITIES, results.getEntities());
+    count += apply(MetadataType.RELATIONS, results.getRelations());
+    store.force();
+    MarkerFile markerFile = new MarkerFile();
+    markerFile.setMarker(results.getMarker());
+    LocalFiles.writeJsonAtomically(mapper, markerFile,
+        new File(directory, MARKER_FILE));
+    marker = results.getMarker();
+    return count;
+  }
+
+  /**
+   * Write a single entity or relation to the mirror. Results flagged as
+   * deleted remove their identity instead.
+   */
+  public void apply(MetadataType type, Map<String, Object> result)
+      throws IOException {
+    Object identity = result.get("identity");
+    Preconditions.checkArgument(identity != null, "Result has no identity");
+    String key = key(type, identity.toString());
+    if (Boolean.TRUE.equals(result.get("deleted"))) {
+      store.delete(key);
+    } else {
+      store.put(key, mapper.writeValueAsBytes(result));
+    }
+    maybeCompact();
+  }
+
+  /**
+   * @return the mirrored entity, or null if it is not in the mirror
+   */
+  public Map<String, Object> getEntity(String identity) {
+    return get(key(MetadataType.ENTITIES, identity));
+  }
+
+  /**
+   * @return the mirrored relation, or null if it is not in the mirror
+   */
+  public Map<String, Object> getRelation(String identity) {
+    return get(key(MetadataType.RELATIONS, identity));
+  }
+
+  /**
+   * Iterate over all mirrored entities or relations in no particular order.
+   * Results written after the scan started may or may not be returned, and
+   * results deleted after it started are skipped.
+   */
+  public Iterable<Map<String, Object>> scan(final MetadataType type) {
+    return new Iterable<Map<String, Object>>() {
+      @Override
+      public Iterator<Map<String, Object>> iterator() {
+        final Iterator<String> keys = store.keys(key(type, "")).iterator();
+        return new AbstractIterator<Map<String, Object>>() {
+          @Override
+          protected Map<String, Object> computeNext() {
+            while (keys.hasNext()) {
+              Map<String, Object> result = get(keys.next());
+              if (result != null) {
+                return result;
+              }
+            }
+            return endOfData();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * @return number of mirrored entities and relations
+   */
+  public int size() {
+    return store.size();
+  }
+
+  /**
+   * Wait for a running compaction and close the store
+   */
+  @Override
+  public void close() throws IOException {
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    store.force();
+    store.close();
+  }
+
+  @VisibleForTesting
+  LogStore getStore() {
+    return store;
+  }
+
+  /**
+   * Compact the store now, regardless of its share of garbage
+   *
+   * @return number of deleted segments
+   */
+  int compact() throws IOException {
+    return store.compact();
+  }
+
+  private long apply(MetadataType type, MetadataIterable results)
+      throws IOException {
+    long count = 0;
+    for (Map<String, Object> result : results) {
+      apply(type, result);
+      count++;
+    }
+    return count;
+  }
+
+  private Map<String, Object> get(String key) {
+    byte[] value = store.get(key);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return mapper.readValue(value, RESULT_TYPE);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void maybeCompact() {
+    if (store.getGarbageRatio() > compactionRatio &&
+        compacting.compareAndSet(false, true)) {
+      compactor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            store.compact();
+          } catch (IOException | RuntimeException e) {
+            LOG.warn("Compaction of mirror " + directory + " failed", e);
+          } finally {
+            compacting.set(false);
+          }
+        }
+      });
+    }
+  }
+
+  private static String key(MetadataType type, String identity) {
+    return (type == MetadataType.ENTITIES ? "E:" : "R:") + identity;
+  }
+
+  /**
+   * Persisted marker of the last applied extraction
+   */
+  static class MarkerFile {
+    private String marker;
+
+    public String getMarker() {
+      return marker;
+    }
+
+    public void setMarker(String marker) {
+      this.marker = marker;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Supplier;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Push based alternative to MetadataResultIterator. Results are delivered to
+ * a Subscriber on the given executor, and pages are only fetched from
+ * Navigator while the subscriber has outstanding demand, so no thread is held
+ * while a subscriber is not ready for more results. Each subscription pages
+ * through its results on its own and gives up its thread after every page,
+ * which lets many subscriptions share a small thread pool.
+ *
+ * The Subscriber and Subscription interfaces follow the Reactive Streams
+ * contract, so they are easily adapted to a Reactive Streams implementation.
+ * Pages are always fetched one at a time and decoded in full; the
+ * prefetching, concurrency and streaming ExtractionOptions do not apply.
+ *
+ * @param <T> Map&lt;String, Object&gt; or MetadataRecord type of the results
+ */
+public class MetadataPublisher<T> {
+
+  /**
+   * Receives the results of a subscription. Signals are never sent
+   * concurrently.
+   */
+  public interface Subscriber<T> {
+
+    /**
+     * Called once before any other signal. No results are fetched before
+     * the first request on the given subscription.
+     */
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T result);
+
+    void onError(Throwable t);
+
+    void onComplete();
+  }
+
+  /**
+   * Demand of a single subscriber
+   */
+  public interface Subscription {
+
+    /**
+     * Ask for up to n more results. Requests may be made from any thread,
+     * including from within onNext.
+     *
+     * @param n positive number of results
+     */
+    void request(long n);
+
+    /**
+     * Stop delivering results. No more pages are fetched once the page that
+     * is currently being fetched, if any, has been received.
+     */
+    void cancel();
+  }
+
+  private final Supplier<PagingCursor> cursors;
+  private final Executor executor;
+
+  /**
+   * @param cursors creates the cursor of each new subscription
+   * @param executor runs fetches and delivers results, should not run tasks
+   *                 on the submitting thread
+   */
+  MetadataPublisher(Supplier<PagingCursor> cursors, Executor executor) {
+    this.cursors = cursors;
+    this.executor = executor;
+  }
+
+  /**
+   * Start a new extraction of the results for the given subscriber
+   */
+  public void subscribe(Subscriber<? super T> subscriber) {
+    subscriber.onSubscribe(new PagingSubscription<T>(cursors.get(),
+        subscriber, executor));
+  }
+
+  private static class PagingSubscription<T> implements Subscription,
+      Runnable {
+
+    private final PagingCursor cursor;
+    private final Subscriber<? super T> subscriber;
+    private final Executor executor;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+    // only accessed while running on the executor
+    private Iterator<Map<String, Object>> batch;
+    private boolean done;
+
+    PagingSubscription(PagingCursor cursor,
+                       Subscriber<? super T> subscriber, Executor executor) {
+      this.cursor = cursor;
+      this.subscriber = subscriber;
+      this.executor = executor;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException(
+            "Requested " + n + " results, the request must be positive");
+      } else {
+        long current;
+        long next;
+        do {
+          current = demand.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, next));
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (pending.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    /**
+     * Deliver results until the demand is met, the subscription ends or a
+     * page has been fetched, in which case the remaining work is submitted
+     * to the executor again so that other subscriptions get a turn.
+     */
+    @Override
+    public void run() {
+      int missed = pending.get();
+      while (true) {
+        if (deliver()) {
+          executor.execute(this);
+          return;
+        }
+        missed = pending.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * @return whether a page was fetched and delivery should continue later
+     */
+    @SuppressWarnings("unchecked")
+    private boolean deliver() {
+      while (!done) {
+        if (cancelled || invalidRequest != null) {
+          done = true;
+          cursor.close();
+          if (!cancelled) {
+            subscriber.onError(invalidRequest);
+          }
+          return false;
+        }
+        if (demand.get() == 0) {
+          return false;
+        }
+        if (batch != null && batch.hasNext()) {
+          demand.decrementAndGet();
+          subscriber.onNext((T) batch.next());
+          continue;
+        }
+        List<Map<String, Object>> page;
+        try {
+          page = cursor.nextPage();
+        } catch (RuntimeException e) {
+          done = true;
+          subscriber.onError(e);
+          return false;
+        }
+        if (page.isEmpty()) {
+          done = true;
+          subscriber.onComplete();
+          return false;
+        }
+        batch = page.iterator();
+        return true;
+      }
+      return false;
+    }
+  }
+}
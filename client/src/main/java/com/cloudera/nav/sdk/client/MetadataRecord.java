@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.base.Enums;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single extracted entity or relation. The attributes that are commonly
+ * used during extraction are decoded into typed fields while the record is
+ * read. All other attributes are kept as undecoded JSON and are only decoded
+ * the first time one of them is accessed.
+ *
+ * A record is also a read-only Map with the same contents as the
+ * Map&lt;String, Object&gt; results returned by MetadataResultIterator.
+ * Records are not thread-safe.
+ */
+public abstract class MetadataRecord extends AbstractMap<String, Object> {
+
+  private static final String IDENTITY = "identity";
+  private static final String EXTRACTOR_RUN_ID = "extractorRunId";
+  static final Set<String> FIELDS = ImmutableSet.of(IDENTITY,
+      EXTRACTOR_RUN_ID);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> ATTRIBUTES_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+
+  private String identity;
+  private String extractorRunId;
+  private byte[] undecoded;
+  private Map<String, Object> attributes;
+  private Map<String, Object> map;
+  // typed fields that are present in the JSON with a null value
+  private Set<String> nullFields;
+
+  public String getIdentity() {
+    return identity;
+  }
+
+  public String getExtractorRunId() {
+    return extractorRunId;
+  }
+
+  /**
+   * @return the attributes that have no typed accessor, decoded on first use
+   */
+  public Map<String, Object> getAttributes() {
+    if (attributes == null) {
+      if (undecoded == null) {
+        attributes = Collections.emptyMap();
+      } else {
+        try {
+          attributes = Collections.unmodifiableMap(
+              MAPPER.<Map<String, Object>>readValue(undecoded,
+                  ATTRIBUTES_TYPE));
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+        undecoded = null;
+      }
+    }
+    return attributes;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (getFieldNames().contains(key)) {
+      Object value = getField((String) key);
+      if (isPresent((String) key, value)) {
+        return value;
+      }
+    }
+    return getAttributes().get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (getFieldNames().contains(key) &&
+        isPresent((String) key, getField((String) key))) {
+      return true;
+    }
+    // typed fields with a value of another type are kept undecoded
+    return getAttributes().containsKey(key);
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    if (map == null) {
+      Map<String, Object> all = Maps.newLinkedHashMap();
+      for (String name : getFieldNames()) {
+        Object value = getField(name);
+        if (isPresent(name, value)) {
+          all.put(name, value);
+        }
+      }
+      all.putAll(getAttributes());
+      map = Collections.unmodifiableMap(all);
+    }
+    return map.entrySet();
+  }
+
+  private boolean isPresent(String name, Object value) {
+    return value != null || (nullFields != null && nullFields.contains(name));
+  }
+
+  /**
+   * @return names of the attributes that are decoded into typed fields
+   */
+  protected Set<String> getFieldNames() {
+    return FIELDS;
+  }
+
+  /**
+   * @return the value of a typed field as it would appear in the decoded JSON
+   */
+  protected Object getField(String name) {
+    switch (name) {
+      case IDENTITY:
+        return identity;
+      case EXTRACTOR_RUN_ID:
+        return extractorRunId;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Decode the value of the given attribute into a typed field. The parser is
+   * positioned at the value. Arrays may be read even if they are then kept
+   * undecoded.
+   *
+   * @return false if the attribute should be kept undecoded instead
+   */
+  protected boolean readField(String name, JsonParser parser)
+      throws IOException {
+    if (!isText(parser)) {
+      return false;
+    }
+    switch (name) {
+      case IDENTITY:
+        identity = readText(parser);
+        return true;
+      case EXTRACTOR_RUN_ID:
+        extractorRunId = readText(parser);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Read the record from the JSON object the parser is positioned at, leaving
+   * the parser at the end of the object.
+   */
+  void read(JsonParser parser) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw new IllegalStateException("Expected a JSON object for record");
+    }
+    ByteArrayOutputStream out = null;
+    JsonGenerator generator = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+      JsonParser value = parser;
+      if (getFieldNames().contains(name)) {
+        // arrays are buffered so that they can still be kept undecoded if
+        // they turn out to hold other values than readField expects
+        TokenBuffer buffer = null;
+        if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+          buffer = new TokenBuffer(parser.getCodec());
+          buffer.copyCurrentStructure(parser);
+          value = buffer.asParser();
+          value.nextToken();
+        }
+        if (readField(name, value)) {
+          if (getField(name) == null) {
+            if (nullFields == null) {
+              nullFields = Sets.newHashSet();
+            }
+            nullFields.add(name);
+          }
+          continue;
+        }
+        if (buffer != null) {
+          value = buffer.asParser();
+          value.nextToken();
+        }
+      }
+      if (generator == null) {
+        out = new ByteArrayOutputStream();
+        generator = MAPPER.getFactory().createGenerator(out);
+        generator.writeStartObject();
+      }
+      generator.writeFieldName(name);
+      generator.copyCurrentStructure(value);
+    }
+    if (generator != null) {
+      generator.writeEndObject();
+      generator.close();
+      undecoded = out.toByteArray();
+    }
+  }
+
+  /**
+   * @return whether the current value is a string or null
+   */
+  protected static boolean isText(JsonParser parser) {
+    JsonToken token = parser.getCurrentToken();
+    return token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_NULL;
+  }
+
+  /**
+   * @return the current string value or null
+   */
+  protected static String readText(JsonParser parser) throws IOException {
+    return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null :
+        parser.getText();
+  }
+
+  /**
+   * @return the constant of the given enum named by the current value, or the
+   *         value itself if there is no such constant
+   */
+  protected static <E extends Enum<E>> Object readEnum(Class<E> enumClass,
+                                                       JsonParser parser)
+      throws IOException {
+    String text = readText(parser);
+    if (text == null) {
+      return null;
+    }
+    E constant = Enums.getIfPresent(enumClass, text).orNull();
+    return constant != null ? constant : text;
+  }
+
+  /**
+   * @return the given value if it is a constant of the given enum, null
+   *         otherwise
+   */
+  protected static <E extends Enum<E>> E asEnum(Class<E> enumClass,
+                                                Object value) {
+    return enumClass.isInstance(value) ? enumClass.cast(value) : null;
+  }
+
+  /**
+   * @return the value of an enum field as a String
+   */
+  protected static String toText(Object value) {
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * @return the current array of strings, or null if the current value is
+   *         not an array of strings. An array is read to its end either way.
+   */
+  protected static List<String> readTextList(JsonParser parser)
+      throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      return null;
+    }
+    ImmutableList.Builder<String> values = ImmutableList.builder();
+    boolean text = true;
+    JsonToken token;
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      if (token != JsonToken.VALUE_STRING) {
+        text = false;
+        parser.skipChildren();
+      } else if (text) {
+        values.add(parser.getText());
+      }
+    }
+    return text ? values.build() : null;
+  }
+}
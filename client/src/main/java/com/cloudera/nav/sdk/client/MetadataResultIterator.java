@@ -15,15 +15,27 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.cloudera.nav.sdk.client.ExtractionCheckpoint.Position;
 import com.cloudera.nav.sdk.model.MetadataType;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Lazy iterator over metadata (entities or relations determined by given
@@ -32,42 +44,179 @@ import java.util.NoSuchElementException;
  *
  * Under the hood, the iterator combines the query and the extractorRunIds and
  * sends a request via the given NavApiClient. The results are fetched in
- * batches.
+ * batches. In streaming mode each batch is decoded while it is read from the
+ * response. If prefetching is enabled in the ExtractionOptions, the following
+ * batches are fetched in the background while the current one is consumed.
+ * With a partition concurrency greater than one, several partitions of
+ * extractorRunIds are fetched at once and their results are interleaved in no
+ * particular order. In both cases close the iterator if iteration is
+ * abandoned before the end. The number of results per page is either the
+ * given limit or, with an adaptive page size, tuned to the target page
+ * latency of the ExtractionOptions.
+ *
+ * With a checkpoint, the iterator starts where the checkpointed iteration
+ * stopped and records the position of every result it returns. Results are
+ * returned at least once: a resumed iteration starts again at the last
+ * result recorded before the checkpoint was written.
+ *
+ * If the ExtractionOptions ask for de-duplication, each identity is returned
+ * once with its latest version. A first pass over all pages records the
+ * highest extractorRunId each identity is seen with; the second pass, which
+ * returns the results, skips copies from older runs and identities that
+ * were already returned.
  */
-public class MetadataResultIterator implements Iterator<Map<String, Object>> {
+public class MetadataResultIterator implements Iterator<Map<String, Object>>,
+    Closeable {
 
   public static final Integer MAX_QUERY_PARTITION_SIZE = 800;
 
-  private final NavApiCient client;
-  private final Integer limit;
+  private final PagingCursor cursor;
+  private final BatchPrefetcher prefetcher;
+  private final boolean streaming;
   private final MetadataType type;
-  private final String userQuery;
+  private final Checkpointer checkpointer;
   private boolean hasNext;
-  private Iterator<List<String>> partitionRunIdIterator;
-  private List<Map<String, Object>> resultsBatch;
   private Iterator<Map<String, Object>> resultsBatchIterator;
-  private String cursorMark = "*";
-  private String nextQuery;
+  private int pageQueryIndex;
+  private String pageCursorMark;
+  private int pageOffset;
+  private long emitted;
+  private boolean exhausted;
+  private IdentitySet identities;
+  private boolean duplicatesOnly;
 
   public MetadataResultIterator(NavApiCient client, MetadataType type,
                                 String query, Integer limit,
                                 Iterable<String> extractorRunIds) {
-    this.client = client;
+    this(client, type, query, limit, extractorRunIds, new ExtractionOptions());
+  }
+
+  public MetadataResultIterator(NavApiCient client, MetadataType type,
+                                String query, Integer limit,
+                                Iterable<String> extractorRunIds,
+                                ExtractionOptions options) {
+    this(client, type, query, limit, extractorRunIds, options, false);
+  }
+
+  /**
+   * @param records whether results are returned as EntityRecords or
+   *                RelationRecords instead of plain maps
+   */
+  MetadataResultIterator(NavApiCient client, MetadataType type, String query,
+                         Integer limit, Iterable<String> extractorRunIds,
+                         ExtractionOptions options, boolean records) {
+    this(client, type, query, limit, extractorRunIds, options, records, null);
+  }
+
+  /**
+   * @param checkpointer if not null, iteration starts at the position stored
+   *                     in its checkpoint and the checkpoint is updated as
+   *                     results are returned
+   */
+  MetadataResultIterator(NavApiCient client, MetadataType type, String query,
+                         Integer limit, Iterable<String> extractorRunIds,
+                         ExtractionOptions options, boolean records,
+                         Checkpointer checkpointer) {
+    this(client, type, getPartitionQueries(client, type, query,
+        extractorRunIds, options, checkpointer == null), limit, options,
+        records, checkpointer);
+  }
+
+  /**
+   * @param queries the partition queries to run, see getPartitionQueries
+   */
+  MetadataResultIterator(NavApiCient client, MetadataType type,
+                         Iterator<String> queries, Integer limit,
+                         ExtractionOptions options, boolean records,
+                         Checkpointer checkpointer) {
     this.type = type;
-    this.userQuery = query;
-    this.limit = limit;
-    this.partitionRunIdIterator = Iterables.partition(extractorRunIds,
-        MAX_QUERY_PARTITION_SIZE).iterator();
-    if(Iterables.isEmpty(extractorRunIds)) {
-      nextQuery = userQuery;
+    this.checkpointer = checkpointer;
+    if (options.isDeduplicate()) {
+      Preconditions.checkArgument(checkpointer == null,
+          "Checkpointed extraction cannot be de-duplicated");
+      identities = new IdentitySet(options.getMaxInMemoryIdentities(),
+          options.getSpillDirectory());
+    }
+    PageSize pageSize = new PageSize(limit, options);
+    long deadlineNanos = System.nanoTime() +
+        TimeUnit.MILLISECONDS.toNanos(options.getDeadlineMs());
+    if (identities != null) {
+      // the queries are run twice, once to find the latest version of every
+      // identity and once to return it
+      List<String> queryList = Lists.newArrayList(queries);
+      PagingCursor scan = new PagingCursor(client, type, pageSize,
+          queryList.iterator(), records);
+      if (options.getDeadlineMs() > 0) {
+        scan.setDeadline(deadlineNanos);
+      }
+      try {
+        scanVersions(scan);
+      } catch (RuntimeException e) {
+        identities.close();
+        throw e;
+      }
+      queries = queryList.iterator();
+    }
+    this.cursor = new PagingCursor(client, type, pageSize, queries, records);
+    if (options.getDeadlineMs() > 0) {
+      cursor.setDeadline(deadlineNanos);
+    }
+    int concurrency = options.getPartitionConcurrency();
+    this.streaming = options.isStreaming() && concurrency <= 1 &&
+        options.getPrefetchPages() <= 0;
+    if (checkpointer != null) {
+      Preconditions.checkArgument(concurrency <= 1 &&
+              options.getPrefetchPages() <= 0,
+          "Checkpointed extraction fetches pages synchronously");
+      prefetcher = null;
+      resume(checkpointer.getPosition(type));
+      return;
+    }
+    if (streaming) {
+      prefetcher = null;
+      setResultsBatch(cursor.nextPageStream());
+      return;
+    }
+    if (concurrency > 1) {
+      List<PagingCursor> cursors = Lists.newArrayList(cursor);
+      for (int i = 1; i < concurrency; i++) {
+        PagingCursor partitionCursor = new PagingCursor(client, type,
+            pageSize, queries, records);
+        if (options.getDeadlineMs() > 0) {
+          partitionCursor.setDeadline(deadlineNanos);
+        }
+        cursors.add(partitionCursor);
+      }
+      prefetcher = new BatchPrefetcher(cursors,
+          Math.max(concurrency, options.getPrefetchPages()),
+          options.getExecutor(), this);
+      setResultsBatch(prefetcher.take());
+      return;
+    }
+    setResultsBatch(cursor.nextPage());
+    if (options.getPrefetchPages() > 0 && hasNext && cursor.hasMorePages()) {
+      prefetcher = new BatchPrefetcher(Collections.singletonList(cursor),
+          options.getPrefetchPages(), options.getExecutor(), this);
     } else {
-      getNextQuery();
+      prefetcher = null;
     }
-    getNextBatch();
   }
 
   @Override
   public boolean hasNext() {
+    while (!hasNext && duplicatesOnly) {
+      // every result of the page had been returned before
+      fetchNextBatch();
+    }
+    if (!hasNext && identities != null) {
+      identities.close();
+      identities = null;
+    }
+    if (!hasNext && exhausted && checkpointer != null) {
+      // only now is the last result known to have been consumed
+      checkpointer.done(type, emitted);
+      exhausted = false;
+    }
     return hasNext;
   }
 
@@ -77,66 +226,273 @@ public class MetadataResultIterator implements Iterator<Map<String, Object>> {
       throw new NoSuchElementException();
     }
     Map<String, Object> nextResult = resultsBatchIterator.next();
-    //if at last element in batch
+    if (checkpointer != null) {
+      // a resumed iteration starts again at the result being returned
+      checkpointer.update(type, pageQueryIndex, pageCursorMark, pageOffset++,
+          emitted++);
+    }
+    //if at last element in batch, fetch the next one
     if(!resultsBatchIterator.hasNext()){
-      //if on last batch
-      if(resultsBatch.size()<limit) {
-        //if on last query, leave loop
-        if (!partitionRunIdIterator.hasNext()) {
-          hasNext = false;
-        //Update query and get next batch
-        } else {
-          getNextQuery();
-          getNextBatch();
-        }
-      //fetch next batch
-      } else {
-        getNextBatch();
-      }
+      fetchNextBatch();
     }
     return nextResult;
   }
 
   @VisibleForTesting
   void getNextBatch() {
-    // Retrieve the next batch of metadata results
+    // Retrieve the next batch of metadata results for the current query
+    setResultsBatch(cursor.fetchPage());
+  }
+
+  /**
+   * Stop iterating and cancel any background fetches
+   */
+  @Override
+  public void close() {
+    hasNext = false;
+    exhausted = false;
+    duplicatesOnly = false;
+    if (identities != null) {
+      identities.close();
+      identities = null;
+    }
+    if (prefetcher != null) {
+      prefetcher.cancel();
+    }
+    cursor.close();
+    if (checkpointer != null) {
+      checkpointer.flush();
+    }
+  }
+
+  private void fetchNextBatch() {
+    if (streaming) {
+      setResultsBatch(cursor.nextPageStream());
+    } else {
+      setResultsBatch(prefetcher != null ? prefetcher.take() :
+          cursor.nextPage());
+    }
+    if (checkpointer != null) {
+      pageQueryIndex = cursor.getPageQueryIndex();
+      pageCursorMark = cursor.getPageCursorMark();
+      pageOffset = 0;
+      exhausted = !hasNext;
+    }
+  }
+
+  /**
+   * Start iterating at the given checkpoint position by fetching the page it
+   * points to and skipping the results before it
+   */
+  private void resume(Position position) {
+    emitted = position.getEmitted();
+    if (position.isDone() ||
+        !cursor.resume(position.getPartition(), position.getCursorMark())) {
+      setResultsBatch(Collections.<Map<String, Object>>emptyIterator());
+      return;
+    }
+    fetchNextBatch();
+    // the page may be smaller than the one the offset was recorded in
+    int skip = position.getOffset();
+    while (hasNext && skip > 0) {
+      int skipped = Iterators.advance(resultsBatchIterator, skip);
+      pageOffset += skipped;
+      skip -= skipped;
+      if (!resultsBatchIterator.hasNext()) {
+        fetchNextBatch();
+      }
+    }
+  }
+
+  private void setResultsBatch(List<Map<String, Object>> resultsBatch) {
+    setResultsBatch(resultsBatch.iterator());
+  }
+
+  private void setResultsBatch(Iterator<Map<String, Object>> resultsBatch) {
+    resultsBatchIterator = resultsBatch != null ? resultsBatch :
+        Collections.<Map<String, Object>>emptyIterator();
+    boolean nonEmpty = resultsBatchIterator.hasNext();
+    if (identities != null && nonEmpty) {
+      resultsBatchIterator = Iterators.filter(resultsBatchIterator,
+          new Predicate<Map<String, Object>>() {
+            @Override
+            public boolean apply(Map<String, Object> result) {
+              return isLatestCopy(result);
+            }
+          });
+    }
+    hasNext = resultsBatchIterator.hasNext();
+    duplicatesOnly = nonEmpty && !hasNext;
+  }
+
+  /**
+   * Record the version of every result of the cursor
+   */
+  private void scanVersions(PagingCursor scan) {
     try {
-      ResultsBatch<Map<String, Object>> response = getResultsBatch();
-      resultsBatch = response.getResults();
-      resultsBatchIterator = resultsBatch.iterator();
-      hasNext = resultsBatchIterator.hasNext();
-      cursorMark = response.getCursorMark();
-      if (!hasNext && partitionRunIdIterator.hasNext()) {
-        getNextQuery();
-        getNextBatch();
+      List<Map<String, Object>> page;
+      while (!(page = scan.nextPage()).isEmpty()) {
+        for (Map<String, Object> result : page) {
+          Object identity = result.get("identity");
+          if (identity != null) {
+            identities.put(identity.toString(), getVersion(result));
+          }
+        }
       }
-    } catch (Exception e){
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      scan.close();
+    }
+  }
+
+  private boolean isLatestCopy(Map<String, Object> result) {
+    Object identity = result.get("identity");
+    if (identity == null) {
+      return true;
+    }
+    // returned identities are marked with a version no copy can reach
+    if (getVersion(result) < identities.getVersion(identity.toString())) {
+      return false;
+    }
+    try {
+      identities.put(identity.toString(), Long.MAX_VALUE);
+    } catch (IOException e) {
       throw Throwables.propagate(e);
     }
+    return true;
+  }
+
+  /**
+   * @return the run number of the extractorRunId of the result, sourceId##N,
+   *         or 0 if it has none
+   */
+  static long getVersion(Map<String, Object> result) {
+    Object extractorRunId = result.get("extractorRunId");
+    if (extractorRunId == null) {
+      return 0;
+    }
+    String runId = extractorRunId.toString();
+    int separator = runId.lastIndexOf("##");
+    if (separator < 0) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Long.parseLong(runId.substring(separator + 2)));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Same as {@link #getPartitionQueries(String, Iterable, int)}, but if the
+   * options ask for it and probe is set, the ranges of sources without
+   * results are dropped from ExtractorRunIdRanges first. The probe queries
+   * are sent when the first partition query is requested.
+   */
+  static Iterator<String> getPartitionQueries(final NavApiCient client,
+      final MetadataType type, final String userQuery,
+      Iterable<String> extractorRunIds, final ExtractionOptions options,
+      boolean probe) {
+    if (!probe || !options.isProbeRunIdRanges() ||
+        !(extractorRunIds instanceof ExtractorRunIdRanges)) {
+      return getPartitionQueries(userQuery, extractorRunIds,
+          options.getIdentityShards());
+    }
+    final ExtractorRunIdRanges ranges =
+        (ExtractorRunIdRanges) extractorRunIds;
+    return new AbstractIterator<String>() {
+      private Iterator<String> queries;
+
+      @Override
+      protected String computeNext() {
+        if (queries == null) {
+          ExtractorRunIdRanges probed = probeRanges(client, type, userQuery,
+              ranges);
+          // without any extractorRunIds the query would not be restricted
+          queries = Iterables.isEmpty(probed) ?
+              Collections.<String>emptyIterator() :
+              getPartitionQueries(userQuery, probed,
+                  options.getIdentityShards());
+        }
+        return queries.hasNext() ? queries.next() : endOfData();
+      }
+    };
   }
 
-  private ResultsBatch<Map<String, Object>> getResultsBatch() {
-    // Send the next request to the server to get a batch of results
-    MetadataQuery query = new MetadataQuery(nextQuery, limit, cursorMark);
-      switch(type) {
-        case ENTITIES:
-          return client.getEntityBatch(query);
-        case RELATIONS:
-          return client.getRelationBatch(query);
-        default:
-          throw new UnsupportedOperationException("Invalid MetadataType " +
-          type.name());
+  private static ExtractorRunIdRanges probeRanges(final NavApiCient client,
+      final MetadataType type, final String userQuery,
+      final ExtractorRunIdRanges ranges) {
+    return ranges.filter(new Predicate<String>() {
+      @Override
+      public boolean apply(String source) {
+        for (List<String> ids : Iterables.partition(ranges.getRange(source),
+            MAX_QUERY_PARTITION_SIZE)) {
+          String query = QueryUtils.conjoinSolrQueries(userQuery,
+              QueryUtils.buildConjunctiveClause("extractorRunId", ids));
+          if (hasResults(client, type, query)) {
+            return true;
+          }
+        }
+        return false;
       }
+    });
+  }
+
+  private static boolean hasResults(NavApiCient client, MetadataType type,
+                                    String query) {
+    MetadataQuery probe = new MetadataQuery(query, 1, "*");
+    switch (type) {
+      case ENTITIES:
+        return !client.getEntityBatch(probe).getResults().isEmpty();
+      case RELATIONS:
+        return !client.getRelationBatch(probe).getResults().isEmpty();
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+  }
+
+  /**
+   * Create the queries to run by combining the given userQuery with each
+   * partition of extractorRunIds. Full extractions, without extractorRunIds
+   * or with the wildcard only, are split into identity shards instead.
+   */
+  static Iterator<String> getPartitionQueries(
+      final String userQuery, Iterable<String> extractorRunIds,
+      int identityShards) {
+    if (identityShards > 1 && isFullExtraction(extractorRunIds)) {
+      final String query = Iterables.isEmpty(extractorRunIds) ? userQuery :
+          QueryUtils.conjoinSolrQueries(userQuery,
+              QueryUtils.buildConjunctiveClause("extractorRunId",
+                  Lists.newArrayList(extractorRunIds)));
+      return Iterators.transform(
+          QueryUtils.buildIdentityShards(identityShards).iterator(),
+          new Function<String, String>() {
+            @Override
+            public String apply(String shard) {
+              return QueryUtils.conjoinSolrQueries(query, shard);
+            }
+          });
+    }
+    if (Iterables.isEmpty(extractorRunIds)) {
+      return Iterators.singletonIterator(userQuery);
+    }
+    return Iterators.transform(Iterables.partition(extractorRunIds,
+            MAX_QUERY_PARTITION_SIZE).iterator(),
+        new Function<List<String>, String>() {
+          @Override
+          public String apply(List<String> extractorRunIdBatch) {
+            String extractorString = QueryUtils.buildConjunctiveClause(
+                "extractorRunId", extractorRunIdBatch);
+            return QueryUtils.conjoinSolrQueries(userQuery, extractorString);
+          }
+        });
   }
 
-  private void getNextQuery() {
-    // create the next query by combining the given userQuery with the next
-    // partition of extractorRunIds
-    cursorMark="*";
-    List<String> extractorRunIdBatch = partitionRunIdIterator.next();
-    String extractorString = QueryUtils.buildConjunctiveClause(
-        "extractorRunId", extractorRunIdBatch);
-    nextQuery = QueryUtils.conjoinSolrQueries(userQuery, extractorString);
+  private static boolean isFullExtraction(Iterable<String> extractorRunIds) {
+    return Iterables.isEmpty(extractorRunIds) ||
+        Iterables.elementsEqual(extractorRunIds, ImmutableList.of("*"));
   }
 
   /**
@@ -15,6 +15,18 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 /**
  * Class for clients to get all updated Entities and Relations and a marker of
  * most recent extractorRunId's for each source, that can then be used in
@@ -45,4 +57,76 @@ public class MetadataResultSet {
   public MetadataIterable getRelations() {
       return relations;
   }
+
+  /**
+   * @return the entities as typed, lazily decoded records
+   */
+  public Iterable<EntityRecord> getEntityRecords() {
+    return entities.records(EntityRecord.class);
+  }
+
+  /**
+   * @return the relations as typed, lazily decoded records
+   */
+  public Iterable<RelationRecord> getRelationRecords() {
+    return relations.records(RelationRecord.class);
+  }
+
+  /**
+   * Extract the entities and the relations at the same time, each on a
+   * thread of the given executor, and pass them to the given consumers. If
+   * one consumer is given for both, it receives the entities and relations
+   * interleaved and its calls are serialized.
+   *
+   * The returned future is the single completion signal of the extraction:
+   * it succeeds with the marker once all entities and relations have been
+   * consumed, which is when the marker should be committed. If either side
+   * fails, the other one is stopped and the future fails with the first
+   * error.
+   *
+   * @param executor runs the two extractions, needs two free threads for
+   *                 them to run concurrently
+   * @param entityConsumer receives the entities
+   * @param relationConsumer receives the relations
+   * @return future of the marker
+   */
+  public ListenableFuture<String> consume(ExecutorService executor,
+                                          MetadataConsumer entityConsumer,
+                                          MetadataConsumer relationConsumer) {
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(executor);
+    final ResultDrain entityDrain = new ResultDrain(entities,
+        MetadataType.ENTITIES, entityConsumer);
+    final ResultDrain relationDrain = new ResultDrain(relations,
+        MetadataType.RELATIONS, relationConsumer);
+    ListenableFuture<List<Long>> both = Futures.allAsList(ImmutableList.of(
+        service.submit(entityDrain), service.submit(relationDrain)));
+    Futures.addCallback(both, new FutureCallback<List<Long>>() {
+      @Override
+      public void onSuccess(List<Long> counts) {
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        entityDrain.cancel();
+        relationDrain.cancel();
+      }
+    });
+    return Futures.transform(both, new Function<List<Long>, String>() {
+      @Override
+      public String apply(List<Long> counts) {
+        return marker;
+      }
+    });
+  }
+
+  /**
+   * Same as {@link #consume(ExecutorService, MetadataConsumer,
+   * MetadataConsumer)} with one consumer receiving the entities and
+   * relations interleaved.
+   */
+  public ListenableFuture<String> consume(ExecutorService executor,
+                                          MetadataConsumer consumer) {
+    return consume(executor, consumer, consumer);
+  }
 }
@@ -17,58 +17,149 @@ package com.cloudera.nav.sdk.client;
 
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * An API client to communicate with Navigator to register and validate
- * metadata models
+ * metadata models.
+ *
+ * The client owns a pool of keep-alive HTTP connections to the Navigator
+ * server that is shared by all requests, so it should be created once and
+ * closed when it is no longer needed.
  */
-public class NavApiCient {
+public class NavApiCient implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(NavApiCient.class);
   private static final String SOURCE_QUERY = "type:SOURCE";
+  private static final ThreadFactory HEDGE_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setNameFormat("nav-hedged-request-%d")
+          .setDaemon(true)
+          .build();
+  private static final ThreadFactory ASYNC_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setNameFormat("nav-async-request-%d")
+          .setDaemon(true)
+          .build();
 
   private final ClientConfig config;
-  private final Cache<String, Source> sourceCacheByUrl;
-  private final Cache<SourceType, Collection<Source>> sourceCacheByType;
+  private final SourceCatalog sourceCatalog;
   private final boolean isSSL;
   private final SSLContext sslContext;
   private final HostnameVerifier hostnameVerifier;
+  private final CloseableHttpClient httpClient;
+  private final RestTemplate restTemplate;
+  private final ObjectMapper mapper;
+  private final SingleFlight<List<Object>, ResultsBatch<?>> batchFlights;
+  private final SingleFlight<String, Collection<Source>> sourceFlights;
+  private final RetryPolicy retryPolicy;
+  private final ExecutorService hedgeExecutor;
+  private final RequestHedger hedger;
+  private final ConcurrencyLimiter limiter;
+  private final ListeningExecutorService asyncExecutor;
+  private final boolean ownsAsyncExecutor;
 
   public NavApiCient(ClientConfig config) {
     this.config = config;
-    this.sourceCacheByUrl = CacheBuilder.newBuilder().build();
-    this.sourceCacheByType = CacheBuilder.newBuilder().build();
+    this.sourceCatalog = new SourceCatalog(new Callable<Collection<Source>>() {
+      @Override
+      public Collection<Source> call() {
+        return getAllSources();
+      }
+    }, config.getSourceCacheTtlMs(), config.getSourceMissTtlMs(),
+        config.getSourceCacheFile() == null ? null :
+            new File(config.getSourceCacheFile()));
     this.isSSL = SSLUtils.isSSL(config.getNavigatorUrl());
     this.sslContext = isSSL ? SSLUtils.getSSLContext(config) : null;
     this.hostnameVerifier = isSSL ? SSLUtils.getHostnameVerifier(config) : null;
+    this.httpClient = newHttpClient();
+    HttpComponentsClientHttpRequestFactory requestFactory =
+        new HttpComponentsClientHttpRequestFactory(httpClient);
+    requestFactory.setConnectTimeout(config.getConnectTimeoutMs());
+    requestFactory.setReadTimeout(config.getReadTimeoutMs());
+    this.restTemplate = new RestTemplate(requestFactory);
+    // every request is authenticated by the session
+    this.restTemplate.setInterceptors(
+        Lists.<ClientHttpRequestInterceptor>newArrayList(
+            new SessionInterceptor(new AuthSession(config))));
+    this.mapper = new ObjectMapper();
+    this.batchFlights = config.isCoalesceRequests() ?
+        new SingleFlight<List<Object>, ResultsBatch<?>>() : null;
+    this.sourceFlights = config.isCoalesceRequests() ?
+        new SingleFlight<String, Collection<Source>>() : null;
+    this.limiter = ConcurrencyLimiter.forServer(config,
+        config.getNavigatorUrl());
+    this.ownsAsyncExecutor = config.getAsyncExecutor() == null;
+    this.asyncExecutor = MoreExecutors.listeningDecorator(ownsAsyncExecutor ?
+        Executors.newFixedThreadPool(config.getMaxConnectionsPerRoute(),
+            ASYNC_THREAD_FACTORY) :
+        config.getAsyncExecutor());
+    this.retryPolicy = new RetryPolicy(config.getMaxRetries(),
+        config.getRetryBackoffMs(), config.getMaxRetryBackoffMs());
+    if (config.getHedgePercentile() > 0) {
+      this.hedgeExecutor = Executors.newCachedThreadPool(HEDGE_THREAD_FACTORY);
+      this.hedger = new RequestHedger(hedgeExecutor,
+          config.getHedgePercentile());
+    } else {
+      this.hedgeExecutor = null;
+      this.hedger = null;
+    }
   }
 
   /**
@@ -81,17 +172,37 @@ public class NavApiCient {
   }
 
   /**
-   * Call the Navigator API and retrieve all available sources
+   * Call the Navigator API and retrieve all available sources. Unlike
+   * {@link #getSourceSnapshot()} this always sends a request.
    *
    * @return a collection of available sources
    */
   public Collection<Source> getAllSources() {
-    RestTemplate restTemplate = newRestTemplate();
-    String url = getUrl();
-    HttpHeaders headers = getAuthHeaders();
-    HttpEntity<String> request = new HttpEntity<String>(headers);
-    ResponseEntity<SourceAttrs[]> response = restTemplate.exchange(url,
-        HttpMethod.GET, request, SourceAttrs[].class);
+    final String url = getUrl();
+    if (sourceFlights == null) {
+      return fetchAllSources(url);
+    }
+    // every caller gets its own copy of the shared sources
+    return Lists.newArrayList(sourceFlights.execute(url,
+        new Callable<Collection<Source>>() {
+          @Override
+          public Collection<Source> call() {
+            return fetchAllSources(url);
+          }
+        }));
+  }
+
+  private Collection<Source> fetchAllSources(final String url) {
+    final HttpEntity<String> request = new HttpEntity<String>(
+        new HttpHeaders());
+    ResponseEntity<SourceAttrs[]> response = limited(
+        new Callable<ResponseEntity<SourceAttrs[]>>() {
+          @Override
+          public ResponseEntity<SourceAttrs[]> call() {
+            return restTemplate.exchange(url, HttpMethod.GET, request,
+                SourceAttrs[].class);
+          }
+        });
     Collection<Source> sources = Lists.newArrayList();
     for (SourceAttrs info : response.getBody()) {
       sources.add(info.createSource());
@@ -99,6 +210,20 @@ public class NavApiCient {
     return sources;
   }
 
+  /**
+   * {@link #getAllSources()} on the async executor of the client
+   *
+   * @return future of the available sources
+   */
+  public ListenableFuture<Collection<Source>> getAllSourcesAsync() {
+    return asyncExecutor.submit(new Callable<Collection<Source>>() {
+      @Override
+      public Collection<Source> call() {
+        return getAllSources();
+      }
+    });
+  }
+
   /**
    * Constructs relation API call from query, and cursorMark.Returns a batch of
    * results that satisfy the query, starting from the cursorMark.
@@ -122,6 +247,121 @@ public class NavApiCient {
     return queryNav(fullUrlPost, metadataQuery, EntityResultsBatch.class);
   }
 
+  /**
+   * {@link #getRelationBatch(MetadataQuery) getRelationBatch} on the async
+   * executor of the client. Many batches can be requested at once without
+   * a thread per request, at most as many are sent concurrently as the
+   * executor has threads.
+   *
+   * @param metadataQuery Solr query string, cursormark and limit
+   * @return future of the batch
+   */
+  public ListenableFuture<ResultsBatch<Map<String, Object>>>
+      getRelationBatchAsync(final MetadataQuery metadataQuery) {
+    return asyncExecutor.submit(
+        new Callable<ResultsBatch<Map<String, Object>>>() {
+          @Override
+          public ResultsBatch<Map<String, Object>> call() {
+            return getRelationBatch(metadataQuery);
+          }
+        });
+  }
+
+  /**
+   * {@link #getRelationBatchAsync(MetadataQuery) getRelationBatchAsync} with
+   * entities
+   */
+  public ListenableFuture<ResultsBatch<Map<String, Object>>>
+      getEntityBatchAsync(final MetadataQuery metadataQuery) {
+    return asyncExecutor.submit(
+        new Callable<ResultsBatch<Map<String, Object>>>() {
+          @Override
+          public ResultsBatch<Map<String, Object>> call() {
+            return getEntityBatch(metadataQuery);
+          }
+        });
+  }
+
+  /**
+   * {@link #getRelationBatch(MetadataQuery) getRelationBatch} that returns
+   * the relations as typed, lazily decoded records. Records are not
+   * thread-safe, so these batches are never shared by coalesced requests.
+   */
+  public ResultsBatch<RelationRecord> getRelationRecordBatch(
+      MetadataQuery metadataQuery) {
+    return postQuery(getUrl("relations"), metadataQuery,
+        RelationRecordsBatch.class);
+  }
+
+  /**
+   * {@link #getRelationRecordBatch(MetadataQuery) getRelationRecordBatch}
+   * with entities
+   */
+  public ResultsBatch<EntityRecord> getEntityRecordBatch(
+      MetadataQuery metadataQuery) {
+    return postQuery(getUrl("entities"), metadataQuery,
+        EntityRecordsBatch.class);
+  }
+
+  /**
+   * {@link #getRelationBatch(MetadataQuery) getRelationBatch} that decodes
+   * the relations one at a time as they are read from the response. The
+   * returned stream must be read to the end or closed.
+   *
+   * @param metadataQuery Solr query string, cursormark and limit
+   * @return stream of the relations that satisfy the query
+   */
+  public ResultsBatchStream streamRelationBatch(MetadataQuery metadataQuery) {
+    return streamNav(getUrl("relations"), metadataQuery, Map.class);
+  }
+
+  /**
+   * {@link #streamRelationBatch(MetadataQuery) streamRelationBatch} with
+   * entities
+   */
+  public ResultsBatchStream streamEntityBatch(MetadataQuery metadataQuery) {
+    return streamNav(getUrl("entities"), metadataQuery, Map.class);
+  }
+
+  /**
+   * {@link #streamRelationBatch(MetadataQuery) streamRelationBatch} that
+   * returns the relations as RelationRecords
+   */
+  public ResultsBatchStream streamRelationRecords(
+      MetadataQuery metadataQuery) {
+    return streamNav(getUrl("relations"), metadataQuery,
+        RelationRecord.class);
+  }
+
+  /**
+   * {@link #streamRelationRecords(MetadataQuery) streamRelationRecords} with
+   * entities
+   */
+  public ResultsBatchStream streamEntityRecords(MetadataQuery metadataQuery) {
+    return streamNav(getUrl("entities"), metadataQuery, EntityRecord.class);
+  }
+
+  /**
+   * Copy the raw response of a relation paging request to the given spool
+   * writer instead of decoding it. The whole page is requested again if the
+   * copy fails.
+   *
+   * @return the spooled page with its cursorMark and number of results
+   */
+  PageSpool.Page spoolRelationBatch(MetadataQuery metadataQuery,
+                                    PageSpool.Writer writer) {
+    return spoolNav(getUrl("relations"), metadataQuery, writer);
+  }
+
+  /**
+   * {@link #spoolRelationBatch(MetadataQuery, PageSpool.Writer)} with
+   * entities
+   */
+  PageSpool.Page spoolEntityBatch(MetadataQuery metadataQuery,
+                                  PageSpool.Writer writer) {
+    return spoolNav(getUrl("entities"), metadataQuery, writer);
+  }
+
   /**
    * Constructs a POST Request from the given URL and body and returns the
    * response body contains a batch of results.
@@ -133,30 +373,261 @@ public class NavApiCient {
    * query parameters in the URL and request body
    */
   @VisibleForTesting
-  public ResultsBatch<Map<String, Object>> queryNav(String url,
-                                                    MetadataQuery metadataQuery,
-                                                    Class<? extends ResultsBatch<Map<String, Object>>> resultClass) {
-    RestTemplate restTemplate = newRestTemplate();
-    HttpHeaders headers = getAuthHeaders();
-    HttpEntity<MetadataQuery> request =
-        new HttpEntity<MetadataQuery>(metadataQuery, headers);
-    return restTemplate.exchange(url, HttpMethod.POST, request,
-        resultClass).getBody();
-  }
-
-  private RestTemplate newRestTemplate() {
+  @SuppressWarnings("unchecked")
+  public <T> ResultsBatch<T> queryNav(final String url,
+      final MetadataQuery metadataQuery,
+      final Class<? extends ResultsBatch<T>> resultClass) {
+    if (batchFlights == null) {
+      return postQuery(url, metadataQuery, resultClass);
+    }
+    List<Object> key = Arrays.<Object>asList(url, metadataQuery.getQuery(),
+        metadataQuery.getLimit(), metadataQuery.getCursorMark(), resultClass);
+    return (ResultsBatch<T>) batchFlights.execute(key,
+        new Callable<ResultsBatch<?>>() {
+          @Override
+          public ResultsBatch<?> call() {
+            return postQuery(url, metadataQuery, resultClass);
+          }
+        });
+  }
+
+  /**
+   * Post the query, retrying it if it fails and hedging it if it is slow
+   */
+  private <T> ResultsBatch<T> postQuery(final String url,
+      final MetadataQuery metadataQuery,
+      final Class<? extends ResultsBatch<T>> resultClass) {
+    final Callable<ResultsBatch<T>> post = new Callable<ResultsBatch<T>>() {
+      @Override
+      public ResultsBatch<T> call() {
+        return limited(new Callable<ResultsBatch<T>>() {
+          @Override
+          public ResultsBatch<T> call() {
+            return exchangeQuery(url, metadataQuery, resultClass);
+          }
+        });
+      }
+    };
+    if (hedger == null) {
+      return retryPolicy.call(post);
+    }
+    return retryPolicy.call(new Callable<ResultsBatch<T>>() {
+      @Override
+      public ResultsBatch<T> call() {
+        return hedger.call(post);
+      }
+    });
+  }
+
+  private <T> ResultsBatch<T> exchangeQuery(String url,
+      final MetadataQuery metadataQuery,
+      final Class<? extends ResultsBatch<T>> resultClass) {
+    return restTemplate.execute(url, HttpMethod.POST,
+        new RequestCallback() {
+          @Override
+          public void doWithRequest(ClientHttpRequest request)
+              throws IOException {
+            writeQuery(request, metadataQuery);
+          }
+        },
+        new ResponseExtractor<ResultsBatch<T>>() {
+          @Override
+          public ResultsBatch<T> extractData(ClientHttpResponse response)
+              throws IOException {
+            CountingInputStream body =
+                new CountingInputStream(response.getBody());
+            ResultsBatch<T> batch = mapper.readValue(body, resultClass);
+            batch.setResponseBytes(body.getCount());
+            return batch;
+          }
+        });
+  }
+
+  /**
+   * @return number of paging requests that were hedged with a second request
+   */
+  @VisibleForTesting
+  long getHedgedRequestCount() {
+    return hedger == null ? 0 : hedger.getHedgedCount();
+  }
+
+  private void writeQuery(ClientHttpRequest request,
+                          MetadataQuery metadataQuery) throws IOException {
+    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+    request.getHeaders().setAccept(
+        Lists.newArrayList(MediaType.APPLICATION_JSON));
+    mapper.writeValue(request.getBody(), metadataQuery);
+  }
+
+  /**
+   * Constructs a POST Request from the given URL and body and returns a
+   * stream over the results in the response body. The response is kept open
+   * until the stream has been read to the end or closed.
+   */
+  @SuppressWarnings("rawtypes")
+  private ResultsBatchStream streamNav(final String url,
+                                       final MetadataQuery metadataQuery,
+                                       final Class<? extends Map> resultClass) {
+    // only opening the stream is retried, a partly read page is not
+    return retryPolicy.call(new Callable<ResultsBatchStream>() {
+      @Override
+      public ResultsBatchStream call() {
+        // the permit is held until the response headers have arrived
+        return limited(new Callable<ResultsBatchStream>() {
+          @Override
+          public ResultsBatchStream call() {
+            return openStream(url, metadataQuery, resultClass);
+          }
+        });
+      }
+    });
+  }
+
+  private PageSpool.Page spoolNav(final String url,
+                                  final MetadataQuery metadataQuery,
+                                  final PageSpool.Writer writer) {
+    return retryPolicy.call(new Callable<PageSpool.Page>() {
+      @Override
+      public PageSpool.Page call() {
+        return limited(new Callable<PageSpool.Page>() {
+          @Override
+          public PageSpool.Page call() {
+            return restTemplate.execute(url, HttpMethod.POST,
+                new RequestCallback() {
+                  @Override
+                  public void doWithRequest(ClientHttpRequest request)
+                      throws IOException {
+                    writeQuery(request, metadataQuery);
+                  }
+                },
+                new ResponseExtractor<PageSpool.Page>() {
+                  @Override
+                  public PageSpool.Page extractData(
+                      ClientHttpResponse response) throws IOException {
+                    return writer.write(response.getBody());
+                  }
+                });
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Send a request under the concurrency limit, if any, and report its
+   * outcome to the limiter
+   */
+  private <V> V limited(Callable<V> request) {
+    ConcurrencyLimiter.Permit permit = limiter == null ? null :
+        limiter.acquire();
+    V result;
+    try {
+      result = request.call();
+    } catch (Exception e) {
+      if (permit != null) {
+        if (isOverload(e)) {
+          permit.releaseOverloaded();
+        } else {
+          permit.releaseIgnored();
+        }
+      }
+      throw Throwables.propagate(e);
+    }
+    if (permit != null) {
+      permit.release();
+    }
+    return result;
+  }
+
+  private static boolean isOverload(Exception e) {
+    if (e instanceof HttpStatusCodeException) {
+      return ConcurrencyLimiter.isOverloadStatus(
+          ((HttpStatusCodeException) e).getStatusCode().value());
+    }
+    return e instanceof ResourceAccessException;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private ResultsBatchStream openStream(String url,
+                                        MetadataQuery metadataQuery,
+                                        Class<? extends Map> resultClass) {
+    ClientHttpResponse response = null;
+    try {
+      ClientHttpRequest request = restTemplate.getRequestFactory()
+          .createRequest(URI.create(url), HttpMethod.POST);
+      writeQuery(request, metadataQuery);
+      response = request.execute();
+      ResponseErrorHandler errorHandler = restTemplate.getErrorHandler();
+      if (errorHandler.hasError(response)) {
+        errorHandler.handleError(response);
+      }
+      return new ResultsBatchStream(response.getBody(), response, mapper,
+          resultClass);
+    } catch (IOException e) {
+      closeQuietly(response);
+      throw Throwables.propagate(e);
+    } catch (RuntimeException e) {
+      closeQuietly(response);
+      throw e;
+    }
+  }
+
+  private static void closeQuietly(ClientHttpResponse response) {
+    if (response != null) {
+      try {
+        response.close();
+      } catch (RuntimeException e) {
+        LOG.debug("Failed to close response", e);
+      }
+    }
+  }
+
+  /**
+   * Release the pooled connections held by this client. The client cannot be
+   * used after it has been closed.
+   */
+  @Override
+  public void close() {
+    if (ownsAsyncExecutor) {
+      asyncExecutor.shutdownNow();
+    }
+    if (hedgeExecutor != null) {
+      hedgeExecutor.shutdownNow();
+    }
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private CloseableHttpClient newHttpClient() {
+    RegistryBuilder<ConnectionSocketFactory> registry = RegistryBuilder
+        .<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory());
     if (isSSL) {
-      CloseableHttpClient httpClient = HttpClients.custom()
-          .setSSLContext(sslContext)
-          .setSSLHostnameVerifier(hostnameVerifier)
-          .build();
-      HttpComponentsClientHttpRequestFactory requestFactory =
-          new HttpComponentsClientHttpRequestFactory();
-      requestFactory.setHttpClient(httpClient);
-      return new RestTemplate(requestFactory);
-    } else {
-      return new RestTemplate();
+      // A single socket factory (and SSLContext) for the life of the client
+      // lets new connections resume cached TLS sessions
+      registry.register("https",
+          new SSLConnectionSocketFactory(sslContext, hostnameVerifier));
     }
+    PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(registry.build());
+    connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+    connectionManager.setMaxTotal(config.getMaxTotalConnections());
+    long keepAliveMs = config.getConnectionKeepAliveMs();
+    HttpClientBuilder builder = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setKeepAliveStrategy(new KeepAliveStrategy(keepAliveMs))
+        .evictExpiredConnections()
+        .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS);
+    if (!config.isCompressResponses()) {
+      // by default gzip/deflate is requested and decoded while streaming
+      builder.disableContentCompression();
+    }
+    // cookies are managed by the AuthSession
+    builder.disableCookieManagement();
+    return builder.build();
   }
 
   /**
@@ -168,11 +639,12 @@ public class NavApiCient {
    * @return
    */
   public Source getSourceForUrl(String serviceUrl) {
-    Source source = sourceCacheByUrl.getIfPresent(serviceUrl);
+    SourceSnapshot sources = getSourceSnapshot();
+    Source source = sources.getSourceForUrl(serviceUrl);
     if (source == null) {
-      loadAllSources();
+      source = sourceCatalog.getSnapshotAfterMiss(serviceUrl, sources)
+          .getSourceForUrl(serviceUrl);
     }
-    source = sourceCacheByUrl.getIfPresent(serviceUrl);
     Preconditions.checkArgument(source != null,
         "Could not find Source at " + serviceUrl);
     return source;
@@ -193,20 +665,32 @@ public class NavApiCient {
   }
 
   public Collection<Source> getSourcesForType(SourceType sourceType) {
-    Collection<Source> sources = sourceCacheByType.getIfPresent(sourceType);
-    if (sources == null) {
-      loadAllSources();
-      sources = sourceCacheByType.getIfPresent(sourceType);
+    SourceSnapshot sources = getSourceSnapshot();
+    Collection<Source> forType = sources.getSourcesForType(sourceType);
+    if (forType.isEmpty()) {
+      forType = sourceCatalog.getSnapshotAfterMiss(sourceType, sources)
+          .getSourcesForType(sourceType);
     }
-    return sources;
+    return forType.isEmpty() ? null : forType;
+  }
+
+  /**
+   * Get the cached Sources, retrieving them from Navigator if the cached
+   * sources are older than {@link ClientConfig#getSourceCacheTtlMs()}.
+   * Callers that need a consistent view of the sources across several
+   * lookups should use a single snapshot for all of them.
+   *
+   * @return snapshot of all available sources
+   */
+  public SourceSnapshot getSourceSnapshot() {
+    return sourceCatalog.getSnapshot();
   }
 
   /**
    * Clear the cache of Sources that have been previously loaded.
    */
   public void resetSources() {
-    sourceCacheByUrl.invalidateAll();
-    sourceCacheByType.invalidateAll();
+    sourceCatalog.invalidate();
   }
 
   /**
@@ -214,17 +698,6 @@ public class NavApiCient {
    *
    * @return HttpHeaders headers for authorizing the plugin
    */
-  private HttpHeaders getAuthHeaders() {
-    // basic authentication with base64 encoding
-    String plainCreds = String.format("%s:%s", config.getUsername(),
-        config.getPassword());
-    byte[] plainCredsBytes = plainCreds.getBytes();
-    byte[] base64CredsBytes = Base64.encodeBase64(plainCredsBytes);
-    String base64Creds = new String(base64CredsBytes);
-    HttpHeaders headers = new HttpHeaders();
-    headers.add("Authorization", "Basic " + base64Creds);
-    return headers;
-  }
 
   /**
    * @return url for querying all sources
@@ -242,33 +715,28 @@ public class NavApiCient {
     return typeUrl + "/paging";
   }
 
-  private void loadAllSources() {
-    Collection<Source> allSources = getAllSources();
-    for (Source source : allSources) {
-      if (source.getSourceUrl() == null) {
-        LOG.warn(String.format("Source %s did not have a source url",
-            source.getName() != null ? source.getName() :
-                source.getIdentity()));
-        continue;
-      }
-      sourceCacheByUrl.put(source.getSourceUrl(), source);
-      try {
-        Collection<Source> forType = sourceCacheByType.get(
-            source.getSourceType(),
-            new Callable<Collection<Source>>() {
-              @Override
-              public Collection<Source> call() throws Exception {
-                return Sets.newHashSet();
-              }
-            });
-        forType.add(source);
-      } catch (ExecutionException e) {
-        throw Throwables.propagate(e);
-      }
-    }
-  }
-
   private static String joinUrlPath(String base, String component) {
     return base + (base.endsWith("/") ? "" : "/") + component;
   }
+
+  /**
+   * Honors the keep-alive timeout sent by the server and falls back to the
+   * configured timeout instead of keeping connections open indefinitely
+   */
+  private static class KeepAliveStrategy
+      extends DefaultConnectionKeepAliveStrategy {
+
+    private final long defaultKeepAliveMs;
+
+    KeepAliveStrategy(long defaultKeepAliveMs) {
+      this.defaultKeepAliveMs = defaultKeepAliveMs;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response,
+                                     HttpContext context) {
+      long keepAliveMs = super.getKeepAliveDuration(response, context);
+      return keepAliveMs > 0 ? keepAliveMs : defaultKeepAliveMs;
+    }
+  }
 }
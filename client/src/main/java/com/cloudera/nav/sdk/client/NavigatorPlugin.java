@@ -22,6 +22,7 @@ import com.cloudera.nav.sdk.model.entities.Entity;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.Map;
 
@@ -32,7 +33,7 @@ import org.apache.commons.lang.StringUtils;
  * write enriched data to be combined with Navigator's lineage and metadata
  * information
  */
-public class NavigatorPlugin {
+public class NavigatorPlugin implements Closeable {
 
   /**
    * Use the information contained in the given configuration file to
@@ -145,4 +146,12 @@ public class NavigatorPlugin {
   public String getNamespace() {
     return config.getNamespace();
   }
+
+  /**
+   * Release the connections held by the underlying API client
+   */
+  @Override
+  public void close() {
+    client.close();
+  }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes results as newline delimited JSON, one result per line, to gzip
+ * compressed files named prefix-entities-00000.ndjson.gz and so on. Every
+ * flush ends the current deflate block so that flushed results can be
+ * decompressed while the file is still being written.
+ */
+public class NdjsonSink extends RollingSink {
+
+  static final String EXTENSION = ".ndjson.gz";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final int compressionLevel;
+
+  public NdjsonSink(File directory, String prefix) {
+    this(directory, prefix, new SinkOptions());
+  }
+
+  public NdjsonSink(File directory, String prefix, SinkOptions options) {
+    super(directory, prefix, EXTENSION, options);
+    this.compressionLevel = options.getCompressionLevel();
+    mapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
+  }
+
+  @Override
+  protected FileWriter newFileWriter(MetadataType type, OutputStream out)
+      throws IOException {
+    final GZIPOutputStream gzip = new GZIPOutputStream(out, 8192, true) {
+      {
+        def.setLevel(compressionLevel);
+      }
+    };
+    final JsonGenerator generator = mapper.getFactory().createGenerator(gzip);
+    generator.setRootValueSeparator(null);
+    return new FileWriter() {
+      @Override
+      public void write(Map<String, Object> result) throws IOException {
+        mapper.writeValue(generator, result);
+        generator.writeRaw('\n');
+      }
+
+      @Override
+      public void flush() throws IOException {
+        generator.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        generator.close();
+      }
+    };
+  }
+}
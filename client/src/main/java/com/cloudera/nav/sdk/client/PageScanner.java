@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Scans the raw bytes of a paging response for the cursorMark and the number
+ * of results, without decoding the results. The response is fed in chunks
+ * as it is received. Only strings of the top level object are collected,
+ * everything deeper is skipped byte by byte.
+ */
+class PageScanner {
+
+  private static final String CURSOR_MARK = "cursorMark";
+  private static final Set<String> RESULTS_FIELDS =
+      ImmutableSet.of("results", "entities", "relations");
+
+  private final ByteArrayOutputStream string = new ByteArrayOutputStream();
+  private int depth;
+  private boolean inString;
+  private boolean escaped;
+  private boolean expectKey;
+  private boolean inResults;
+  private String key;
+  private String cursorMark;
+  private int count;
+
+  /**
+   * Scan the remaining bytes of the given buffer without consuming them
+   */
+  void update(ByteBuffer bytes) {
+    for (int i = bytes.position(); i < bytes.limit(); i++) {
+      update(bytes.get(i));
+    }
+  }
+
+  /**
+   * @return cursorMark of the page, or null if it had none
+   */
+  String getCursorMark() {
+    return cursorMark;
+  }
+
+  /**
+   * @return number of results in the page
+   */
+  int getCount() {
+    return count;
+  }
+
+  private void update(byte b) {
+    if (inString) {
+      if (escaped) {
+        escaped = false;
+        if (depth == 1) {
+          string.write(unescape(b));
+        }
+      } else if (b == '\\') {
+        escaped = true;
+      } else if (b == '"') {
+        inString = false;
+        if (depth == 1) {
+          endString(new String(string.toByteArray(), Charsets.UTF_8));
+        }
+      } else if (depth == 1) {
+        string.write(b);
+      }
+      return;
+    }
+    switch (b) {
+      case '"':
+        inString = true;
+        string.reset();
+        break;
+      case '{':
+        if (inResults && depth == 2) {
+          count++;
+        }
+        depth++;
+        expectKey = depth == 1;
+        break;
+      case '[':
+        if (depth == 1 && RESULTS_FIELDS.contains(key)) {
+          inResults = true;
+        }
+        depth++;
+        break;
+      case '}':
+      case ']':
+        depth--;
+        if (depth == 1) {
+          inResults = false;
+        }
+        break;
+      case ',':
+        if (depth == 1) {
+          expectKey = true;
+        }
+        break;
+      default:
+        // whitespace, ':' and unquoted values
+        break;
+    }
+  }
+
+  private void endString(String value) {
+    if (expectKey) {
+      key = value;
+      expectKey = false;
+    } else if (CURSOR_MARK.equals(key)) {
+      cursorMark = value;
+    }
+  }
+
+  /**
+   * Cursor marks do not contain unicode escapes, only the escaped character
+   * of single character escapes is kept
+   */
+  private static int unescape(byte b) {
+    switch (b) {
+      case 'n':
+        return '\n';
+      case 't':
+        return '\t';
+      case 'r':
+        return '\r';
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      default:
+        return b;
+    }
+  }
+}
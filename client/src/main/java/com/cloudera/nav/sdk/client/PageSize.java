@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The number of results requested per page by the cursors of one iterator.
+ * A fixed page size always requests the configured limit. An adaptive page
+ * size scales the limit after every full page by the ratio between the
+ * target latency and the latency of that page, by at most a factor of two
+ * per page, and shrinks pages whose response exceeded the maximum size.
+ * Pages smaller than the limit carry no information about the cost of a
+ * full page and are ignored.
+ */
+class PageSize {
+
+  private static final double MAX_STEP = 2.0;
+
+  private final boolean adaptive;
+  private final int minLimit;
+  private final int maxLimit;
+  private final long targetLatencyNanos;
+  private final long maxBytes;
+  private final PagingMetrics metrics;
+  private int limit;
+
+  /**
+   * Fixed page size
+   */
+  PageSize(int limit) {
+    this(limit, new ExtractionOptions());
+  }
+
+  /**
+   * @param limit initial page size
+   * @param options adaptive page size settings and metrics
+   */
+  PageSize(int limit, ExtractionOptions options) {
+    this.adaptive = options.isAdaptivePageSize();
+    this.minLimit = options.getMinPageSize();
+    this.maxLimit = options.getMaxPageSize();
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+        options.getTargetPageLatencyMs());
+    this.maxBytes = options.getMaxPageBytes();
+    this.metrics = options.getPagingMetrics();
+    this.limit = adaptive ? clamp(limit) : limit;
+  }
+
+  /**
+   * @return limit to request the next page with
+   */
+  synchronized int get() {
+    return limit;
+  }
+
+  /**
+   * Record a fetched page
+   *
+   * @param pageLimit limit the page was requested with
+   * @param results number of results in the page
+   * @param latencyNanos time until the page was received
+   * @param bytes size of the decoded response
+   */
+  synchronized void record(int pageLimit, int results, long latencyNanos,
+                           long bytes) {
+    if (adaptive && results >= pageLimit && latencyNanos > 0) {
+      double factor = (double) targetLatencyNanos / latencyNanos;
+      if (maxBytes > 0 && bytes > maxBytes) {
+        factor = Math.min(factor, (double) maxBytes / bytes);
+      }
+      factor = Math.max(1 / MAX_STEP, Math.min(MAX_STEP, factor));
+      limit = clamp((int) Math.round(pageLimit * factor));
+    }
+    if (metrics != null) {
+      metrics.record(results, latencyNanos, bytes, limit);
+    }
+  }
+
+  private int clamp(int value) {
+    return Math.max(minLimit, Math.min(maxLimit, value));
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Raw paging responses spooled to local files, to be parsed after the
+ * download. While pages are downloaded their bytes are copied to rolling
+ * spool files as they arrive, and only the cursorMark and the number of
+ * results are scanned for. Once all pages have been spooled, {@link #parse}
+ * memory-maps the spool files and decodes the pages in parallel.
+ *
+ * Closing the spool deletes its files.
+ */
+public class PageSpool implements Closeable {
+
+  public static final long DEFAULT_MAX_FILE_BYTES = 256L * 1024 * 1024;
+
+  private static final Logger LOG = LoggerFactory.getLogger(PageSpool.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final long maxFileBytes;
+  private final MetadataType type;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final List<Page> pages = Lists.newArrayList();
+  private final List<File> files = Lists.newArrayList();
+  private final AtomicInteger fileCount = new AtomicInteger();
+
+  /**
+   * @param directory where the spool files are created
+   * @param maxFileBytes size after which a new spool file is started, a
+   *                     page is never split across files
+   * @param type type of the spooled results
+   */
+  public PageSpool(File directory, long maxFileBytes, MetadataType type) {
+    Preconditions.checkArgument(directory.isDirectory(),
+        "%s is not a directory", directory);
+    this.directory = directory;
+    this.maxFileBytes = maxFileBytes;
+    this.type = type;
+  }
+
+  /**
+   * @return type of the spooled results
+   */
+  public MetadataType getType() {
+    return type;
+  }
+
+  /**
+   * @return number of spooled pages
+   */
+  public synchronized int getPageCount() {
+    return pages.size();
+  }
+
+  /**
+   * @return total size of the spooled pages in bytes
+   */
+  public synchronized long getBytes() {
+    long bytes = 0;
+    for (Page page : pages) {
+      bytes += page.length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Decode all spooled pages in parallel and pass their results to the
+   * consumer. Each page is parsed from a memory mapping of its spool file
+   * by a task on the given executor, so the consumer is called concurrently
+   * from as many threads as the executor has and must be thread-safe.
+   *
+   * @param executor runs one parsing task per page
+   * @param consumer receives every result
+   * @return number of results consumed
+   */
+  public long parse(ExecutorService executor, final MetadataConsumer consumer) {
+    List<Future<Long>> tasks = Lists.newArrayList();
+    for (final Page page : getPages()) {
+      tasks.add(executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          return parse(page, consumer);
+        }
+      }));
+    }
+    long count = 0;
+    try {
+      for (Future<Long> task : tasks) {
+        count += task.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<Long> task : tasks) {
+        task.cancel(true);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Delete the spool files
+   */
+  @Override
+  public synchronized void close() {
+    for (File file : files) {
+      if (!file.delete() && file.exists()) {
+        LOG.warn("Failed to delete spool file " + file);
+      }
+    }
+    files.clear();
+    pages.clear();
+  }
+
+  /**
+   * @return a writer appending pages to spool files of its own, for use by
+   *         a single thread
+   */
+  Writer newWriter() {
+    return new Writer();
+  }
+
+  synchronized List<Page> getPages() {
+    return ImmutableList.copyOf(pages);
+  }
+
+  private synchronized void addPage(Page page) {
+    pages.add(page);
+  }
+
+  private synchronized File newFile() {
+    File file = new File(directory, String.format("%s-%05d.spool",
+        type.name().toLowerCase(), fileCount.getAndIncrement()));
+    files.add(file);
+    return file;
+  }
+
+  private long parse(Page page, MetadataConsumer consumer) throws Exception {
+    long count = 0;
+    try (RandomAccessFile file = new RandomAccessFile(page.file, "r");
+         FileChannel channel = file.getChannel()) {
+      MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+          page.offset, page.length);
+      ResultsBatchStream results = new ResultsBatchStream(
+          new ByteBufferInputStream(bytes), channel, mapper, Map.class);
+      try {
+        while (results.hasNext()) {
+          consumer.accept(type, results.next());
+          count++;
+        }
+      } finally {
+        results.close();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Location and scanned summary of a spooled page
+   */
+  static class Page {
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final String cursorMark;
+    private final int count;
+
+    Page(File file, long offset, long length, String cursorMark, int count) {
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+      this.cursorMark = cursorMark;
+      this.count = count;
+    }
+
+    String getCursorMark() {
+      return cursorMark;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    long getLength() {
+      return length;
+    }
+  }
+
+  /**
+   * Appends pages to a sequence of spool files
+   */
+  class Writer implements Closeable {
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private File file;
+    private FileChannel channel;
+
+    /**
+     * Copy a paging response to the spool. If the copy fails, the partial
+     * page is removed again so that the page can be requested again.
+     *
+     * @param body the response body
+     * @return the spooled page
+     */
+    Page write(InputStream body) throws IOException {
+      if (channel == null || channel.position() >= maxFileBytes) {
+        roll();
+      }
+      long start = channel.position();
+      PageScanner scanner = new PageScanner();
+      ReadableByteChannel in = Channels.newChannel(body);
+      try {
+        while (in.read(buffer) >= 0) {
+          buffer.flip();
+          scanner.update(buffer);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          buffer.clear();
+        }
+      } catch (IOException | RuntimeException e) {
+        buffer.clear();
+        channel.truncate(start);
+        channel.position(start);
+        throw e;
+      }
+      Page page = new Page(file, start, channel.position() - start,
+          scanner.getCursorMark(), scanner.getCount());
+      addPage(page);
+      return page;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    }
+
+    private void roll() throws IOException {
+      close();
+      file = newFile();
+      channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+  }
+
+  /**
+   * Reads the remaining bytes of a buffer
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Walks the pages of results for a sequence of queries against the Navigator
+ * paging API. Each query is followed by its cursorMark until a page smaller
+ * than the limit is returned, then the next query is started.
+ *
+ * A cursor is not thread-safe; it is meant to be driven by one thread at a
+ * time. Several cursors may share the same query iterator to walk disjoint
+ * queries concurrently, each taking the next unstarted query once its
+ * current one is exhausted.
+ */
+class PagingCursor {
+
+  private final NavApiCient client;
+  private final MetadataType type;
+  private final PageSize pageSize;
+  private final Iterator<String> queries;
+  private final boolean records;
+  private String query;
+  private String cursorMark;
+  private boolean queryExhausted = true;
+  private ResultsBatchStream stream;
+  private int queryIndex = -1;
+  private String pageCursorMark;
+  private int pageLimit;
+  private long pageLatencyNanos;
+  private long deadlineNanos;
+  private boolean hasDeadline;
+
+  PagingCursor(NavApiCient client, MetadataType type, Integer limit,
+               Iterator<String> queries) {
+    this(client, type, limit, queries, false);
+  }
+
+  /**
+   * @param records whether results are fetched as EntityRecords or
+   *                RelationRecords instead of plain maps
+   */
+  PagingCursor(NavApiCient client, MetadataType type, Integer limit,
+               Iterator<String> queries, boolean records) {
+    this(client, type, new PageSize(limit), queries, records);
+  }
+
+  /**
+   * @param pageSize limit of each page, may be shared with other cursors
+   */
+  PagingCursor(NavApiCient client, MetadataType type, PageSize pageSize,
+               Iterator<String> queries, boolean records) {
+    this.client = client;
+    this.type = type;
+    this.pageSize = pageSize;
+    this.queries = queries;
+    this.records = records;
+  }
+
+  /**
+   * Fetch the next non-empty page of results, moving on to the next query
+   * once the current one has been exhausted.
+   *
+   * @return the next page, or an empty list once all queries are exhausted
+   */
+  List<Map<String, Object>> nextPage() {
+    if (queryExhausted && !nextQuery()) {
+      return Collections.emptyList();
+    }
+    return fetchPage();
+  }
+
+  /**
+   * Fetch the page at the current cursorMark of the current query. Queries
+   * that return an empty page are skipped.
+   *
+   * @return the fetched page, or an empty list if no later query has results
+   */
+  List<Map<String, Object>> fetchPage() {
+    List<Map<String, Object>> results = fetch();
+    while (results.isEmpty() && nextQuery()) {
+      results = fetch();
+    }
+    return results;
+  }
+
+  /**
+   * Same as {@link #nextPage()} but the returned page is decoded while it is
+   * read from the response. The previous stream is closed and its cursorMark
+   * taken over before the next page is requested, so each stream should be
+   * read to the end before asking for the next one.
+   *
+   * @return the next non-empty page, or null once all queries are exhausted
+   */
+  ResultsBatchStream nextPageStream() {
+    finishStream();
+    if (queryExhausted && !nextQuery()) {
+      return null;
+    }
+    while (true) {
+      stream = stream();
+      if (stream.hasNext()) {
+        return stream;
+      }
+      finishStream();
+      if (!nextQuery()) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #nextPage()} but the raw page is copied to the given
+   * spool writer instead of being decoded. Pages without results are
+   * spooled as well and simply parse to nothing.
+   *
+   * @return the spooled page, or null once all queries are exhausted
+   */
+  PageSpool.Page nextSpoolPage(PageSpool.Writer writer) {
+    if (queryExhausted && !nextQuery()) {
+      return null;
+    }
+    checkDeadline();
+    pageCursorMark = cursorMark;
+    pageLimit = pageSize.get();
+    MetadataQuery metadataQuery = new MetadataQuery(query, pageLimit,
+        cursorMark);
+    long start = System.nanoTime();
+    PageSpool.Page page;
+    switch (type) {
+      case ENTITIES:
+        page = client.spoolEntityBatch(metadataQuery, writer);
+        break;
+      case RELATIONS:
+        page = client.spoolRelationBatch(metadataQuery, writer);
+        break;
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+    pageSize.record(pageLimit, page.getCount(), System.nanoTime() - start,
+        page.getLength());
+    cursorMark = page.getCursorMark();
+    queryExhausted = page.getCount() < pageLimit;
+    return page;
+  }
+
+  /**
+   * Continue at the page with the given cursorMark of the query with the
+   * given index, skipping all earlier queries. Must be called before the
+   * first page is fetched.
+   *
+   * @return false if there is no query with the given index
+   */
+  boolean resume(int index, String mark) {
+    synchronized (queries) {
+      queryIndex += Iterators.advance(queries, index);
+    }
+    if (!nextQuery()) {
+      return false;
+    }
+    cursorMark = mark;
+    return true;
+  }
+
+  /**
+   * Fail every page request made after the given time
+   *
+   * @param deadlineNanos deadline as a System.nanoTime() value
+   */
+  void setDeadline(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+    this.hasDeadline = true;
+  }
+
+  /**
+   * @return index of the query the last page was fetched for, counting only
+   *         queries taken by this cursor
+   */
+  int getPageQueryIndex() {
+    return queryIndex;
+  }
+
+  /**
+   * @return cursorMark the last page was requested with
+   */
+  String getPageCursorMark() {
+    return pageCursorMark;
+  }
+
+  /**
+   * Close the current page stream, if any
+   */
+  void close() {
+    if (stream != null) {
+      stream.close();
+      stream = null;
+    }
+  }
+
+  /**
+   * @return whether there may be more pages to fetch
+   */
+  boolean hasMorePages() {
+    if (!queryExhausted) {
+      return true;
+    }
+    synchronized (queries) {
+      return queries.hasNext();
+    }
+  }
+
+  private List<Map<String, Object>> fetch() {
+    checkDeadline();
+    // Send the next request to the server to get a batch of results
+    pageCursorMark = cursorMark;
+    pageLimit = pageSize.get();
+    MetadataQuery metadataQuery = new MetadataQuery(query, pageLimit,
+        cursorMark);
+    long start = System.nanoTime();
+    ResultsBatch<? extends Map<String, Object>> response;
+    switch (type) {
+      case ENTITIES:
+        response = records ? client.getEntityRecordBatch(metadataQuery) :
+            client.getEntityBatch(metadataQuery);
+        break;
+      case RELATIONS:
+        response = records ? client.getRelationRecordBatch(metadataQuery) :
+            client.getRelationBatch(metadataQuery);
+        break;
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+    pageSize.record(pageLimit, response.getResults().size(),
+        System.nanoTime() - start, response.getResponseBytes());
+    cursorMark = response.getCursorMark();
+    List<Map<String, Object>> results =
+        Collections.<Map<String, Object>>unmodifiableList(
+            response.getResults());
+    queryExhausted = results.size() < pageLimit;
+    return results;
+  }
+
+  /**
+   * Request the page at the current cursorMark and wait for its first
+   * result. The time until then is the latency recorded for the page, the
+   * rest of the page is read at the pace of the consumer.
+   */
+  private ResultsBatchStream stream() {
+    checkDeadline();
+    pageCursorMark = cursorMark;
+    pageLimit = pageSize.get();
+    MetadataQuery metadataQuery = new MetadataQuery(query, pageLimit,
+        cursorMark);
+    long start = System.nanoTime();
+    ResultsBatchStream page;
+    switch (type) {
+      case ENTITIES:
+        page = records ? client.streamEntityRecords(metadataQuery) :
+            client.streamEntityBatch(metadataQuery);
+        break;
+      case RELATIONS:
+        page = records ? client.streamRelationRecords(metadataQuery) :
+            client.streamRelationBatch(metadataQuery);
+        break;
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+    page.hasNext();
+    pageLatencyNanos = System.nanoTime() - start;
+    return page;
+  }
+
+  private void checkDeadline() {
+    if (hasDeadline && System.nanoTime() - deadlineNanos > 0) {
+      throw new UncheckedTimeoutException(
+          "Extraction deadline exceeded before fetching the next page");
+    }
+  }
+
+  private void finishStream() {
+    if (stream != null) {
+      // drain what the consumer left so the cursorMark has been read
+      while (stream.hasNext()) {
+        stream.next();
+      }
+      cursorMark = stream.getCursorMark();
+      queryExhausted = stream.getCount() < pageLimit;
+      pageSize.record(pageLimit, stream.getCount(), pageLatencyNanos,
+          stream.getResponseBytes());
+      close();
+    }
+  }
+
+  private boolean nextQuery() {
+    synchronized (queries) {
+      if (!queries.hasNext()) {
+        return false;
+      }
+      query = queries.next();
+    }
+    queryIndex++;
+    cursorMark = "*";
+    queryExhausted = false;
+    return true;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the pages fetched by the extractions this instance is set on
+ * in their ExtractionOptions. All counters are updated after every page and
+ * may be read from any thread, for example by a reporter of a metrics
+ * library.
+ */
+public class PagingMetrics {
+
+  private final AtomicLong pages = new AtomicLong();
+  private final AtomicLong results = new AtomicLong();
+  private final AtomicLong responseBytes = new AtomicLong();
+  private final AtomicLong latencyNanos = new AtomicLong();
+  private volatile long lastLatencyNanos;
+  private volatile int pageSize;
+
+  /**
+   * @return number of pages fetched
+   */
+  public long getPages() {
+    return pages.get();
+  }
+
+  /**
+   * @return number of results in all fetched pages
+   */
+  public long getResults() {
+    return results.get();
+  }
+
+  /**
+   * @return size of the decoded response bodies of all fetched pages
+   */
+  public long getResponseBytes() {
+    return responseBytes.get();
+  }
+
+  /**
+   * @return time spent waiting for all fetched pages in milliseconds
+   */
+  public long getTotalLatencyMs() {
+    return TimeUnit.NANOSECONDS.toMillis(latencyNanos.get());
+  }
+
+  /**
+   * @return time spent waiting for the last page in milliseconds
+   */
+  public long getLastLatencyMs() {
+    return TimeUnit.NANOSECONDS.toMillis(lastLatencyNanos);
+  }
+
+  /**
+   * @return page size the next page will be requested with, the configured
+   *         limit unless the page size is adaptive
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  void record(int results, long latencyNanos, long responseBytes,
+              int nextPageSize) {
+    this.pages.incrementAndGet();
+    this.results.addAndGet(results);
+    this.responseBytes.addAndGet(responseBytes);
+    this.latencyNanos.addAndGet(latencyNanos);
+    this.lastLatencyNanos = latencyNanos;
+    this.pageSize = nextPageSize;
+  }
+}
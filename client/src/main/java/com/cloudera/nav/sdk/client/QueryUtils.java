@@ -17,8 +17,11 @@
 package com.cloudera.nav.sdk.client;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -71,4 +74,29 @@ public class QueryUtils {
     String typeClause = buildConjunctiveClause("type", types);
     return conjoinSolrQueries(sourceClause, typeClause);
   }
+
+  /**
+   * Split the identity space into disjoint shards by the leading hex digits
+   * of the identity. Navigator identities are lower case MD5 hex strings; a
+   * final shard catches every identity that does not start with one of the
+   * prefixes so that the shards always cover all identities.
+   *
+   * @param shards number of prefix shards, 16 or 256
+   * @return clauses selecting each shard, one more than the number of shards
+   */
+  public static List<String> buildIdentityShards(int shards) {
+    Preconditions.checkArgument(shards == 16 || shards == 256,
+        "Identity shards must be 16 or 256, not %s", shards);
+    List<String> prefixes = Lists.newArrayListWithCapacity(shards);
+    for (int i = 0; i < shards; i++) {
+      // the leading 1 keeps the zero padding, 0x1a -> "a", 0x10a -> "0a"
+      prefixes.add(Integer.toHexString(shards | i).substring(1) + "*");
+    }
+    List<String> clauses = Lists.newArrayListWithCapacity(shards + 1);
+    for (String prefix : prefixes) {
+      clauses.add("identity:" + prefix);
+    }
+    clauses.add("NOT " + buildConjunctiveClause("identity", prefixes));
+    return clauses;
+  }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.entities.EntityType;
+import com.cloudera.nav.sdk.model.relations.RelationType;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An extracted relation. See {@link MetadataRecord}.
+ */
+@JsonDeserialize(using = RelationRecord.Deserializer.class)
+public class RelationRecord extends MetadataRecord {
+
+  private static final String TYPE = "type";
+  private static final String EP1_IDS = "endpoint1Ids";
+  private static final String EP1_TYPE = "endpoint1Type";
+  private static final String EP1_SOURCE_TYPE = "endpoint1SourceType";
+  private static final String EP1_SOURCE_ID = "endpoint1SourceId";
+  private static final String EP2_IDS = "endpoint2Ids";
+  private static final String EP2_TYPE = "endpoint2Type";
+  private static final String EP2_SOURCE_TYPE = "endpoint2SourceType";
+  private static final String EP2_SOURCE_ID = "endpoint2SourceId";
+  private static final Set<String> FIELDS = ImmutableSet.<String>builder()
+      .addAll(MetadataRecord.FIELDS)
+      .add(TYPE, EP1_IDS, EP1_TYPE, EP1_SOURCE_TYPE, EP1_SOURCE_ID, EP2_IDS,
+          EP2_TYPE, EP2_SOURCE_TYPE, EP2_SOURCE_ID)
+      .build();
+
+  // enum constants, or the raw value for unknown types
+  private Object type;
+  private Object ep1Type;
+  private Object ep1SourceType;
+  private Object ep2Type;
+  private Object ep2SourceType;
+  private List<String> ep1Ids;
+  private List<String> ep2Ids;
+  private String ep1SourceId;
+  private String ep2SourceId;
+
+  /**
+   * @return the type of the relation, or null if it is not a RelationType
+   */
+  public RelationType getType() {
+    return asEnum(RelationType.class, type);
+  }
+
+  /**
+   * @return the type of the relation as returned by Navigator
+   */
+  public String getTypeName() {
+    return toText(type);
+  }
+
+  public List<String> getEndpoint1Ids() {
+    return ep1Ids;
+  }
+
+  public EntityType getEndpoint1Type() {
+    return asEnum(EntityType.class, ep1Type);
+  }
+
+  public SourceType getEndpoint1SourceType() {
+    return asEnum(SourceType.class, ep1SourceType);
+  }
+
+  public String getEndpoint1SourceId() {
+    return ep1SourceId;
+  }
+
+  public List<String> getEndpoint2Ids() {
+    return ep2Ids;
+  }
+
+  public EntityType getEndpoint2Type() {
+    return asEnum(EntityType.class, ep2Type);
+  }
+
+  public SourceType getEndpoint2SourceType() {
+    return asEnum(SourceType.class, ep2SourceType);
+  }
+
+  public String getEndpoint2SourceId() {
+    return ep2SourceId;
+  }
+
+  @Override
+  protected Set<String> getFieldNames() {
+    return FIELDS;
+  }
+
+  @Override
+  protected Object getField(String name) {
+    switch (name) {
+      case TYPE:
+        return toText(type);
+      case EP1_IDS:
+        return ep1Ids;
+      case EP1_TYPE:
+        return toText(ep1Type);
+      case EP1_SOURCE_TYPE:
+        return toText(ep1SourceType);
+      case EP1_SOURCE_ID:
+        return ep1SourceId;
+      case EP2_IDS:
+        return ep2Ids;
+      case EP2_TYPE:
+        return toText(ep2Type);
+      case EP2_SOURCE_TYPE:
+        return toText(ep2SourceType);
+      case EP2_SOURCE_ID:
+        return ep2SourceId;
+      default:
+        return super.getField(name);
+    }
+  }
+
+  @Override
+  protected boolean readField(String name, JsonParser parser)
+      throws IOException {
+    switch (name) {
+      case EP1_IDS:
+        ep1Ids = readTextList(parser);
+        return ep1Ids != null;
+      case EP2_IDS:
+        ep2Ids = readTextList(parser);
+        return ep2Ids != null;
+      default:
+        break;
+    }
+    if (!isText(parser)) {
+      return false;
+    }
+    switch (name) {
+      case TYPE:
+        type = readEnum(RelationType.class, parser);
+        return true;
+      case EP1_TYPE:
+        ep1Type = readEnum(EntityType.class, parser);
+        return true;
+      case EP1_SOURCE_TYPE:
+        ep1SourceType = readEnum(SourceType.class, parser);
+        return true;
+      case EP1_SOURCE_ID:
+        ep1SourceId = readText(parser);
+        return true;
+      case EP2_TYPE:
+        ep2Type = readEnum(EntityType.class, parser);
+        return true;
+      case EP2_SOURCE_TYPE:
+        ep2SourceType = readEnum(SourceType.class, parser);
+        return true;
+      case EP2_SOURCE_ID:
+        ep2SourceId = readText(parser);
+        return true;
+      default:
+        return super.readField(name, parser);
+    }
+  }
+
+  /**
+   * Reads RelationRecords from paging responses
+   */
+  public static class Deserializer extends JsonDeserializer<RelationRecord> {
+    @Override
+    public RelationRecord deserialize(JsonParser parser,
+                                      DeserializationContext context)
+        throws IOException {
+      RelationRecord record = new RelationRecord();
+      record.read(parser);
+      return record;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second, identical request when the first one is slower than a
+ * percentile of the latencies of recent successful requests, and returns
+ * whichever response arrives first. Until enough latencies have been seen
+ * requests are sent once.
+ */
+class RequestHedger {
+
+  static final int WINDOW = 1000;
+  static final int MIN_SAMPLES = 20;
+
+  private final ExecutorService executor;
+  private final double percentile;
+  private final long[] latencies = new long[WINDOW];
+  private final AtomicLong hedged = new AtomicLong();
+  private int samples;
+  private int next;
+
+  /**
+   * @param executor runs the requests, needs two threads per hedged call
+   * @param percentile of recent latencies after which a request is hedged
+   */
+  RequestHedger(ExecutorService executor, double percentile) {
+    this.executor = executor;
+    this.percentile = percentile;
+  }
+
+  /**
+   * Run the call, and run it again if it is slower than the hedge delay. If
+   * both attempts fail, the error of the last one is thrown.
+   */
+  <V> V call(Callable<V> call) {
+    Callable<V> timed = timed(call);
+    long delayNanos = getDelayNanos();
+    if (delayNanos < 0) {
+      try {
+        return timed.call();
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    CompletionService<V> completion = new ExecutorCompletionService<>(executor);
+    List<Future<V>> attempts = Lists.newArrayListWithCapacity(2);
+    try {
+      attempts.add(completion.submit(timed));
+      Future<V> done = completion.poll(delayNanos, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        hedged.incrementAndGet();
+        attempts.add(completion.submit(timed));
+      }
+      ExecutionException failure = null;
+      for (int i = 0; i < attempts.size(); i++) {
+        if (done == null) {
+          done = completion.take();
+        }
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          failure = e;
+          done = null;
+        }
+      }
+      throw Throwables.propagate(failure.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      // the slower attempt, if any, is no longer needed
+      for (Future<V> attempt : attempts) {
+        attempt.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * @return number of requests that were sent a second time
+   */
+  long getHedgedCount() {
+    return hedged.get();
+  }
+
+  /**
+   * @return time after which a request is hedged, or -1 if there are not
+   *         enough samples yet
+   */
+  synchronized long getDelayNanos() {
+    if (samples < MIN_SAMPLES) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(latencies, samples);
+    Arrays.sort(sorted);
+    return sorted[(int) Math.min(samples - 1, (long) (samples * percentile))];
+  }
+
+  synchronized void record(long latencyNanos) {
+    latencies[next] = latencyNanos;
+    next = (next + 1) % WINDOW;
+    samples = Math.min(samples + 1, WINDOW);
+  }
+
+  private <V> Callable<V> timed(final Callable<V> call) {
+    return new Callable<V>() {
+      @Override
+      public V call() throws Exception {
+        long start = System.nanoTime();
+        V result = call.call();
+        record(System.nanoTime() - start);
+        return result;
+      }
+    };
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Passes all results of an iterable to a consumer
+ */
+class ResultDrain implements Callable<Long> {
+
+  private final MetadataIterable iterable;
+  private final MetadataType type;
+  private final MetadataConsumer consumer;
+  private volatile boolean cancelled;
+
+  ResultDrain(MetadataIterable iterable, MetadataType type,
+              MetadataConsumer consumer) {
+    this.iterable = iterable;
+    this.type = type;
+    this.consumer = consumer;
+  }
+
+  /**
+   * @return number of results consumed
+   */
+  @Override
+  public Long call() throws Exception {
+    long count = 0;
+    MetadataResultIterator it = iterable.iterator();
+    try {
+      while (!cancelled && it.hasNext()) {
+        Map<String, Object> result = it.next();
+        // the consumer may be shared with other drains
+        synchronized (consumer) {
+          consumer.accept(type, result);
+        }
+        count++;
+      }
+    } finally {
+      it.close();
+    }
+    return count;
+  }
+
+  /**
+   * Stop after the current result
+   */
+  void cancel() {
+    cancelled = true;
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.util.List;
@@ -27,6 +28,7 @@ import java.util.List;
 public abstract class ResultsBatch<T> {
   private String cursorMark;
   private List<T> results;
+  private long responseBytes;
 
   public List<T> getResults(){
     return results;
@@ -44,4 +46,17 @@ public abstract class ResultsBatch<T> {
     this.cursorMark = cursorMark;
   }
 
+  /**
+   * @return size of the decoded response body the batch was read from
+   */
+  @JsonIgnore
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  @JsonIgnore
+  public void setResponseBytes(long responseBytes) {
+    this.responseBytes = responseBytes;
+  }
+
 }
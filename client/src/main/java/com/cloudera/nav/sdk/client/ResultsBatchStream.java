@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CountingInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A batch of results that is decoded one result at a time while the response
+ * of a paging request is read, instead of decoding the whole batch into a
+ * list first. The cursorMark for the next batch is picked up whenever it
+ * appears in the response and is always available once all results have
+ * been read.
+ *
+ * The stream holds on to the underlying connection until it has been read
+ * to the end or closed.
+ */
+public class ResultsBatchStream implements Iterator<Map<String, Object>>,
+    Closeable {
+
+  private static final String CURSOR_MARK = "cursorMark";
+  private static final Set<String> RESULTS_FIELDS =
+      ImmutableSet.of("results", "entities", "relations");
+
+  private final JsonParser parser;
+  private final CountingInputStream in;
+  private final Closeable response;
+  private final ObjectMapper mapper;
+  private final JavaType resultType;
+  private Map<String, Object> nextResult;
+  private String cursorMark;
+  private int count;
+  private boolean inResults;
+  private boolean done;
+
+  /**
+   * @param in response body
+   * @param response closed together with the stream
+   * @param mapper used to decode individual results
+   * @param resultClass Map or MetadataRecord type to decode results as
+   */
+  @SuppressWarnings("rawtypes")
+  ResultsBatchStream(InputStream in, Closeable response, ObjectMapper mapper,
+                     Class<? extends Map> resultClass) {
+    this.response = response;
+    this.mapper = mapper;
+    this.resultType = resultClass == Map.class ?
+        mapper.getTypeFactory().constructMapType(Map.class, String.class,
+            Object.class) :
+        mapper.getTypeFactory().constructType(resultClass);
+    this.in = new CountingInputStream(in);
+    try {
+      this.parser = mapper.getFactory().createParser(this.in);
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IllegalStateException(
+            "Expected a JSON object in paging response");
+      }
+    } catch (IOException e) {
+      close();
+      throw Throwables.propagate(e);
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the cursorMark for the next batch, or null if it has not been
+   *         read yet
+   */
+  public String getCursorMark() {
+    return cursorMark;
+  }
+
+  /**
+   * @return number of results read so far
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return number of bytes of the decoded response body read so far
+   */
+  public long getResponseBytes() {
+    return in.getCount();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextResult == null && !done) {
+      try {
+        nextResult = readNextResult();
+      } catch (IOException e) {
+        close();
+        throw Throwables.propagate(e);
+      }
+    }
+    return nextResult != null;
+  }
+
+  @Override
+  public Map<String, Object> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Map<String, Object> result = nextResult;
+    nextResult = null;
+    return result;
+  }
+
+  /**
+   * Unsupported
+   */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Release the underlying connection. Results that have not been read yet
+   * are discarded.
+   */
+  @Override
+  public void close() {
+    done = true;
+    nextResult = null;
+    try {
+      if (parser != null) {
+        parser.close();
+      }
+      response.close();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private Map<String, Object> readNextResult() throws IOException {
+    while (true) {
+      JsonToken token = parser.nextToken();
+      if (inResults) {
+        if (token == JsonToken.START_OBJECT) {
+          count++;
+          return mapper.readValue(parser, resultType);
+        } else if (token == JsonToken.END_ARRAY) {
+          inResults = false;
+        } else {
+          parser.skipChildren();
+        }
+      } else if (token == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (CURSOR_MARK.equals(field)) {
+          cursorMark = value == JsonToken.VALUE_NULL ? null : parser.getText();
+        } else if (value == JsonToken.START_ARRAY &&
+            RESULTS_FIELDS.contains(field)) {
+          inResults = true;
+        } else {
+          parser.skipChildren();
+        }
+      } else {
+        // end of the response object
+        close();
+        return null;
+      }
+    }
+  }
+}
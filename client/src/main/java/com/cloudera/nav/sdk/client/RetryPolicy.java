@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Throwables;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Retries idempotent requests that failed with an I/O error, a timeout or a
+ * server error. The wait before a retry is chosen at random up to a backoff
+ * that doubles with every retry, up to a maximum.
+ */
+class RetryPolicy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+  private final int maxRetries;
+  private final long backoffMs;
+  private final long maxBackoffMs;
+  private final Random random = new Random();
+
+  RetryPolicy(int maxRetries, long backoffMs, long maxBackoffMs) {
+    this.maxRetries = maxRetries;
+    this.backoffMs = backoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+  }
+
+  /**
+   * Run the call, retrying it if it fails with a retryable error
+   *
+   * @return result of the first successful attempt
+   */
+  <V> V call(Callable<V> call) {
+    for (int attempt = 0; ; attempt++) {
+      try {
+        return call.call();
+      } catch (Exception e) {
+        if (attempt >= maxRetries || !isRetryable(e)) {
+          throw Throwables.propagate(e);
+        }
+        long waitMs = backoff(attempt);
+        LOG.warn("Request failed, retrying in {} ms: {}", waitMs,
+            e.getMessage());
+        try {
+          Thread.sleep(waitMs);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw Throwables.propagate(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return random wait before the retry after the given attempt
+   */
+  long backoff(int attempt) {
+    long bound = Math.min(maxBackoffMs,
+        backoffMs << Math.min(attempt, 30));
+    return (long) (bound * random.nextDouble());
+  }
+
+  static boolean isRetryable(Exception e) {
+    return e instanceof ResourceAccessException ||
+        e instanceof HttpServerErrorException;
+  }
+}
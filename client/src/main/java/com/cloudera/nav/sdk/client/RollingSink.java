@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A MetadataConsumer that writes the extracted entities and relations to
+ * rolling files in a directory, a separate sequence of files for each type.
+ * A file is written under a temporary ".inprogress" name and renamed once it
+ * is complete, either because it reached the size or record limit of the
+ * SinkOptions or because the sink was committed.
+ *
+ * Committing the sink with the marker of the extraction closes all files and
+ * writes a manifest listing the files and the marker. Loaders should only
+ * pick up dumps that have a manifest. Closing a sink without committing it
+ * leaves the completed files without a manifest.
+ *
+ * Results may be passed to the sink from several threads, writes are
+ * serialized.
+ */
+public abstract class RollingSink implements MetadataConsumer, Closeable {
+
+  static final String IN_PROGRESS_SUFFIX = ".inprogress";
+  static final String MANIFEST_SUFFIX = ".manifest.json";
+
+  private static final Logger LOG = LoggerFactory.getLogger(RollingSink.class);
+  private static final ThreadFactory FLUSH_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("nav-sink-flush-%d")
+          .build();
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final String prefix;
+  private final String extension;
+  private final SinkOptions options;
+  private final Map<MetadataType, Segment> segments =
+      new EnumMap<>(MetadataType.class);
+  private final Map<MetadataType, Integer> fileCounts =
+      new EnumMap<>(MetadataType.class);
+  private final List<FileEntry> files = Lists.newArrayList();
+  private final ScheduledExecutorService flusher;
+  private boolean closed;
+
+  /**
+   * @param directory where the files are written
+   * @param prefix prefix of the file names
+   * @param extension extension of the file names, including the dot
+   * @param options size limits, flush interval and compression
+   */
+  protected RollingSink(File directory, String prefix, String extension,
+                        SinkOptions options) {
+    Preconditions.checkArgument(directory.isDirectory(),
+        "%s is not a directory", directory);
+    this.directory = directory;
+    this.prefix = prefix;
+    this.extension = extension;
+    this.options = options;
+    if (options.getFlushIntervalMs() > 0) {
+      flusher = Executors.newSingleThreadScheduledExecutor(
+          FLUSH_THREAD_FACTORY);
+      flusher.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flush();
+          } catch (IOException | RuntimeException e) {
+            LOG.warn("Background flush of " + RollingSink.this.prefix +
+                " failed", e);
+          }
+        }
+      }, options.getFlushIntervalMs(), options.getFlushIntervalMs(),
+          TimeUnit.MILLISECONDS);
+    } else {
+      flusher = null;
+    }
+  }
+
+  @Override
+  public synchronized void accept(MetadataType type,
+                                  Map<String, Object> result)
+      throws IOException {
+    Preconditions.checkState(!closed, "Sink has been closed");
+    Segment segment = segments.get(type);
+    if (segment == null) {
+      segment = openSegment(type);
+      segments.put(type, segment);
+    }
+    segment.write(result);
+    if ((options.getMaxFileRecords() > 0 &&
+        segment.records >= options.getMaxFileRecords()) ||
+        (options.getMaxFileBytes() > 0 &&
+            segment.out.getCount() >= options.getMaxFileBytes())) {
+      finishSegment(segments.remove(type));
+    }
+  }
+
+  /**
+   * Flush the buffered results of the open files to disk
+   */
+  public synchronized void flush() throws IOException {
+    for (Segment segment : segments.values()) {
+      segment.flush();
+    }
+  }
+
+  /**
+   * Complete all files and write the manifest with the given marker. The
+   * sink cannot be used afterwards.
+   *
+   * @param marker marker of the extraction whose results were written
+   * @return the manifest file
+   */
+  public synchronized File commit(String marker) throws IOException {
+    Preconditions.checkState(!closed, "Sink has been closed");
+    closeSegments();
+    Manifest manifest = new Manifest();
+    manifest.setMarker(marker);
+    manifest.setFiles(ImmutableList.copyOf(files));
+    File manifestFile = new File(directory, prefix + MANIFEST_SUFFIX);
+    LocalFiles.writeJsonAtomically(new ObjectMapper(), manifest,
+        manifestFile);
+    return manifestFile;
+  }
+
+  /**
+   * @return the completed files so far
+   */
+  public synchronized List<FileEntry> getFiles() {
+    return ImmutableList.copyOf(files);
+  }
+
+  /**
+   * Complete the open files without writing a manifest
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    closeSegments();
+  }
+
+  /**
+   * Start writing results of the given type to a new file
+   *
+   * @param type type of the results written to the file
+   * @param out the file, buffered
+   * @return writer of the file's format
+   */
+  protected abstract FileWriter newFileWriter(MetadataType type,
+                                              OutputStream out)
+      throws IOException;
+
+  /**
+   * Writes one file of a RollingSink
+   */
+  protected interface FileWriter extends Closeable {
+
+    void write(Map<String, Object> result) throws IOException;
+
+    /**
+     * Write out buffered results, including results buffered by the
+     * compressor, so that they are on disk
+     */
+    void flush() throws IOException;
+  }
+
+  private Segment openSegment(MetadataType type) throws IOException {
+    Integer count = fileCounts.get(type);
+    int index = count == null ? 0 : count;
+    fileCounts.put(type, index + 1);
+    File file = new File(directory, String.format("%s-%s-%05d%s", prefix,
+        type.name().toLowerCase(), index, extension));
+    File inProgress = new File(directory, file.getName() + IN_PROGRESS_SUFFIX);
+    CountingOutputStream out = new CountingOutputStream(
+        new FileOutputStream(inProgress));
+    try {
+      FileWriter writer = newFileWriter(type,
+          new BufferedOutputStream(out, BUFFER_SIZE));
+      return new Segment(type, file, inProgress, out, writer);
+    } catch (IOException | RuntimeException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  private void finishSegment(Segment segment) throws IOException {
+    segment.writer.close();
+    Files.move(segment.inProgress.toPath(), segment.file.toPath(),
+        StandardCopyOption.ATOMIC_MOVE);
+    FileEntry entry = new FileEntry();
+    entry.setName(segment.file.getName());
+    entry.setType(segment.type);
+    entry.setRecords(segment.records);
+    entry.setBytes(segment.file.length());
+    files.add(entry);
+  }
+
+  private void closeSegments() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+    IOException error = null;
+    for (Segment segment : segments.values()) {
+      try {
+        finishSegment(segment);
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    segments.clear();
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * The file currently written for a type
+   */
+  private static class Segment {
+    private final MetadataType type;
+    private final File file;
+    private final File inProgress;
+    private final CountingOutputStream out;
+    private final FileWriter writer;
+    private long records;
+
+    Segment(MetadataType type, File file, File inProgress,
+            CountingOutputStream out, FileWriter writer) {
+      this.type = type;
+      this.file = file;
+      this.inProgress = inProgress;
+      this.out = out;
+      this.writer = writer;
+    }
+
+    void write(Map<String, Object> result) throws IOException {
+      writer.write(result);
+      records++;
+    }
+
+    void flush() throws IOException {
+      writer.flush();
+    }
+  }
+
+  /**
+   * A completed file as listed in the manifest
+   */
+  public static class FileEntry {
+    private String name;
+    private MetadataType type;
+    private long records;
+    private long bytes;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public MetadataType getType() {
+      return type;
+    }
+
+    public void setType(MetadataType type) {
+      this.type = type;
+    }
+
+    public long getRecords() {
+      return records;
+    }
+
+    public void setRecords(long records) {
+      this.records = records;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public void setBytes(long bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Persisted form of a committed dump
+   */
+  public static class Manifest {
+    private String marker;
+    private List<FileEntry> files;
+
+    public String getMarker() {
+      return marker;
+    }
+
+    public void setMarker(String marker) {
+      this.marker = marker;
+    }
+
+    public List<FileEntry> getFiles() {
+      return files;
+    }
+
+    public void setFiles(List<FileEntry> files) {
+      this.files = files;
+    }
+  }
+}
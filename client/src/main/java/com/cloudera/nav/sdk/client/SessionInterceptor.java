@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * Authenticates the requests of a RestTemplate with the cookies or the
+ * credentials of an AuthSession, and sends a request again with the
+ * credentials if the server rejects the cookies.
+ */
+class SessionInterceptor implements ClientHttpRequestInterceptor {
+
+  private static final String AUTHORIZATION = "Authorization";
+  private static final String COOKIE = "Cookie";
+  private static final String SET_COOKIE = "Set-Cookie";
+
+  private final AuthSession session;
+
+  SessionInterceptor(AuthSession session) {
+    this.session = session;
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                      ClientHttpRequestExecution execution)
+      throws IOException {
+    String cookie = session.getCookieHeader();
+    HttpHeaders headers = request.getHeaders();
+    if (cookie != null) {
+      headers.set(COOKIE, cookie);
+      ClientHttpResponse response = execution.execute(request, body);
+      if (response.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+        session.captureCookies(
+            response.getHeaders().get(SET_COOKIE));
+        return response;
+      }
+      // the session expired, authenticate again
+      response.close();
+      session.invalidate(cookie);
+      headers.remove(COOKIE);
+    }
+    headers.set(AUTHORIZATION, session.getBasicAuthorization());
+    ClientHttpResponse response = execution.execute(request, body);
+    if (response.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+      session.captureCookies(
+          response.getHeaders().get(SET_COOKIE));
+    }
+    return response;
+  }
+}
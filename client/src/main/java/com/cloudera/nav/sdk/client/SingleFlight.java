@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent calls with the same key into a single call. The first
+ * caller for a key runs the call, callers that arrive while it is in flight
+ * wait for it and get the same result or exception. Results are not cached,
+ * a call that arrives after the previous one completed runs again.
+ *
+ * @param <K> key identifying identical calls
+ * @param <V> result of a call
+ */
+class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, ListenableFutureTask<V>> inFlight =
+      Maps.newConcurrentMap();
+
+  /**
+   * Run the given call, or wait for the in-flight call with the same key
+   *
+   * @param key identifies identical calls
+   * @param call run if no call with the key is in flight
+   * @return result of the call
+   */
+  V execute(K key, Callable<V> call) {
+    ListenableFutureTask<V> task = ListenableFutureTask.create(call);
+    ListenableFutureTask<V> existing = inFlight.putIfAbsent(key, task);
+    if (existing == null) {
+      try {
+        task.run();
+      } finally {
+        inFlight.remove(key, task);
+      }
+    } else {
+      task = existing;
+    }
+    try {
+      return Uninterruptibles.getUninterruptibly(task);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * @return number of keys with a call in flight
+   */
+  int size() {
+    return inFlight.size();
+  }
+}
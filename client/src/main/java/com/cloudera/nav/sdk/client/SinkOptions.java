@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Options controlling how a RollingSink writes its files. The defaults roll
+ * files at 128 MB and flush buffered results once a second.
+ */
+public class SinkOptions {
+
+  public static final long DEFAULT_MAX_FILE_BYTES = 128L * 1024 * 1024;
+  public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000L;
+  public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  public static final String DEFAULT_AVRO_CODEC = "deflate";
+
+  private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+  private long maxFileRecords;
+  private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private String avroCodec = DEFAULT_AVRO_CODEC;
+
+  /**
+   * @return size in bytes after which a new file is started, 0 for no limit
+   */
+  public long getMaxFileBytes() {
+    return maxFileBytes;
+  }
+
+  /**
+   * Start a new file once the current one has reached the given size. The
+   * size is measured after compression, data still buffered by the
+   * compressor is not counted until it is flushed.
+   *
+   * @param maxFileBytes size limit in bytes, 0 for no limit
+   */
+  public void setMaxFileBytes(long maxFileBytes) {
+    Preconditions.checkArgument(maxFileBytes >= 0,
+        "maxFileBytes must not be negative");
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  /**
+   * @return number of results after which a new file is started, 0 for no
+   *         limit
+   */
+  public long getMaxFileRecords() {
+    return maxFileRecords;
+  }
+
+  /**
+   * @param maxFileRecords record limit of each file, 0 for no limit
+   */
+  public void setMaxFileRecords(long maxFileRecords) {
+    Preconditions.checkArgument(maxFileRecords >= 0,
+        "maxFileRecords must not be negative");
+    this.maxFileRecords = maxFileRecords;
+  }
+
+  /**
+   * @return interval at which buffered results are flushed to the files in
+   *         the background, 0 if they are only flushed when a file is rolled
+   */
+  public long getFlushIntervalMs() {
+    return flushIntervalMs;
+  }
+
+  /**
+   * @param flushIntervalMs background flush interval, 0 to disable
+   */
+  public void setFlushIntervalMs(long flushIntervalMs) {
+    Preconditions.checkArgument(flushIntervalMs >= 0,
+        "flushIntervalMs must not be negative");
+    this.flushIntervalMs = flushIntervalMs;
+  }
+
+  /**
+   * @return deflate level of gzip and deflate compressed files
+   */
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * @param compressionLevel deflate level from 1 (fastest) to 9 (smallest)
+   */
+  public void setCompressionLevel(int compressionLevel) {
+    Preconditions.checkArgument(compressionLevel >= 1 &&
+        compressionLevel <= 9, "compressionLevel must be between 1 and 9");
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * @return block compression codec of Avro files
+   */
+  public String getAvroCodec() {
+    return avroCodec;
+  }
+
+  /**
+   * @param avroCodec "deflate", "snappy" or "null" for no compression
+   */
+  public void setAvroCodec(String avroCodec) {
+    this.avroCodec = Preconditions.checkNotNull(avroCodec);
+  }
+}
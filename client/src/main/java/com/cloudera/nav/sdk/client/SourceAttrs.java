@@ -81,6 +81,17 @@ class SourceAttrs {
     this.sourceExtractIteration = sourceExtractIteration;
   }
 
+  static SourceAttrs fromSource(Source source) {
+    SourceAttrs attrs = new SourceAttrs();
+    attrs.setOriginalName(source.getName());
+    attrs.setSourceType(source.getSourceType());
+    attrs.setClusterName(source.getClusterName());
+    attrs.setSourceUrl(source.getSourceUrl());
+    attrs.setIdentity(source.getIdentity());
+    attrs.setSourceExtractIteration(source.getSourceExtractIteration());
+    return attrs;
+  }
+
   public Source createSource() {
     return new Source(getOriginalName(), getSourceType(),
         getClusterName(), getSourceUrl(), getIdentity(), getSourceExtractIteration());
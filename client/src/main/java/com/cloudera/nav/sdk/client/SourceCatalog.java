@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.Source;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the Sources of a Navigator server as an immutable SourceSnapshot
+ * that is reloaded once it is older than the configured TTL. Concurrent
+ * reloads are collapsed into a single request, and lookups that miss are
+ * remembered for a while so that repeated lookups of an unknown key do not
+ * reload the sources every time.
+ *
+ * If a cache file is given, every snapshot is also written to that file and
+ * a new catalog starts out with the snapshot stored there.
+ */
+class SourceCatalog {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(SourceCatalog.class);
+
+  private final Callable<Collection<Source>> loader;
+  private final long ttlMs;
+  private final File cacheFile;
+  private final Cache<Object, Boolean> misses;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private SourceSnapshot snapshot;
+  private ListenableFutureTask<SourceSnapshot> reload;
+
+  /**
+   * @param loader retrieves all sources from Navigator
+   * @param ttlMs how long a snapshot is used before it is reloaded
+   * @param missTtlMs how long a lookup miss prevents another reload for the
+   *                  same key
+   * @param cacheFile file the snapshot is persisted to, or null
+   */
+  SourceCatalog(Callable<Collection<Source>> loader, long ttlMs,
+                long missTtlMs, File cacheFile) {
+    this.loader = loader;
+    this.ttlMs = ttlMs;
+    this.cacheFile = cacheFile;
+    this.misses = CacheBuilder.newBuilder()
+        .expireAfterWrite(missTtlMs, TimeUnit.MILLISECONDS)
+        .build();
+    this.snapshot = cacheFile != null ? readCacheFile() : null;
+  }
+
+  /**
+   * @return the current snapshot, reloaded first if it has expired
+   */
+  SourceSnapshot getSnapshot() {
+    SourceSnapshot current;
+    synchronized (this) {
+      current = snapshot;
+    }
+    if (current != null &&
+        System.currentTimeMillis() - current.getLoadedAt() < ttlMs) {
+      return current;
+    }
+    return reload(current);
+  }
+
+  /**
+   * Look up a key that was not found in the given snapshot. The sources are
+   * reloaded unless the key missed recently, in which case the given
+   * snapshot is returned as is.
+   *
+   * @param key the url or type that was not found
+   * @param missed snapshot that did not contain the key
+   * @return the snapshot to look the key up in
+   */
+  SourceSnapshot getSnapshotAfterMiss(Object key, SourceSnapshot missed) {
+    if (misses.getIfPresent(key) != null) {
+      return missed;
+    }
+    SourceSnapshot reloaded = reload(missed);
+    misses.put(key, Boolean.TRUE);
+    return reloaded;
+  }
+
+  /**
+   * Forget the current snapshot and all lookup misses
+   */
+  synchronized void invalidate() {
+    snapshot = null;
+    misses.invalidateAll();
+  }
+
+  /**
+   * Replace the given snapshot with a newly loaded one. If another thread is
+   * already reloading, wait for its snapshot instead.
+   */
+  private SourceSnapshot reload(SourceSnapshot stale) {
+    ListenableFutureTask<SourceSnapshot> task;
+    boolean owner = false;
+    synchronized (this) {
+      if (snapshot != stale && snapshot != null) {
+        return snapshot;
+      }
+      if (reload == null) {
+        reload = ListenableFutureTask.create(new Callable<SourceSnapshot>() {
+          @Override
+          public SourceSnapshot call() throws Exception {
+            return new SourceSnapshot(loader.call(),
+                System.currentTimeMillis());
+          }
+        });
+        owner = true;
+      }
+      task = reload;
+    }
+    if (owner) {
+      task.run();
+    }
+    SourceSnapshot loaded;
+    try {
+      loaded = Uninterruptibles.getUninterruptibly(task);
+    } catch (ExecutionException e) {
+      if (owner) {
+        synchronized (this) {
+          reload = null;
+        }
+      }
+      throw Throwables.propagate(e.getCause());
+    }
+    if (owner) {
+      synchronized (this) {
+        snapshot = loaded;
+        reload = null;
+      }
+      if (cacheFile != null) {
+        writeCacheFile(loaded);
+      }
+    }
+    return loaded;
+  }
+
+  private SourceSnapshot readCacheFile() {
+    if (!cacheFile.exists()) {
+      return null;
+    }
+    try {
+      CacheFile contents = mapper.readValue(cacheFile, CacheFile.class);
+      List<Source> sources = Lists.newArrayList();
+      for (SourceAttrs attrs : contents.getSources()) {
+        sources.add(attrs.createSource());
+      }
+      return new SourceSnapshot(sources, contents.getLoadedAt());
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring unreadable source cache file " + cacheFile, e);
+      return null;
+    }
+  }
+
+  private void writeCacheFile(SourceSnapshot loaded) {
+    CacheFile contents = new CacheFile();
+    contents.setLoadedAt(loaded.getLoadedAt());
+    List<SourceAttrs> sources = Lists.newArrayList();
+    for (Source source : loaded.getSources()) {
+      sources.add(SourceAttrs.fromSource(source));
+    }
+    contents.setSources(sources);
+    try {
+      LocalFiles.writeJsonAtomically(mapper, contents, cacheFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to write source cache file " + cacheFile, e);
+    }
+  }
+
+  /**
+   * Persisted form of a snapshot
+   */
+  static class CacheFile {
+    private long loadedAt;
+    private List<SourceAttrs> sources;
+
+    public long getLoadedAt() {
+      return loadedAt;
+    }
+
+    public void setLoadedAt(long loadedAt) {
+      this.loadedAt = loadedAt;
+    }
+
+    public List<SourceAttrs> getSources() {
+      return sources;
+    }
+
+    public void setSources(List<SourceAttrs> sources) {
+      this.sources = sources;
+    }
+  }
+}
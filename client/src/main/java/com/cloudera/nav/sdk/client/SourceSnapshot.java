@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.Source;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable view of all the Sources known to Navigator at a point in time
+ */
+public class SourceSnapshot {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(SourceSnapshot.class);
+
+  private final long loadedAt;
+  private final Collection<Source> sources;
+  private final Map<String, Source> sourcesByUrl;
+  private final ImmutableSetMultimap<SourceType, Source> sourcesByType;
+
+  /**
+   * @param sources all sources
+   * @param loadedAt time the sources were retrieved from Navigator, in
+   *                 milliseconds since the epoch
+   */
+  public SourceSnapshot(Collection<Source> sources, long loadedAt) {
+    this.loadedAt = loadedAt;
+    this.sources = ImmutableList.copyOf(sources);
+    Map<String, Source> byUrl = Maps.newHashMap();
+    ImmutableSetMultimap.Builder<SourceType, Source> byType =
+        ImmutableSetMultimap.builder();
+    for (Source source : sources) {
+      if (source.getSourceUrl() == null) {
+        LOG.warn(String.format("Source %s did not have a source url",
+            source.getName() != null ? source.getName() :
+                source.getIdentity()));
+        continue;
+      }
+      byUrl.put(source.getSourceUrl(), source);
+      byType.put(source.getSourceType(), source);
+    }
+    this.sourcesByUrl = ImmutableMap.copyOf(byUrl);
+    this.sourcesByType = byType.build();
+  }
+
+  /**
+   * @return time the sources were retrieved from Navigator, in milliseconds
+   *         since the epoch
+   */
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  /**
+   * @return all sources, including those without a source url
+   */
+  public Collection<Source> getSources() {
+    return sources;
+  }
+
+  /**
+   * @return the source for the given Hadoop service url, or null if unknown
+   */
+  public Source getSourceForUrl(String serviceUrl) {
+    return sourcesByUrl.get(serviceUrl);
+  }
+
+  /**
+   * @return the sources of the given type, empty if there are none
+   */
+  public Collection<Source> getSourcesForType(SourceType sourceType) {
+    return sourcesByType.get(sourceType);
+  }
+}
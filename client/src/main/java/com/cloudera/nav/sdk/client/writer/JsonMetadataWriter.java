@@ -16,7 +16,9 @@
 
 package com.cloudera.nav.sdk.client.writer;
 
+import com.cloudera.nav.sdk.client.AuthSession;
 import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.client.ConcurrencyLimiter;
 import com.cloudera.nav.sdk.client.writer.serde.EntitySerializer;
 import com.cloudera.nav.sdk.client.writer.serde.RelationSerializer;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -28,9 +30,14 @@ import com.google.common.base.Throwables;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.httpclient.HttpStatus;
 
@@ -39,16 +46,56 @@ import org.apache.commons.httpclient.HttpStatus;
  */
 public class JsonMetadataWriter extends MetadataWriter {
 
-  private final HttpURLConnection conn;
+  /**
+   * Sends the request again with credentials after the session it was
+   * authenticated with expired
+   */
+  interface Resend {
+    HttpURLConnection resend() throws IOException;
+  }
+
+  private final AuthSession session;
+  private final Resend resend;
+  private HttpURLConnection conn;
   private final ObjectMapper mapper;
+  private final GZIPOutputStream compressor;
+  private final ConcurrencyLimiter limiter;
   private ResultSet lastResult;
 
   public JsonMetadataWriter(ClientConfig config,
                             OutputStream stream,
                             HttpURLConnection conn) {
+    this(config, stream, conn, null);
+  }
+
+  /**
+   * @param compressor the gzip stream between the given stream and the
+   *                   connection for gzip encoded requests, finished when the
+   *                   request is sent
+   */
+  public JsonMetadataWriter(ClientConfig config,
+                            OutputStream stream,
+                            HttpURLConnection conn,
+                            GZIPOutputStream compressor) {
+    this(config, stream, conn, compressor, null, null);
+  }
+
+  /**
+   * @param session captures the cookies of the response, may be null
+   * @param resend if not null, called when the request was rejected with
+   *               401 to send it again with credentials
+   */
+  JsonMetadataWriter(ClientConfig config, OutputStream stream,
+                     HttpURLConnection conn, GZIPOutputStream compressor,
+                     AuthSession session, Resend resend) {
     super(config, stream);
+    this.session = session;
+    this.resend = resend;
     this.conn = conn;
     this.mapper = newMapper();
+    this.compressor = compressor;
+    this.limiter = conn.getURL() == null ? null :
+        ConcurrencyLimiter.forServer(config, conn.getURL().toString());
   }
 
   @Override
@@ -76,11 +123,22 @@ public class JsonMetadataWriter extends MetadataWriter {
   public void flush() {
     super.flush();
     try {
+      if (compressor != null) {
+        compressor.finish();
+      }
       // request is not sent until response code is requested
-      if (conn.getResponseCode() >= HttpStatus.SC_BAD_REQUEST) {
+      int code = sendRequest();
+      if (code == HttpStatus.SC_UNAUTHORIZED && resend != null) {
+        conn = resend.resend();
+        code = sendRequest();
+      }
+      if (code < HttpStatus.SC_BAD_REQUEST && session != null) {
+        captureCookies();
+      }
+      if (code >= HttpStatus.SC_BAD_REQUEST) {
 
     	  // display error message
-    	  BufferedReader br = new BufferedReader(new InputStreamReader((conn.getErrorStream())));
+    	  BufferedReader br = new BufferedReader(new InputStreamReader(decode(conn.getErrorStream())));
     	  StringBuilder sb = new StringBuilder();
     	  String responseBody;
     	  while ((responseBody = br.readLine()) != null) {
@@ -92,12 +150,54 @@ public class JsonMetadataWriter extends MetadataWriter {
             "Error writing metadata (code %s): %s %s", conn.getResponseCode(),
             conn.getResponseMessage(), responseBody));
       }
-      lastResult = mapper.readValue(conn.getInputStream(), ResultSet.class);
+      lastResult = mapper.readValue(decode(conn.getInputStream()),
+          ResultSet.class);
     } catch (IOException e) {
       Throwables.propagate(e);
     }
   }
 
+  private void captureCookies() {
+    for (Map.Entry<String, List<String>> header :
+        conn.getHeaderFields().entrySet()) {
+      if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+        session.captureCookies(header.getValue());
+      }
+    }
+  }
+
+  /**
+   * Send the request under the concurrency limit, if any
+   *
+   * @return response code
+   */
+  private int sendRequest() throws IOException {
+    if (limiter == null) {
+      return conn.getResponseCode();
+    }
+    ConcurrencyLimiter.Permit permit = limiter.acquire();
+    int code;
+    try {
+      code = conn.getResponseCode();
+    } catch (IOException e) {
+      permit.releaseOverloaded();
+      throw e;
+    }
+    if (ConcurrencyLimiter.isOverloadStatus(code)) {
+      permit.releaseOverloaded();
+    } else if (code >= HttpStatus.SC_BAD_REQUEST) {
+      permit.releaseIgnored();
+    } else {
+      permit.release();
+    }
+    return code;
+  }
+
+  private InputStream decode(InputStream in) throws IOException {
+    return "gzip".equalsIgnoreCase(conn.getContentEncoding()) ?
+        new GZIPInputStream(in) : in;
+  }
+
   @Override
   public ResultSet getLastResultSet() {
     return lastResult;
@@ -15,25 +15,28 @@
  */
 package com.cloudera.nav.sdk.client.writer;
 
+import com.cloudera.nav.sdk.client.AuthSession;
 import com.cloudera.nav.sdk.client.ClientConfig;
 import com.cloudera.nav.sdk.client.SSLUtils;
 import com.google.common.base.Throwables;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 
-import org.apache.commons.net.util.Base64;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
@@ -51,9 +54,11 @@ public class MetadataWriterFactory {
   private final boolean isSSL;
   private final SSLContext sslContext;
   private final HostnameVerifier hostnameVerifier;
+  private final AuthSession session;
 
   public MetadataWriterFactory(ClientConfig config) {
     this.config = config;
+    this.session = new AuthSession(config);
     this.isSSL = SSLUtils.isSSL(config.getMetadataParentUriString());
     this.sslContext = isSSL ? SSLUtils.getSSLContext(config) : null;
     this.hostnameVerifier = isSSL ? SSLUtils.getHostnameVerifier(config) : null;
@@ -70,9 +75,37 @@ public class MetadataWriterFactory {
       throw new UnsupportedOperationException();
     } else {
       try {
-        HttpURLConnection conn = createHttpStream();
-        OutputStream stream = new BufferedOutputStream(conn.getOutputStream());
-        return new JsonMetadataWriter(config, stream, conn);
+        final String cookie = session.getCookieHeader();
+        HttpURLConnection conn = createHttpStream(cookie);
+        OutputStream out = conn.getOutputStream();
+        JsonMetadataWriter.Resend resend = null;
+        if (cookie != null) {
+          // keep the request body to send it again if the session expired
+          final RecordingOutputStream recording =
+              new RecordingOutputStream(out);
+          out = recording;
+          resend = new JsonMetadataWriter.Resend() {
+            @Override
+            public HttpURLConnection resend() throws IOException {
+              session.invalidate(cookie);
+              HttpURLConnection conn = createHttpStream(null);
+              try (OutputStream body = conn.getOutputStream()) {
+                body.write(recording.getRecorded());
+              }
+              return conn;
+            }
+          };
+        }
+        if (config.isCompressRequests()) {
+          GZIPOutputStream compressor = new LevelGZIPOutputStream(
+              out, config.getCompressionLevel());
+          return new JsonMetadataWriter(config,
+              new BufferedOutputStream(compressor), conn, compressor,
+              session, resend);
+        }
+        OutputStream stream = new BufferedOutputStream(out);
+        return new JsonMetadataWriter(config, stream, conn, null, session,
+            resend);
       } catch (IOException e) {
         throw Throwables.propagate(e);
       }
@@ -89,16 +122,28 @@ public class MetadataWriterFactory {
     return scheme == null ? "" : scheme.toLowerCase();
   }
 
-  private HttpURLConnection createHttpStream()
+  /**
+   * @param cookie Cookie header to authenticate with, or null to send the
+   *               credentials
+   */
+  private HttpURLConnection createHttpStream(String cookie)
       throws IOException {
     URL url = new URL(config.getMetadataParentUri().toASCIIString());
     HttpURLConnection conn = openConnection(url);
     conn.setRequestMethod("POST");
-    String userpass = config.getUsername() + ":" + config.getPassword();
-    String basicAuth = "Basic " + new String(Base64.encodeBase64(
-        userpass.getBytes()));
-    conn.addRequestProperty("Authorization", basicAuth);
+    if (cookie != null) {
+      conn.addRequestProperty("Cookie", cookie);
+    } else {
+      conn.addRequestProperty("Authorization",
+          session.getBasicAuthorization());
+    }
     conn.addRequestProperty("Content-Type", "application/json");
+    if (config.isCompressRequests()) {
+      conn.addRequestProperty("Content-Encoding", "gzip");
+    }
+    if (config.isCompressResponses()) {
+      conn.addRequestProperty("Accept-Encoding", "gzip");
+    }
     conn.setDoOutput(true);
     return conn;
   }
@@ -144,6 +189,43 @@ public class MetadataWriterFactory {
     }
   }
 
+  /**
+   * GZIPOutputStream with a configurable compression level
+   */
+  private static class LevelGZIPOutputStream extends GZIPOutputStream {
+    LevelGZIPOutputStream(OutputStream out, int level) throws IOException {
+      super(out);
+      def.setLevel(level);
+    }
+  }
+
+  /**
+   * Passes bytes through to another stream and keeps a copy of them
+   */
+  private static class RecordingOutputStream extends FilterOutputStream {
+    private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+    RecordingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      recorded.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      recorded.write(b, off, len);
+    }
+
+    byte[] getRecorded() {
+      return recorded.toByteArray();
+    }
+  }
+
   private String getFilePath(String path) {
     // TODO file rotation
     if (!path.endsWith("/")) {
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+/**
+ * Unit tests for ConcurrencyLimiter
+ */
+public class ConcurrencyLimiterTest {
+
+  private FakeTicker ticker;
+  private ConcurrencyLimiter limiter;
+
+  @Before
+  public void setUp() {
+    ticker = new FakeTicker();
+    limiter = new ConcurrencyLimiter(4, 1, 8,
+        ConcurrencyLimiter.DEFAULT_BACKOFF_RATIO,
+        ConcurrencyLimiter.DEFAULT_LATENCY_TOLERANCE, ticker);
+  }
+
+  @Test
+  public void testGrowsWhileLatencyIsFlat() {
+    for (int i = 0; i < 40; i++) {
+      roundTrip(limiter.getLimit(), 100);
+    }
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void testOnlyGrowsWhenLimitIsUsed() {
+    for (int i = 0; i < 40; i++) {
+      roundTrip(1, 100);
+    }
+    assertEquals(4, limiter.getLimit());
+  }
+
+  @Test
+  public void testBacksOffOnRisingLatency() {
+    roundTrip(4, 100);
+    roundTrip(4, 500);
+    // requests sent together back off once
+    assertEquals(3, limiter.getLimit());
+    roundTrip(3, 500);
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void testFastRequestExpiresFromBaseline() {
+    // a small, fast request makes the normal requests look slow
+    roundTrip(1, 10);
+    roundTrip(limiter.getLimit(), 100);
+    assertEquals(3, limiter.getLimit());
+    for (int i = 0; i < 80; i++) {
+      roundTrip(limiter.getLimit(), 100);
+    }
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void testRecoversAfterLatencyDrops() {
+    roundTrip(4, 100);
+    for (int i = 0; i < 10; i++) {
+      roundTrip(limiter.getLimit(), 1000);
+    }
+    int shrunk = limiter.getLimit();
+    assertTrue(shrunk < 4);
+    for (int i = 0; i < 40; i++) {
+      roundTrip(limiter.getLimit(), 100);
+    }
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void testBacksOffOnOverload() {
+    ticker.advance(10);
+    ConcurrencyLimiter.Permit permit = limiter.acquire();
+    ticker.advance(10);
+    permit.releaseOverloaded();
+    assertEquals(3, limiter.getLimit());
+    for (int i = 0; i < 10; i++) {
+      ticker.advance(10);
+      limiter.acquire().releaseOverloaded();
+    }
+    assertEquals(1, limiter.getLimit());
+    // errors unrelated to load do not change the limit
+    limiter.acquire().releaseIgnored();
+    assertEquals(1, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void testBlocksAtLimit() throws Exception {
+    final List<ConcurrencyLimiter.Permit> permits = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      permits.add(limiter.acquire());
+    }
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        limiter.acquire().releaseIgnored();
+        acquired.countDown();
+      }
+    };
+    waiter.start();
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    permits.get(0).releaseIgnored();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    waiter.join();
+    assertEquals(3, limiter.getInFlight());
+  }
+
+  /**
+   * Send the given number of requests at once that all take the given time
+   */
+  private void roundTrip(int requests, long latencyNanos) {
+    List<ConcurrencyLimiter.Permit> permits = Lists.newArrayList();
+    for (int i = 0; i < requests; i++) {
+      permits.add(limiter.acquire());
+    }
+    ticker.advance(latencyNanos);
+    for (ConcurrencyLimiter.Permit permit : permits) {
+      permit.release();
+    }
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos;
+
+    synchronized void advance(long delta) {
+      nanos += delta;
+    }
+
+    @Override
+    public synchronized long read() {
+      return nanos;
+    }
+  }
+}
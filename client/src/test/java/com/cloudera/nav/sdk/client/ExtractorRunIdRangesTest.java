@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.Map;
+
+import org.junit.*;
+
+/**
+ * Unit tests for ExtractorRunIdRanges
+ */
+public class ExtractorRunIdRangesTest {
+
+  private ExtractorRunIdRanges ranges;
+
+  @Before
+  public void setUp() {
+    Map<String, Integer> start = ImmutableMap.of("a", 1, "b", 5, "c", 0);
+    Map<String, Integer> end = ImmutableMap.of("a", 3, "b", 4, "c", 0);
+    ranges = new ExtractorRunIdRanges(start, end);
+  }
+
+  @Test
+  public void testIterate() {
+    assertEquals(Lists.newArrayList("a##1", "a##2", "a##3", "c##0"),
+        Lists.newArrayList(ranges));
+    // iterable more than once
+    assertEquals(4, Lists.newArrayList(ranges).size());
+  }
+
+  @Test
+  public void testSources() {
+    assertEquals(Lists.newArrayList("a", "c"),
+        Lists.newArrayList(ranges.getSources()));
+    assertEquals(Lists.newArrayList("a##1", "a##2", "a##3"),
+        Lists.newArrayList(ranges.getRange("a")));
+  }
+
+  @Test
+  public void testFilter() {
+    ExtractorRunIdRanges filtered = ranges.filter(new Predicate<String>() {
+      @Override
+      public boolean apply(String source) {
+        return !source.equals("a");
+      }
+    });
+    assertEquals(Lists.newArrayList("c##0"), Lists.newArrayList(filtered));
+  }
+}
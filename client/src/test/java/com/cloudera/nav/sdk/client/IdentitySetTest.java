@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.MD5IdGenerator;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the bounded memory identity set used for de-duplication
+ */
+public class IdentitySetTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testInMemory() throws Exception {
+    IdentitySet set = new IdentitySet(100, folder.getRoot());
+    String identity = MD5IdGenerator.generateIdentity("a");
+    assertTrue(set.add(identity));
+    assertTrue(set.add("custom-a"));
+    assertFalse(set.add(identity));
+    assertFalse(set.add("custom-a"));
+    assertEquals(0, set.getRunCount());
+    set.close();
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testSpills() throws Exception {
+    IdentitySet set = new IdentitySet(100, folder.getRoot());
+    List<String> identities = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      identities.add(i % 2 == 0 ? "custom-" + i :
+          MD5IdGenerator.generateIdentity("" + i));
+    }
+    for (String identity : identities) {
+      assertTrue(set.add(identity));
+    }
+    assertTrue(set.getRunCount() <= IdentitySet.MAX_RUNS);
+    assertTrue(set.getRunCount() > 0);
+    for (String identity : identities) {
+      assertFalse(set.add(identity));
+    }
+    set.close();
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testVersions() throws Exception {
+    IdentitySet set = new IdentitySet(10, folder.getRoot());
+    assertEquals(IdentitySet.ABSENT, set.getVersion("a"));
+    // raise the versions across many spilled and merged runs
+    for (int version = 0; version < 20; version++) {
+      for (int i = 0; i < 10; i++) {
+        set.put("id-" + i, version);
+      }
+      // lower versions never replace higher ones
+      set.put("id-0", 0);
+    }
+    assertTrue(set.getRunCount() > 0);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(19, set.getVersion("id-" + i));
+    }
+    assertEquals(19, set.put("id-1", 5));
+    assertEquals(19, set.put("id-1", 25));
+    assertEquals(25, set.getVersion("id-1"));
+    set.close();
+  }
+}
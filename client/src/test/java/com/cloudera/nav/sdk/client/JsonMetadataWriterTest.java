@@ -17,10 +17,14 @@
 package com.cloudera.nav.sdk.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import com.cloudera.nav.sdk.client.writer.JsonMetadataWriter;
+import com.cloudera.nav.sdk.client.writer.MetadataWriter;
+import com.cloudera.nav.sdk.client.writer.MetadataWriterFactory;
+import com.cloudera.nav.sdk.client.writer.ResultSet;
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
 import com.cloudera.nav.sdk.model.entities.EntityType;
@@ -35,7 +39,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
@@ -43,6 +50,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.junit.Before;
@@ -103,6 +113,35 @@ public class JsonMetadataWriterTest {
     assertEquals("bar", udp.get("foo"));
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testCompressedRequest() throws IOException {
+    HdfsEntity entity = new HdfsEntity("/user/test", EntityType.DIRECTORY,
+        "src1");
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(response)) {
+      out.write(("{\"entities\":{\"count\":1,\"errors\":[]}," +
+          "\"relations\":{\"count\":0,\"errors\":[]}}").getBytes());
+    }
+    doReturn("gzip").when(mockConn).getContentEncoding();
+    doReturn(new ByteArrayInputStream(response.toByteArray()))
+        .when(mockConn).getInputStream();
+
+    GZIPOutputStream compressor = new GZIPOutputStream(stream);
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, compressor,
+        mockConn, compressor);
+    mWriter.write(entity);
+    mWriter.flush();
+
+    String value = new String(ByteStreams.toByteArray(new GZIPInputStream(
+        new ByteArrayInputStream(stream.toByteArray()))));
+    Map<String, Object> values = ((List<Map<String, Object>>)
+        new ObjectMapper().readValue(value, Map.class).get("entities")).get(0);
+    assertEquals(entity.getIdentity(), values.get("identity"));
+    ResultSet result = mWriter.getLastResultSet();
+    assertEquals(1, result.getEntities().getCount());
+  }
+
   /**
    * Test add/del/set tags and UDP
    */
@@ -224,6 +263,62 @@ public class JsonMetadataWriterTest {
     assertEquals(relations.size(), 3);
   }
 
+  @Test
+  public void testSessionCookies() throws Exception {
+    final String resultJson = "{\"entities\":{\"count\":1,\"errors\":[]}," +
+        "\"relations\":{\"count\":0,\"errors\":[]}}";
+    final AtomicBoolean expired = new AtomicBoolean();
+    StubNavigatorServer server = new StubNavigatorServer();
+    server.setResponder("metadata/plugin", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+        if (cookie != null && expired.get()) {
+          StubNavigatorServer.send(exchange, 401, "{}".getBytes());
+          return;
+        }
+        exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=s1");
+        StubNavigatorServer.json(resultJson).respond(exchange, requestBody);
+      }
+    });
+    try {
+      ClientConfig realConfig = new ClientConfig();
+      realConfig.setMetadataParentUri(server.getUrl() + "metadata/plugin");
+      realConfig.setUsername("user");
+      realConfig.setPassword("pass");
+      realConfig.setNamespace("test");
+      MetadataWriterFactory factory = new MetadataWriterFactory(realConfig);
+      HdfsEntity entity = new HdfsEntity("/user/test", EntityType.DIRECTORY,
+          "src1");
+      for (int i = 0; i < 3; i++) {
+        if (i == 2) {
+          expired.set(true);
+        }
+        MetadataWriter writer = factory.newWriter();
+        writer.write(entity);
+        writer.flush();
+        writer.close();
+        assertEquals(1, writer.getLastResultSet().getEntities().getCount());
+      }
+      List<StubNavigatorServer.RecordedRequest> requests =
+          server.getRequests();
+      assertEquals(4, requests.size());
+      assertEquals("Basic dXNlcjpwYXNz",
+          requests.get(0).getHeader("Authorization"));
+      assertNull(requests.get(1).getHeader("Authorization"));
+      assertEquals("JSESSIONID=s1", requests.get(1).getHeader("Cookie"));
+      // the rejected request is sent again with the same body
+      assertEquals("JSESSIONID=s1", requests.get(2).getHeader("Cookie"));
+      assertEquals("Basic dXNlcjpwYXNz",
+          requests.get(3).getHeader("Authorization"));
+      assertEquals(requests.get(2).getBodyString(),
+          requests.get(3).getBodyString());
+    } finally {
+      server.close();
+    }
+  }
+
   private CustomOperationExecution prepExec(Source source) {
     CustomOperation op = new CustomOperation();
     op.setName("JobName");
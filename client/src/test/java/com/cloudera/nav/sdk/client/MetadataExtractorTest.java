@@ -18,13 +18,29 @@ package com.cloudera.nav.sdk.client;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import com.cloudera.nav.sdk.model.MetadataType;
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.*;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.mockito.runners.*;
 
 /**
@@ -33,6 +49,9 @@ import org.mockito.runners.*;
 @RunWith(MockitoJUnitRunner.class)
 public class MetadataExtractorTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private MetadataExtractor extractor;
   private String marker1Rep;
   private NavApiCient client;
@@ -46,6 +65,8 @@ public class MetadataExtractorTest {
     Source source1 = new Source("source1", SourceType.HDFS, "cluster1",
         "foo/bar", "identityString", 100);
     when(client.getAllSources()).thenReturn(Lists.newArrayList(source1));
+    when(client.getSourceSnapshot()).thenReturn(new SourceSnapshot(
+        Lists.newArrayList(source1), System.currentTimeMillis()));
   }
 
   @Test
@@ -72,10 +93,161 @@ public class MetadataExtractorTest {
     assertEquals(res.getMarker(), marker1Rep);
   }
 
+  @Test
+  public void testSingleSnapshotPerExtraction() {
+    extractor.extractMetadata(null, null, "identity:*", "identity:*");
+    verify(client, times(1)).getSourceSnapshot();
+    verify(client, never()).getAllSources();
+  }
+
   @Test
   public void testCurrentMarker() {
     String res = extractor.getMarker();
     assertEquals(res, marker1Rep);
   }
-}
 
+  @Test
+  public void testResumeExtraction() throws Exception {
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        MetadataResultIteratorTest.batch("c1", "a", "b", "c"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setCheckpointFile(new File(folder.getRoot(), "checkpoint"));
+    options.setCheckpointIntervalMs(0);
+    extractor = new MetadataExtractor(client, null, options);
+    Iterator<Map<String, Object>> it = extractor.extractMetadata(
+        "{\"identityString\":99}").getEntities().iterator();
+    it.next();
+    it.next();
+    ((MetadataResultIterator) it).close();
+
+    MetadataResultSet res = new MetadataExtractor(client, null, options)
+        .resumeExtraction();
+    assertEquals(marker1Rep, res.getMarker());
+    assertEquals(Lists.<Object>newArrayList("b", "c"),
+        MetadataResultIteratorTest.identities(res.getEntities().iterator()));
+    verify(client, times(1)).getSourceSnapshot();
+
+    ArgumentCaptor<MetadataQuery> captor =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(2)).getEntityBatch(captor.capture());
+    assertEquals(captor.getAllValues().get(0).getQuery(),
+        captor.getAllValues().get(1).getQuery());
+    assertTrue(captor.getAllValues().get(1).getQuery()
+        .contains("identityString##99"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testResumeWithoutCheckpointFile() {
+    extractor.resumeExtraction();
+  }
+
+  @Test
+  public void testExtractionPlan() throws Exception {
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<ResultsBatch<Map<String, Object>>>() {
+          @Override
+          public ResultsBatch<Map<String, Object>> answer(
+              InvocationOnMock invocation) {
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            return query.getQuery().contains("HDFS") ?
+                MetadataResultIteratorTest.batch("c", "h1", "h2") :
+                MetadataResultIteratorTest.batch("c", "v1");
+          }
+        });
+    when(client.getRelationBatch(any(MetadataQuery.class))).thenReturn(
+        MetadataResultIteratorTest.batch("c", "r1"));
+    ListConsumer hdfs = new ListConsumer();
+    ListConsumer views = new ListConsumer();
+    ListConsumer relations = new ListConsumer();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ExtractionPlan plan = extractor.newPlan(
+          "{\"identityString\":99}", null)
+          .addEntityQuery("hdfs", "sourceType:HDFS", hdfs)
+          .addEntityQuery("views", "type:VIEW", views)
+          .addRelationQuery("relations", "type:LOGICAL_PHYSICAL", relations);
+      assertEquals(marker1Rep, plan.execute(executor, 2).get());
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(Lists.<Object>newArrayList("h1", "h2"), hdfs.results);
+    assertEquals(Lists.<Object>newArrayList("v1"), views.results);
+    assertEquals(Lists.<Object>newArrayList("r1"), relations.results);
+    assertEquals(MetadataType.RELATIONS, relations.type);
+    verify(client, times(1)).getSourceSnapshot();
+  }
+
+  @Test
+  public void testExtractionPlanFailure() throws Exception {
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        MetadataResultIteratorTest.batch("c", "a", "b"));
+    final ListConsumer second = new ListConsumer();
+    ExtractionPlan plan = extractor.newPlan(null, null)
+        .addEntityQuery("first", "identity:*", new MetadataConsumer() {
+          @Override
+          public void accept(MetadataType type, Map<String, Object> result) {
+            throw new IllegalStateException("failed");
+          }
+        })
+        .addEntityQuery("second", "identity:*", second);
+    Executor executor = MoreExecutors.sameThreadExecutor();
+    try {
+      plan.execute(executor, 1).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // the query after the failed one is never started
+    assertTrue(second.results.isEmpty());
+  }
+
+  @Test
+  public void testExtractionPlanRetry() throws Exception {
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        MetadataResultIteratorTest.batch("c", "a", "b"));
+    final ListConsumer first = new ListConsumer();
+    final ListConsumer second = new ListConsumer();
+    final AtomicBoolean fail = new AtomicBoolean(true);
+    ExtractionPlan plan = extractor.newPlan(null, null)
+        .addEntityQuery("first", "identity:*", new MetadataConsumer() {
+          @Override
+          public void accept(MetadataType type, Map<String, Object> result) {
+            if (fail.get()) {
+              throw new IllegalStateException("failed");
+            }
+            first.accept(type, result);
+          }
+        })
+        .addEntityQuery("second", "identity:*", second);
+    Executor executor = MoreExecutors.sameThreadExecutor();
+    try {
+      plan.execute(executor, 1).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    // executing the plan again extracts every query
+    fail.set(false);
+    assertEquals(plan.getMarker(), plan.execute(executor, 1).get());
+    assertEquals(Lists.<Object>newArrayList("a", "b"), first.results);
+    assertEquals(Lists.<Object>newArrayList("a", "b"), second.results);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExtractionPlanDuplicateName() {
+    extractor.newPlan(null, null)
+        .addEntityQuery("q", "identity:*", new ListConsumer())
+        .addRelationQuery("q", "identity:*", new ListConsumer());
+  }
+
+  private static class ListConsumer implements MetadataConsumer {
+    private final List<Object> results = Lists.newArrayList();
+    private MetadataType type;
+
+    @Override
+    public void accept(MetadataType type, Map<String, Object> result) {
+      this.type = type;
+      results.add(result.get("identity"));
+    }
+  }
+}
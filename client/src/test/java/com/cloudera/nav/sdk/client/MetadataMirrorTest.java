@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for the local metadata mirror and its log-structured store
+ */
+public class MetadataMirrorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testApplyAndLookup() throws Exception {
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      mirror.apply(MetadataType.ENTITIES, result("a", "v1"));
+      mirror.apply(MetadataType.ENTITIES, result("b", "v1"));
+      mirror.apply(MetadataType.RELATIONS, result("a", "r1"));
+      mirror.apply(MetadataType.ENTITIES, result("a", "v2"));
+
+      assertEquals("v2", mirror.getEntity("a").get("name"));
+      assertEquals("r1", mirror.getRelation("a").get("name"));
+      assertNull(mirror.getRelation("b"));
+      assertEquals(3, mirror.size());
+
+      Map<String, Object> deleted = result("b", "v2");
+      deleted.put("deleted", true);
+      mirror.apply(MetadataType.ENTITIES, deleted);
+      assertNull(mirror.getEntity("b"));
+      assertEquals(ImmutableSet.of("a"), identities(mirror,
+          MetadataType.ENTITIES));
+    }
+  }
+
+  @Test
+  public void testUpdateResumesFromMarker() throws Exception {
+    MetadataExtractor extractor = mock(MetadataExtractor.class);
+    MetadataResultSet full = resultSet("marker1", result("a", "v1"));
+    MetadataResultSet incremental = resultSet("marker2", result("b", "v1"));
+    when(extractor.extractMetadata()).thenReturn(full);
+    when(extractor.extractMetadata("marker1")).thenReturn(incremental);
+
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      assertNull(mirror.getMarker());
+      assertEquals(1, mirror.update(extractor));
+      assertEquals("marker1", mirror.getMarker());
+    }
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      assertEquals("marker1", mirror.getMarker());
+      assertEquals("v1", mirror.getEntity("a").get("name"));
+      mirror.update(extractor);
+      assertEquals("marker2", mirror.getMarker());
+      assertEquals(ImmutableSet.of("a", "b"), identities(mirror,
+          MetadataType.ENTITIES));
+    }
+    verify(extractor).extractMetadata("marker1");
+  }
+
+  @Test
+  public void testUpdateForcesEverySegment() throws Exception {
+    List<Map<String, Object>> entities = Lists.newArrayList();
+    for (int i = 0; i < 50; i++) {
+      entities.add(result("e" + i, "v" + i));
+    }
+    MetadataResultSet full = resultSet("marker1", entities);
+    MetadataExtractor extractor = mock(MetadataExtractor.class);
+    when(extractor.extractMetadata()).thenReturn(full);
+    // small segments so that one update fills several of them
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot(), 512,
+        0.99)) {
+      assertEquals(50, mirror.update(extractor));
+      assertTrue(segmentCount() > 2);
+      assertEquals(0, mirror.getStore().getUnforcedSegmentCount());
+      mirror.apply(MetadataType.ENTITIES, result("e0", "v50"));
+      assertEquals(1, mirror.getStore().getUnforcedSegmentCount());
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    // small segments so that overwrites spread over many of them
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot(), 512,
+        0.99)) {
+      for (int i = 0; i < 50; i++) {
+        mirror.apply(MetadataType.ENTITIES, result("e" + (i % 5), "v" + i));
+      }
+      Map<String, Object> deleted = result("e0", "gone");
+      deleted.put("deleted", true);
+      mirror.apply(MetadataType.ENTITIES, deleted);
+      int before = segmentCount();
+      assertTrue(mirror.compact() > 0);
+      assertTrue(segmentCount() < before);
+      assertNull(mirror.getEntity("e0"));
+      assertEquals("v49", mirror.getEntity("e4").get("name"));
+    }
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot(), 512,
+        0.99)) {
+      assertEquals(4, mirror.size());
+      assertNull(mirror.getEntity("e0"));
+      assertEquals("v46", mirror.getEntity("e1").get("name"));
+    }
+  }
+
+  @Test
+  public void testCompactionOfSingleSegment() throws Exception {
+    try (LogStore store = new LogStore(folder.getRoot(), 1024 * 1024)) {
+      for (int i = 0; i < 100; i++) {
+        store.put("E:a", ("value" + i).getBytes(Charsets.UTF_8));
+      }
+      store.put("E:b", "value".getBytes(Charsets.UTF_8));
+      store.delete("E:b");
+      assertTrue(store.getGarbageRatio() > 0.9);
+      assertEquals(1, store.compact());
+      assertEquals(0, store.getGarbageRatio(), 0.0);
+      assertEquals(1, segmentCount());
+      assertEquals("value99", new String(store.get("E:a"), Charsets.UTF_8));
+      assertNull(store.get("E:b"));
+      // nothing to reclaim, and no empty segment is started
+      assertEquals(0, store.compact());
+      assertEquals(1, segmentCount());
+    }
+    try (LogStore store = new LogStore(folder.getRoot(), 1024 * 1024)) {
+      assertEquals(1, store.size());
+      assertEquals("value99", new String(store.get("E:a"), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testBackgroundCompaction() throws Exception {
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot(), 512,
+        0.5)) {
+      for (int i = 0; i < 200; i++) {
+        mirror.apply(MetadataType.ENTITIES, result("e", "v" + i));
+      }
+    }
+    // compaction keeps the store from growing with every overwrite
+    assertTrue(segmentCount() < 20);
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot(), 512,
+        0.5)) {
+      assertEquals("v199", mirror.getEntity("e").get("name"));
+    }
+  }
+
+  @Test
+  public void testTornWrite() throws Exception {
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      mirror.apply(MetadataType.ENTITIES, result("a", "v1"));
+      mirror.apply(MetadataType.ENTITIES, result("b", "v1"));
+    }
+    // corrupt the last byte of the second record
+    File segment = Iterables.getOnlyElement(Arrays.asList(segments()));
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      long position = 0;
+      while (true) {
+        file.seek(position);
+        int length = file.readInt();
+        if (length == 0) {
+          break;
+        }
+        position += 8 + length;
+      }
+      file.seek(position - 1);
+      int last = file.read();
+      file.seek(position - 1);
+      file.write(last ^ 0xff);
+    }
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      assertEquals("v1", mirror.getEntity("a").get("name"));
+      assertNull(mirror.getEntity("b"));
+      // appends continue after the last intact record
+      mirror.apply(MetadataType.ENTITIES, result("c", "v1"));
+    }
+    try (MetadataMirror mirror = new MetadataMirror(folder.getRoot())) {
+      assertEquals(ImmutableSet.of("a", "c"), identities(mirror,
+          MetadataType.ENTITIES));
+    }
+  }
+
+  private int segmentCount() {
+    return segments().length;
+  }
+
+  private File[] segments() {
+    File[] files = folder.getRoot().listFiles();
+    Set<File> segments = Sets.newTreeSet();
+    for (File file : files) {
+      if (file.getName().endsWith(".log")) {
+        segments.add(file);
+      }
+    }
+    return segments.toArray(new File[segments.size()]);
+  }
+
+  private static Set<Object> identities(MetadataMirror mirror,
+                                        MetadataType type) {
+    Set<Object> identities = Sets.newHashSet();
+    for (Map<String, Object> result : mirror.scan(type)) {
+      identities.add(result.get("identity"));
+    }
+    return identities;
+  }
+
+  private static MetadataResultSet resultSet(String marker,
+                                             Map<String, Object> entity) {
+    return resultSet(marker, Collections.singletonList(entity));
+  }
+
+  private static MetadataResultSet resultSet(
+      String marker, List<Map<String, Object>> results) {
+    final Iterator<Map<String, Object>> it = results.iterator();
+    MetadataIterable entities = mock(MetadataIterable.class);
+    MetadataResultIterator entityIterator = mock(MetadataResultIterator.class);
+    when(entityIterator.hasNext()).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        return it.hasNext();
+      }
+    });
+    when(entityIterator.next()).thenAnswer(
+        new Answer<Map<String, Object>>() {
+          @Override
+          public Map<String, Object> answer(InvocationOnMock invocation) {
+            return it.next();
+          }
+        });
+    when(entities.iterator()).thenReturn(entityIterator);
+    MetadataIterable relations = mock(MetadataIterable.class);
+    MetadataResultIterator relationIterator =
+        mock(MetadataResultIterator.class);
+    when(relations.iterator()).thenReturn(relationIterator);
+    return new MetadataResultSet(marker, entities, relations);
+  }
+
+  private static Map<String, Object> result(String identity, String name) {
+    Map<String, Object> result = Maps.newHashMap(
+        ImmutableMap.<String, Object>of("identity", identity, "name", name));
+    return result;
+  }
+}
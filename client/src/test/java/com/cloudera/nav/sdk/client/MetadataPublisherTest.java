@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static com.cloudera.nav.sdk.client.MetadataResultIteratorTest.batch;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+/**
+ * Unit tests for MetadataPublisher
+ */
+@SuppressWarnings("unchecked")
+public class MetadataPublisherTest {
+
+  private NavApiCient client;
+  private MetadataPublisher<Map<String, Object>> publisher;
+
+  @Before
+  public void setUp() {
+    client = mock(NavApiCient.class);
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        batch("c1", "a", "b"), batch("c2", "c", "d"), batch("c3", "e"));
+    publisher = new MetadataIterable(client, MetadataType.ENTITIES,
+        "identity:*", 2, Lists.<String>newArrayList())
+        .publisher(MoreExecutors.sameThreadExecutor());
+  }
+
+  @Test
+  public void testDemand() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    verify(client, never()).getEntityBatch(any(MetadataQuery.class));
+
+    subscriber.subscription.request(1);
+    assertEquals(Lists.newArrayList("a"), subscriber.results);
+    verify(client, times(1)).getEntityBatch(any(MetadataQuery.class));
+
+    subscriber.subscription.request(2);
+    assertEquals(Lists.newArrayList("a", "b", "c"), subscriber.results);
+    verify(client, times(2)).getEntityBatch(any(MetadataQuery.class));
+    assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(10);
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e"),
+        subscriber.results);
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+    verify(client, times(3)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testCancel() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+    subscriber.subscription.request(5);
+    assertEquals(Lists.newArrayList("a"), subscriber.results);
+    assertFalse(subscriber.completed);
+    verify(client, times(1)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testError() {
+    NavApiCient failing = mock(NavApiCient.class);
+    when(failing.getEntityBatch(any(MetadataQuery.class)))
+        .thenThrow(new IllegalStateException("server error"));
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    new MetadataIterable(failing, MetadataType.ENTITIES, "identity:*", 2,
+        Lists.<String>newArrayList())
+        .publisher(MoreExecutors.sameThreadExecutor()).subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertTrue(subscriber.error instanceof IllegalStateException);
+    assertFalse(subscriber.completed);
+  }
+
+  @Test
+  public void testInvalidRequest() {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    verify(client, never()).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testRequestFromOnNext() {
+    RecordingSubscriber subscriber = new RecordingSubscriber() {
+      @Override
+      public void onSubscribe(MetadataPublisher.Subscription subscription) {
+        super.onSubscribe(subscription);
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Map<String, Object> result) {
+        super.onNext(result);
+        subscription.request(1);
+      }
+    };
+    publisher.subscribe(subscriber);
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e"),
+        subscriber.results);
+    assertTrue(subscriber.completed);
+  }
+
+  private static class RecordingSubscriber
+      implements MetadataPublisher.Subscriber<Map<String, Object>> {
+
+    MetadataPublisher.Subscription subscription;
+    final List<Object> results = Lists.newArrayList();
+    boolean completed;
+    Throwable error;
+
+    @Override
+    public void onSubscribe(MetadataPublisher.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Map<String, Object> result) {
+      results.add(result.get("identity"));
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.entities.EntityType;
+import com.cloudera.nav.sdk.model.relations.RelationType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+/**
+ * Tests for decoding EntityRecords and RelationRecords
+ */
+public class MetadataRecordTest {
+
+  static final String ENTITY_JSON = "{\"identity\":\"e1\"," +
+      "\"originalName\":\"file.txt\",\"sourceType\":\"HDFS\"," +
+      "\"type\":\"FILE\",\"sourceId\":\"s1\",\"deleted\":false," +
+      "\"extractorRunId\":\"s1##3\",\"size\":1024," +
+      "\"properties\":{\"owner\":\"etl\"},\"tags\":[\"a\",\"b\"]}";
+  static final String RELATION_JSON = "{\"identity\":\"r1\"," +
+      "\"type\":\"DATA_FLOW\",\"endpoint1Ids\":[\"e1\",\"e2\"]," +
+      "\"endpoint1Type\":\"FILE\",\"endpoint1SourceType\":\"HDFS\"," +
+      "\"endpoint2Ids\":[\"e3\"],\"endpoint2Type\":\"OPERATION_EXECUTION\"," +
+      "\"endpoint2SourceType\":\"SOLR\",\"endpoint2SourceId\":\"s2\"," +
+      "\"unlinked\":true}";
+
+  private ObjectMapper mapper;
+
+  @Before
+  public void setUp() {
+    mapper = new ObjectMapper();
+  }
+
+  @Test
+  public void testEntityRecord() throws Exception {
+    EntityRecord record = mapper.readValue(ENTITY_JSON, EntityRecord.class);
+    assertEquals("e1", record.getIdentity());
+    assertEquals(EntityType.FILE, record.getType());
+    assertEquals(SourceType.HDFS, record.getSourceType());
+    assertEquals("s1", record.getSourceId());
+    assertEquals("s1##3", record.getExtractorRunId());
+    assertEquals("file.txt", record.getOriginalName());
+    assertFalse(record.isDeleted());
+    assertNull(record.getParentPath());
+    assertEquals(1024, record.get("size"));
+    assertEquals("etl", ((Map<?, ?>) record.get("properties")).get("owner"));
+    assertEquals(3, record.getAttributes().size());
+  }
+
+  @Test
+  public void testEntityRecordAsMap() throws Exception {
+    EntityRecord record = mapper.readValue(ENTITY_JSON, EntityRecord.class);
+    assertEquals(mapper.readValue(ENTITY_JSON, Map.class), record);
+    assertEquals("FILE", record.get("type"));
+    assertTrue(record.containsKey("tags"));
+    assertFalse(record.containsKey("parentPath"));
+  }
+
+  @Test
+  public void testUnknownType() throws Exception {
+    EntityRecord record = mapper.readValue(
+        "{\"identity\":\"e2\",\"type\":\"PARTITION\"}", EntityRecord.class);
+    assertNull(record.getType());
+    assertEquals("PARTITION", record.getTypeName());
+    assertEquals("PARTITION", record.get("type"));
+    assertTrue(record.getAttributes().isEmpty());
+  }
+
+  @Test
+  public void testNullFields() throws Exception {
+    String json = "{\"identity\":\"e3\",\"parentPath\":null," +
+        "\"type\":5,\"size\":null}";
+    EntityRecord record = mapper.readValue(json, EntityRecord.class);
+    assertEquals(mapper.readValue(json, Map.class), record);
+    assertTrue(record.containsKey("parentPath"));
+    assertNull(record.get("parentPath"));
+    assertTrue(record.containsKey("size"));
+    assertFalse(record.containsKey("sourceId"));
+    assertNull(record.getType());
+    assertEquals(5, record.get("type"));
+    assertTrue(record.containsKey("type"));
+
+    String relationJson = "{\"identity\":\"r2\",\"endpoint1Ids\":null}";
+    RelationRecord relation = mapper.readValue(relationJson,
+        RelationRecord.class);
+    assertEquals(mapper.readValue(relationJson, Map.class), relation);
+    assertTrue(relation.containsKey("endpoint1Ids"));
+    assertFalse(relation.containsKey("endpoint2Ids"));
+  }
+
+  @Test
+  public void testMixedTypeArray() throws Exception {
+    String json = "{\"identity\":\"r3\",\"endpoint1Ids\":[\"e1\",2," +
+        "{\"id\":\"e3\"},[\"e4\"]],\"endpoint2Ids\":[\"e5\"]," +
+        "\"type\":\"DATA_FLOW\"}";
+    RelationRecord record = mapper.readValue(json, RelationRecord.class);
+    assertNull(record.getEndpoint1Ids());
+    assertEquals(Lists.newArrayList("e5"), record.getEndpoint2Ids());
+    assertEquals(RelationType.DATA_FLOW, record.getType());
+    // the array is kept undecoded as it was
+    assertEquals(mapper.readValue(json, Map.class), record);
+    assertEquals(4, ((List<?>) record.get("endpoint1Ids")).size());
+  }
+
+  @Test
+  public void testRelationRecord() throws Exception {
+    RelationRecord record = mapper.readValue(RELATION_JSON,
+        RelationRecord.class);
+    assertEquals("r1", record.getIdentity());
+    assertEquals(RelationType.DATA_FLOW, record.getType());
+    assertEquals(Lists.newArrayList("e1", "e2"), record.getEndpoint1Ids());
+    assertEquals(EntityType.FILE, record.getEndpoint1Type());
+    assertEquals(SourceType.HDFS, record.getEndpoint1SourceType());
+    assertEquals(Lists.newArrayList("e3"), record.getEndpoint2Ids());
+    assertEquals(EntityType.OPERATION_EXECUTION, record.getEndpoint2Type());
+    assertNull(record.getEndpoint2SourceType());
+    assertEquals("SOLR", record.get("endpoint2SourceType"));
+    assertEquals("s2", record.getEndpoint2SourceId());
+    assertEquals(true, record.get("unlinked"));
+    assertEquals(mapper.readValue(RELATION_JSON, Map.class), record);
+  }
+
+  @Test
+  public void testRecordsBatch() throws Exception {
+    EntityRecordsBatch batch = mapper.readValue("{\"cursorMark\":\"c\"," +
+        "\"results\":[" + ENTITY_JSON + "]}", EntityRecordsBatch.class);
+    assertEquals("c", batch.getCursorMark());
+    assertEquals("e1", batch.getResults().get(0).getIdentity());
+  }
+}
@@ -20,17 +20,35 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
 import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.*;
 import org.mockito.*;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.*;
+import org.mockito.stubbing.Answer;
 
 /**
  * Unit tests for IncrementalExtractIterator
@@ -38,6 +56,9 @@ import org.mockito.runners.*;
 @RunWith(MockitoJUnitRunner.class)
 @SuppressWarnings("unchecked")
 public class MetadataResultIteratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private NavApiCient client;
   private EntityResultsBatch entityBatch;
   private RelationResultsBatch relationBatch;
@@ -105,5 +126,499 @@ public class MetadataResultIteratorTest {
     metadataResultIterator.getNextBatch();
     assertTrue(metadataResultIterator.hasNext());
   }
+
+  @Test
+  public void testPaging() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        batch("c1", "a", "b"), batch("c2", "c", "d"), batch("c3", "e"));
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList());
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e"), identities(it));
+
+    ArgumentCaptor<MetadataQuery> captor =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(pagingClient, times(3)).getEntityBatch(captor.capture());
+    assertEquals(Lists.newArrayList("*", "c1", "c2"),
+        Lists.newArrayList(captor.getAllValues().get(0).getCursorMark(),
+            captor.getAllValues().get(1).getCursorMark(),
+            captor.getAllValues().get(2).getCursorMark()));
+  }
+
+  @Test
+  public void testDeduplicate() throws Exception {
+    // a and b changed while the pages were fetched, the first page only
+    // holds copies of older runs
+    EntityResultsBatch first = runBatch("c1", "a", "s##1", "b", "s##1");
+    EntityResultsBatch second = runBatch("c2", "b", "s##2", "a", "s##1");
+    EntityResultsBatch third = runBatch("c3", "c", "s##1", "a", "s##3");
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        first, second, third, batch("c4"), first, second, third, batch("c4"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setDeduplicate(true);
+    options.setMaxInMemoryIdentities(1);
+    options.setSpillDirectory(folder.getRoot());
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    List<Object> runIds = Lists.newArrayList();
+    List<Object> identities = Lists.newArrayList();
+    while (it.hasNext()) {
+      Map<String, Object> result = it.next();
+      identities.add(result.get("identity"));
+      runIds.add(result.get("extractorRunId"));
+    }
+    // each identity is returned once, with the copy of its latest run
+    assertEquals(Lists.newArrayList("b", "c", "a"), identities);
+    assertEquals(Lists.newArrayList("s##2", "s##1", "s##3"), runIds);
+    // every page is fetched twice
+    verify(pagingClient, times(8)).getEntityBatch(any(MetadataQuery.class));
+    // the spilled identities are deleted once iteration ends
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testGetVersion() {
+    Map<String, Object> result = Maps.newHashMap();
+    assertEquals(0, MetadataResultIterator.getVersion(result));
+    result.put("extractorRunId", "source##12");
+    assertEquals(12, MetadataResultIterator.getVersion(result));
+    result.put("extractorRunId", "source##latest");
+    assertEquals(0, MetadataResultIterator.getVersion(result));
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        batch("c1", "a", "b"), batch("c2", "c"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setDeadlineMs(50);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    assertEquals("a", it.next().get("identity"));
+    Thread.sleep(100);
+    try {
+      // the last result of a page fetches the next one
+      it.next();
+      fail("Expected the deadline to be exceeded");
+    } catch (UncheckedTimeoutException e) {
+      // expected
+    }
+    verify(pagingClient, times(1)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testPrefetch() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        batch("c1", "a", "b"), batch("c2", "c", "d"), batch("c3", "e"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setPrefetchPages(1);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e"), identities(it));
+    verify(pagingClient, times(3)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testPrefetchError() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(batch("c1", "a", "b"))
+        .thenThrow(new IllegalStateException("server error"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setPrefetchPages(1);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    it.next();
+    try {
+      it.next();
+      fail("Expected the background fetch error");
+    } catch (IllegalStateException e) {
+      assertEquals("server error", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testPrefetchClose() throws InterruptedException {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(batch("c", "a", "b"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setPrefetchPages(2);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    it.next();
+    Thread.sleep(200);
+    it.close();
+    assertFalse(it.hasNext());
+    Thread.sleep(200);
+    // first page, two buffered pages and at most one blocked fetch
+    verify(pagingClient, atMost(4)).getEntityBatch(any(MetadataQuery.class));
+    verify(pagingClient, atLeast(3)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testConcurrentPartitions() {
+    // 2000 run ids make three partitions, each returns a single result
+    List<String> extractorRunIds = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      extractorRunIds.add("x##" + i);
+    }
+    final CountDownLatch concurrentCalls = new CountDownLatch(2);
+    final AtomicBoolean overlapped = new AtomicBoolean();
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation)
+              throws InterruptedException {
+            concurrentCalls.countDown();
+            if (concurrentCalls.await(5, TimeUnit.SECONDS)) {
+              overlapped.set(true);
+            }
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            String firstRunId = query.getQuery().replaceAll(
+                ".*extractorRunId:\\((x##\\d+) .*", "$1");
+            return batch("done", firstRunId);
+          }
+        });
+    ExtractionOptions options = new ExtractionOptions();
+    options.setPartitionConcurrency(2);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds, options);
+    assertEquals(Sets.<Object>newHashSet("x##0", "x##800", "x##1600"),
+        Sets.newHashSet(identities(it)));
+    assertTrue(overlapped.get());
+    verify(pagingClient, times(3)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testIdentityShards() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            return batch("done", query.getQuery());
+          }
+        });
+    ExtractionOptions options = new ExtractionOptions();
+    options.setIdentityShards(16);
+    options.setPartitionConcurrency(4);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.newArrayList("*"),
+        options);
+    Set<Object> queries = Sets.newHashSet(identities(it));
+    assertEquals(17, queries.size());
+    assertTrue(queries.contains(
+        "identity:* AND extractorRunId:(*) AND identity:a*"));
+    verify(pagingClient, times(17)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testIdentityShardsIncremental() {
+    ExtractionOptions options = new ExtractionOptions();
+    options.setIdentityShards(16);
+    MetadataResultIterator it = new MetadataResultIterator(client,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.newArrayList("x##1"),
+        options);
+    assertFalse(it.hasNext());
+    // incremental extractions are partitioned by extractorRunId only
+    verify(client, times(1)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testStreaming() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.streamEntityBatch(any(MetadataQuery.class))).thenReturn(
+        stream("c1", "a", "b"), stream("c2", "c", "d"), stream("c3", "e"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setStreaming(true);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    assertEquals(Lists.newArrayList("a", "b", "c", "d", "e"), identities(it));
+
+    ArgumentCaptor<MetadataQuery> captor =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(pagingClient, times(3)).streamEntityBatch(captor.capture());
+    assertEquals("c1", captor.getAllValues().get(1).getCursorMark());
+    assertEquals("c2", captor.getAllValues().get(2).getCursorMark());
+    verify(pagingClient, never()).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testStreamingEmptyPartition() {
+    List<String> extractorRunIds = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      extractorRunIds.add("x##" + i);
+    }
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.streamEntityBatch(any(MetadataQuery.class))).thenReturn(
+        stream("c1"), stream("c2", "a"));
+    ExtractionOptions options = new ExtractionOptions();
+    options.setStreaming(true);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds, options);
+    assertEquals(Lists.<Object>newArrayList("a"), identities(it));
+    verify(pagingClient, times(2)).streamEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testRecords() throws Exception {
+    EntityRecordsBatch records = new ObjectMapper().readValue(
+        "{\"cursorMark\":\"c\",\"results\":[{\"identity\":\"a\"," +
+            "\"type\":\"FILE\"}]}", EntityRecordsBatch.class);
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityRecordBatch(any(MetadataQuery.class)))
+        .thenReturn(records);
+    MetadataIterable iterable = new MetadataIterable(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList());
+    EntityRecord record = Iterables.getOnlyElement(
+        iterable.records(EntityRecord.class));
+    assertEquals("a", record.getIdentity());
+    verify(pagingClient, never()).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecordsWrongType() {
+    new MetadataIterable(client, MetadataType.ENTITIES, "identity:*", 2,
+        Lists.<String>newArrayList()).records(RelationRecord.class);
+  }
+
+  @Test
+  public void testPartitions() {
+    // 2000 run ids make three partitions
+    List<String> extractorRunIds = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      extractorRunIds.add("x##" + i);
+    }
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            return batch("done", query.getQuery());
+          }
+        });
+    MetadataIterable iterable = new MetadataIterable(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds);
+    List<MetadataIterable> partitions = iterable.partitions();
+    assertEquals(3, partitions.size());
+    List<Object> queries = Lists.newArrayList();
+    for (MetadataIterable partition : partitions) {
+      List<Object> results = identities(partition.iterator());
+      assertEquals(1, results.size());
+      assertEquals(Collections.singletonList(partition),
+          partition.partitions());
+      queries.addAll(results);
+    }
+    assertEquals(identities(iterable.iterator()), queries);
+    assertTrue(queries.get(1).toString().contains("x##800"));
+  }
+
+  @Test
+  public void testIdentityShardPartitions() {
+    ExtractionOptions options = new ExtractionOptions();
+    options.setIdentityShards(16);
+    MetadataIterable iterable = new MetadataIterable(client,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options);
+    assertEquals(17, iterable.partitions().size());
+  }
+
+  @Test
+  public void testProbeRunIdRanges() {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            if (query.getLimit() == 1 && !query.getQuery().contains("b##")) {
+              return batch("done");
+            }
+            return batch("done", query.getQuery());
+          }
+        });
+    // source a spans two partitions without results, b has results
+    Map<String, Integer> start = Maps.newLinkedHashMap();
+    start.put("a", 0);
+    start.put("b", 0);
+    Map<String, Integer> end = Maps.newHashMap();
+    end.put("a", 1000);
+    end.put("b", 2);
+    ExtractionOptions options = new ExtractionOptions();
+    options.setProbeRunIdRanges(true);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 100,
+        new ExtractorRunIdRanges(start, end), options);
+    assertEquals(Lists.<Object>newArrayList(
+        "identity:* AND extractorRunId:(b##0 OR b##1 OR b##2)"),
+        identities(it));
+    verify(pagingClient, times(4)).getEntityBatch(any(MetadataQuery.class));
+
+    // nothing to extract if no source has results
+    start.remove("b");
+    it = new MetadataResultIterator(pagingClient, MetadataType.ENTITIES,
+        "identity:*", 100, new ExtractorRunIdRanges(start, end), options);
+    assertFalse(it.hasNext());
+    verify(pagingClient, times(6)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testCheckpointResume() throws IOException {
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            String mark = ((MetadataQuery) invocation.getArguments()[0])
+                .getCursorMark();
+            switch (mark) {
+              case "*":
+                return batch("c1", "a", "b");
+              case "c1":
+                return batch("c2", "c", "d");
+              default:
+                return batch("c3", "e");
+            }
+          }
+        });
+    File file = folder.newFile();
+    ExtractionOptions options = new ExtractionOptions();
+    Checkpointer checkpointer = new Checkpointer(file, 0,
+        new ExtractionCheckpoint());
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, Lists.<String>newArrayList(),
+        options, false, checkpointer);
+    assertEquals("a", it.next().get("identity"));
+    assertEquals("b", it.next().get("identity"));
+    assertEquals("c", it.next().get("identity"));
+    it.close();
+
+    ExtractionCheckpoint.Position position =
+        Checkpointer.read(file).getEntities();
+    assertEquals("c1", position.getCursorMark());
+    assertEquals(0, position.getOffset());
+    assertEquals(2, position.getEmitted());
+    assertFalse(position.isDone());
+
+    // starts again at the last result returned
+    it = new MetadataResultIterator(pagingClient, MetadataType.ENTITIES,
+        "identity:*", 2, Lists.<String>newArrayList(), options, false,
+        new Checkpointer(file, 0, Checkpointer.read(file)));
+    assertEquals(Lists.<Object>newArrayList("c", "d", "e"), identities(it));
+    position = Checkpointer.read(file).getEntities();
+    assertTrue(position.isDone());
+    assertEquals(5, position.getEmitted());
+
+    it = new MetadataResultIterator(pagingClient, MetadataType.ENTITIES,
+        "identity:*", 2, Lists.<String>newArrayList(), options, false,
+        new Checkpointer(file, 0, Checkpointer.read(file)));
+    assertFalse(it.hasNext());
+    verify(pagingClient, times(4)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testCheckpointResumePartition() throws IOException {
+    // 2000 run ids make three partitions, resume within the second one
+    List<String> extractorRunIds = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      extractorRunIds.add("x##" + i);
+    }
+    NavApiCient pagingClient = mock(NavApiCient.class);
+    when(pagingClient.getEntityBatch(any(MetadataQuery.class))).thenReturn(
+        batch("c1", "a", "b"), batch("c2", "c"), batch("c3", "d"));
+    ExtractionCheckpoint checkpoint = new ExtractionCheckpoint();
+    checkpoint.getEntities().setPartition(1);
+    checkpoint.getEntities().setCursorMark("m");
+    checkpoint.getEntities().setOffset(1);
+    MetadataResultIterator it = new MetadataResultIterator(pagingClient,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds,
+        new ExtractionOptions(), false,
+        new Checkpointer(folder.newFile(), 0, checkpoint));
+    assertEquals(Lists.<Object>newArrayList("b", "c", "d"), identities(it));
+
+    ArgumentCaptor<MetadataQuery> captor =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(pagingClient, times(3)).getEntityBatch(captor.capture());
+    MetadataQuery first = captor.getAllValues().get(0);
+    assertEquals("m", first.getCursorMark());
+    assertTrue(first.getQuery().contains("x##800"));
+    assertFalse(first.getQuery().contains("x##799"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCheckpointPrefetch() throws IOException {
+    ExtractionOptions options = new ExtractionOptions();
+    options.setPrefetchPages(1);
+    new MetadataResultIterator(client, MetadataType.ENTITIES, "identity:*", 2,
+        Lists.<String>newArrayList(), options, false,
+        new Checkpointer(folder.newFile(), 0, new ExtractionCheckpoint()));
+  }
+
+  static ResultsBatchStream stream(String cursorMark, String... identities) {
+    StringBuilder json = new StringBuilder("{\"results\":[");
+    for (int i = 0; i < identities.length; i++) {
+      json.append(i > 0 ? "," : "")
+          .append("{\"identity\":\"").append(identities[i]).append("\"}");
+    }
+    json.append("],\"cursorMark\":\"").append(cursorMark).append("\"}");
+    return new ResultsBatchStream(new ByteArrayInputStream(
+        json.toString().getBytes(Charsets.UTF_8)), new Closeable() {
+          @Override
+          public void close() throws IOException {
+          }
+        }, new ObjectMapper(), Map.class);
+  }
+
+  static EntityResultsBatch batch(String cursorMark, String... identities) {
+    List<Map<String, Object>> results = Lists.newArrayList();
+    for (String identity : identities) {
+      Map<String, Object> result = Maps.newHashMap();
+      result.put("identity", identity);
+      results.add(result);
+    }
+    EntityResultsBatch batch = new EntityResultsBatch();
+    batch.setCursorMark(cursorMark);
+    batch.setResults(results);
+    return batch;
+  }
+
+  /**
+   * @param identityRuns pairs of identity and extractorRunId
+   */
+  private static EntityResultsBatch runBatch(String cursorMark,
+                                             String... identityRuns) {
+    List<Map<String, Object>> results = Lists.newArrayList();
+    for (int i = 0; i < identityRuns.length; i += 2) {
+      Map<String, Object> result = Maps.newHashMap();
+      result.put("identity", identityRuns[i]);
+      result.put("extractorRunId", identityRuns[i + 1]);
+      results.add(result);
+    }
+    EntityResultsBatch batch = new EntityResultsBatch();
+    batch.setCursorMark(cursorMark);
+    batch.setResults(results);
+    return batch;
+  }
+
+  static List<Object> identities(Iterator<Map<String, Object>> it) {
+    List<Object> identities = Lists.newArrayList();
+    while (it.hasNext()) {
+      identities.add(it.next().get("identity"));
+    }
+    return identities;
+  }
 }
 
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static com.cloudera.nav.sdk.client.MetadataResultIteratorTest.batch;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+/**
+ * Unit tests for MetadataResultSet
+ */
+@SuppressWarnings("unchecked")
+public class MetadataResultSetTest {
+
+  private ExecutorService executor;
+  private MetadataResultSet resultSet;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+    NavApiCient client = mock(NavApiCient.class);
+    when(client.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(batch("e", "e1", "e2"));
+    when(client.getRelationBatch(any(MetadataQuery.class)))
+        .thenReturn(batch("r", "r1", "r2"));
+    List<String> runIds = Collections.emptyList();
+    resultSet = new MetadataResultSet("marker",
+        new MetadataIterable(client, MetadataType.ENTITIES, "identity:*", 100,
+            runIds),
+        new MetadataIterable(client, MetadataType.RELATIONS, "identity:*",
+            100, runIds));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testConsumeConcurrently() throws Exception {
+    final CountDownLatch relationSeen = new CountDownLatch(1);
+    final List<Object> entities = Lists.newArrayList();
+    final List<Object> relations = Lists.newArrayList();
+    String marker = resultSet.consume(executor, new MetadataConsumer() {
+      @Override
+      public void accept(MetadataType type, Map<String, Object> result)
+          throws Exception {
+        // only completes if relations are consumed at the same time
+        assertTrue(relationSeen.await(5, TimeUnit.SECONDS));
+        entities.add(result.get("identity"));
+      }
+    }, new MetadataConsumer() {
+      @Override
+      public void accept(MetadataType type, Map<String, Object> result) {
+        relations.add(result.get("identity"));
+        relationSeen.countDown();
+      }
+    }).get(10, TimeUnit.SECONDS);
+    assertEquals("marker", marker);
+    assertEquals(Lists.newArrayList("e1", "e2"), entities);
+    assertEquals(Lists.newArrayList("r1", "r2"), relations);
+  }
+
+  @Test
+  public void testConsumeInterleaved() throws Exception {
+    final List<String> results = Lists.newArrayList();
+    String marker = resultSet.consume(executor, new MetadataConsumer() {
+      @Override
+      public void accept(MetadataType type, Map<String, Object> result) {
+        results.add(type + ":" + result.get("identity"));
+      }
+    }).get(10, TimeUnit.SECONDS);
+    assertEquals("marker", marker);
+    assertEquals(4, results.size());
+    assertTrue(results.containsAll(Lists.newArrayList("ENTITIES:e1",
+        "ENTITIES:e2", "RELATIONS:r1", "RELATIONS:r2")));
+  }
+
+  @Test
+  public void testConsumeFailure() throws Exception {
+    try {
+      resultSet.consume(executor, new MetadataConsumer() {
+        @Override
+        public void accept(MetadataType type, Map<String, Object> result) {
+          if (type == MetadataType.RELATIONS) {
+            throw new IllegalStateException("consumer failed");
+          }
+        }
+      }).get(10, TimeUnit.SECONDS);
+      fail("Expected the consumer failure");
+    } catch (ExecutionException e) {
+      assertEquals("consumer failed", e.getCause().getMessage());
+    }
+  }
+}
@@ -0,0 +1,621 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.client.StubNavigatorServer.RecordedRequest;
+import com.cloudera.nav.sdk.model.Source;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Tests for NavApiCient against an in-process stub Navigator server
+ */
+public class NavApiCientTest {
+
+  static final String SOURCES_JSON = "[{\"identity\":\"src1\"," +
+      "\"originalName\":\"HDFS-1\",\"sourceType\":\"HDFS\"," +
+      "\"clusterName\":\"Cluster 1\",\"sourceUrl\":\"hdfs://ns1\"," +
+      "\"sourceExtractIteration\":7}]";
+  static final String PAGE_JSON = "{\"cursorMark\":\"next\"," +
+      "\"results\":[{\"identity\":\"a\"},{\"identity\":\"b\"}]}";
+
+  private StubNavigatorServer server;
+  private ClientConfig config;
+  private NavApiCient client;
+  private final Set<String> expiredSessions = Collections.newSetFromMap(
+      Maps.<String, Boolean>newConcurrentMap());
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubNavigatorServer();
+    server.setJsonResponse("entities", SOURCES_JSON);
+    server.setJsonResponse("entities/paging", PAGE_JSON);
+    config = new ClientConfig();
+    config.setNavigatorUrl(server.getUrl());
+    config.setUsername("user");
+    config.setPassword("pass");
+    client = new NavApiCient(config);
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void testGetAllSources() {
+    Collection<Source> sources = client.getAllSources();
+    Source source = Iterables.getOnlyElement(sources);
+    assertEquals("src1", source.getIdentity());
+    assertEquals(SourceType.HDFS, source.getSourceType());
+    assertEquals(7, source.getSourceExtractIteration().intValue());
+  }
+
+  @Test
+  public void testSourceLookups() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals("src1", client.getSourceForUrl("hdfs://ns1").getIdentity());
+      assertEquals("src1", client.getOnlySource(SourceType.HDFS).getIdentity());
+    }
+    assertEquals(1, server.getRequests().size());
+    for (int i = 0; i < 3; i++) {
+      try {
+        client.getSourceForUrl("hdfs://unknown");
+        fail("Expected an unknown source");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertNull(client.getSourcesForType(SourceType.HIVE));
+    // one reload for each unknown key
+    assertEquals(3, server.getRequests().size());
+  }
+
+  @Test
+  public void testConnectionReuse() {
+    client.getAllSources();
+    for (int i = 0; i < 5; i++) {
+      ResultsBatch<Map<String, Object>> batch = client.getEntityBatch(
+          new MetadataQuery("identity:*", 2, "*"));
+      assertEquals("next", batch.getCursorMark());
+      assertEquals(2, batch.getResults().size());
+      assertEquals(PAGE_JSON.length(), batch.getResponseBytes());
+    }
+    List<RecordedRequest> requests = server.getRequests();
+    assertEquals(6, requests.size());
+    int port = requests.get(0).getRemotePort();
+    for (RecordedRequest request : requests) {
+      assertEquals("Expected every request on one pooled connection",
+          port, request.getRemotePort());
+      assertEquals("Basic dXNlcjpwYXNz", request.getHeader("Authorization"));
+    }
+  }
+
+  @Test
+  public void testStreamEntityBatch() {
+    for (int i = 0; i < 3; i++) {
+      ResultsBatchStream stream = client.streamEntityBatch(
+          new MetadataQuery("identity:*", 2, "*"));
+      try {
+        assertEquals(2, MetadataResultIteratorTest.identities(stream).size());
+        assertEquals("next", stream.getCursorMark());
+        assertEquals(PAGE_JSON.length(), stream.getResponseBytes());
+      } finally {
+        stream.close();
+      }
+    }
+    List<RecordedRequest> requests = server.getRequests();
+    assertEquals(3, requests.size());
+    assertEquals("POST", requests.get(0).getMethod());
+    assertTrue(requests.get(0).getBodyString().contains("\"identity:*\""));
+    assertEquals("Expected the streamed response to release its connection",
+        requests.get(0).getRemotePort(), requests.get(2).getRemotePort());
+  }
+
+  @Test
+  public void testRecordBatches() {
+    MetadataQuery query = new MetadataQuery("identity:*", 2, "*");
+    ResultsBatch<EntityRecord> batch = client.getEntityRecordBatch(query);
+    assertEquals("next", batch.getCursorMark());
+    assertEquals("b", batch.getResults().get(1).getIdentity());
+
+    ResultsBatchStream stream = client.streamEntityRecords(query);
+    try {
+      Map<String, Object> record = stream.next();
+      assertTrue(record instanceof EntityRecord);
+      assertEquals("a", ((EntityRecord) record).getIdentity());
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testCompressedResponses() {
+    server.setResponder("entities/paging",
+        StubNavigatorServer.gzipJson(PAGE_JSON));
+    MetadataQuery query = new MetadataQuery("identity:*", 2, "*");
+    assertEquals(2, client.getEntityBatch(query).getResults().size());
+    ResultsBatchStream stream = client.streamEntityBatch(query);
+    try {
+      assertEquals(2, MetadataResultIteratorTest.identities(stream).size());
+      assertEquals("next", stream.getCursorMark());
+    } finally {
+      stream.close();
+    }
+    for (RecordedRequest request : server.getRequests()) {
+      assertTrue(request.getHeader("Accept-Encoding").contains("gzip"));
+    }
+  }
+
+  @Test
+  public void testUncompressedResponses() {
+    server.setResponder("entities/paging",
+        StubNavigatorServer.gzipJson(PAGE_JSON));
+    config.setCompressResponses(false);
+    NavApiCient uncompressed = new NavApiCient(config);
+    try {
+      assertEquals(2, uncompressed.getEntityBatch(
+          new MetadataQuery("identity:*", 2, "*")).getResults().size());
+    } finally {
+      uncompressed.close();
+    }
+    assertNull(server.getRequests().get(0).getHeader("Accept-Encoding"));
+  }
+
+  @Test(expected = HttpClientErrorException.class)
+  public void testStreamError() {
+    config.setNavigatorUrl(server.getUrl() + "missing/");
+    NavApiCient missing = new NavApiCient(config);
+    try {
+      missing.streamEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+    } finally {
+      missing.close();
+    }
+  }
+
+  @Test
+  public void testPoolConfiguration() {
+    config.setMaxConnectionsPerRoute(1);
+    config.setMaxTotalConnections(1);
+    NavApiCient singleConnection = new NavApiCient(config);
+    try {
+      singleConnection.getAllSources();
+      singleConnection.getAllSources();
+    } finally {
+      singleConnection.close();
+    }
+    assertEquals(2, server.getRequests().size());
+  }
+
+  @Test
+  public void testCoalesceRequests() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        started.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        StubNavigatorServer.json(PAGE_JSON).respond(exchange, requestBody);
+      }
+    });
+    config.setCoalesceRequests(true);
+    final NavApiCient coalescing = new NavApiCient(config);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ResultsBatch<Map<String, Object>>>> batches =
+          Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+        batches.add(executor.submit(
+            new Callable<ResultsBatch<Map<String, Object>>>() {
+              @Override
+              public ResultsBatch<Map<String, Object>> call() {
+                return coalescing.getEntityBatch(
+                    new MetadataQuery("identity:*", 2, "*"));
+              }
+            }));
+      }
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<ResultsBatch<Map<String, Object>>> batch : batches) {
+        assertSame(batches.get(0).get(), batch.get());
+      }
+      assertEquals(1, server.getRequests().size());
+
+      // completed requests are not cached and other pages are not shared
+      coalescing.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+      coalescing.getEntityBatch(new MetadataQuery("identity:*", 2, "next"));
+      assertEquals(3, server.getRequests().size());
+    } finally {
+      executor.shutdownNow();
+      coalescing.close();
+    }
+  }
+
+  @Test
+  public void testRecordBatchesNotCoalesced() throws Exception {
+    final CountDownLatch started = new CountDownLatch(2);
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        // both requests are in flight at once
+        started.countDown();
+        try {
+          started.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        StubNavigatorServer.json("{\"cursorMark\":\"next\",\"results\":[" +
+            MetadataRecordTest.ENTITY_JSON + "]}")
+            .respond(exchange, requestBody);
+      }
+    });
+    config.setCoalesceRequests(true);
+    final NavApiCient coalescing = new NavApiCient(config);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<EntityRecord>> records = Lists.newArrayList();
+      for (int i = 0; i < 2; i++) {
+        records.add(executor.submit(new Callable<EntityRecord>() {
+          @Override
+          public EntityRecord call() {
+            EntityRecord record = Iterables.getOnlyElement(
+                coalescing.getEntityRecordBatch(
+                    new MetadataQuery("identity:*", 2, "*")).getResults());
+            // decoding the attributes is not shared with the other caller
+            record.getAttributes();
+            return record;
+          }
+        }));
+      }
+      EntityRecord first = records.get(0).get();
+      EntityRecord second = records.get(1).get();
+      assertNotSame(first, second);
+      assertEquals(3, first.getAttributes().size());
+      assertEquals(3, second.getAttributes().size());
+      assertEquals(2, server.getRequests().size());
+    } finally {
+      executor.shutdownNow();
+      coalescing.close();
+    }
+  }
+
+  @Test
+  public void testRetryServerErrors() {
+    final AtomicInteger requests = new AtomicInteger();
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        if (requests.incrementAndGet() <= 2) {
+          StubNavigatorServer.send(exchange, 503, "{}".getBytes(Charsets.UTF_8));
+        } else {
+          StubNavigatorServer.json(PAGE_JSON).respond(exchange, requestBody);
+        }
+      }
+    });
+    config.setRetryBackoffMs(1);
+    NavApiCient retrying = new NavApiCient(config);
+    try {
+      assertEquals("next", retrying.getEntityBatch(
+          new MetadataQuery("identity:*", 2, "*")).getCursorMark());
+    } finally {
+      retrying.close();
+    }
+    assertEquals(3, requests.get());
+  }
+
+  @Test
+  public void testClientErrorsNotRetried() {
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        StubNavigatorServer.send(exchange, 400, new byte[0]);
+      }
+    });
+    try {
+      client.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+      fail("Expected a client error");
+    } catch (HttpClientErrorException e) {
+      // expected
+    }
+    assertEquals(1, server.getRequests().size());
+  }
+
+  @Test
+  public void testReadTimeout() {
+    server.setResponder("entities/paging", slow(500));
+    config.setReadTimeoutMs(50);
+    config.setMaxRetries(1);
+    config.setRetryBackoffMs(1);
+    NavApiCient timingOut = new NavApiCient(config);
+    try {
+      timingOut.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+      fail("Expected a read timeout");
+    } catch (ResourceAccessException e) {
+      // expected
+    } finally {
+      timingOut.close();
+    }
+    assertEquals(2, server.getRequests().size());
+  }
+
+  @Test
+  public void testHedgeSlowRequests() {
+    config.setHedgePercentile(0.9);
+    NavApiCient hedging = new NavApiCient(config);
+    try {
+      for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+        hedging.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+      }
+      assertEquals(0, hedging.getHedgedRequestCount());
+      final AtomicInteger requests = new AtomicInteger();
+      server.setResponder("entities/paging",
+          new StubNavigatorServer.Responder() {
+            @Override
+            public void respond(HttpExchange exchange, byte[] requestBody)
+                throws IOException {
+              // only the first request is slow
+              int delay = requests.incrementAndGet() == 1 ? 2000 : 0;
+              slow(delay).respond(exchange, requestBody);
+            }
+          });
+      long start = System.currentTimeMillis();
+      assertEquals("next", hedging.getEntityBatch(
+          new MetadataQuery("identity:*", 2, "*")).getCursorMark());
+      assertTrue(System.currentTimeMillis() - start < 2000);
+      assertEquals(1, hedging.getHedgedRequestCount());
+      assertEquals(2, requests.get());
+    } finally {
+      hedging.close();
+    }
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    final AtomicInteger delayMs = new AtomicInteger(50);
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        slow(delayMs.get()).respond(exchange, requestBody);
+      }
+    });
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 8);
+    config.setConcurrencyLimiter(limiter);
+    NavApiCient limited = new NavApiCient(config);
+    try {
+      // warm up the connection pool with fast requests, like small probes
+      delayMs.set(0);
+      getConcurrently(limited, 2, 1);
+      delayMs.set(50);
+      getConcurrently(limited, 4, 10);
+      int widened = limiter.getLimit();
+      assertTrue("Expected the limit to grow at flat latency", widened > 2);
+
+      // latency rises far above the baseline
+      delayMs.set(500);
+      getConcurrently(limited, 4, 1);
+      int shrunk = limiter.getLimit();
+      assertTrue("Expected the limit to shrink at rising latency",
+          shrunk < widened);
+
+      // latency returns to normal
+      delayMs.set(50);
+      getConcurrently(limited, 4, 10);
+      assertTrue("Expected the limit to grow again after recovery",
+          limiter.getLimit() > shrunk);
+      assertEquals(0, limiter.getInFlight());
+    } finally {
+      limited.close();
+    }
+  }
+
+  @Test
+  public void testSessionCookies() {
+    server.setResponder("entities/paging", sessionResponder(PAGE_JSON));
+    MetadataQuery query = new MetadataQuery("identity:*", 2, "*");
+    client.getEntityBatch(query);
+    client.getEntityBatch(query);
+    List<RecordedRequest> requests = server.getRequests();
+    assertEquals("Basic dXNlcjpwYXNz",
+        requests.get(0).getHeader("Authorization"));
+    assertNull(requests.get(0).getHeader("Cookie"));
+    assertNull(requests.get(1).getHeader("Authorization"));
+    assertEquals("JSESSIONID=s1", requests.get(1).getHeader("Cookie"));
+
+    // s1 expires, the request is sent again with credentials
+    expiredSessions.add("JSESSIONID=s1");
+    assertEquals(2, client.getEntityBatch(query).getResults().size());
+    client.getEntityBatch(query);
+    requests = server.getRequests();
+    assertEquals(5, requests.size());
+    assertEquals("JSESSIONID=s1", requests.get(2).getHeader("Cookie"));
+    assertEquals("Basic dXNlcjpwYXNz",
+        requests.get(3).getHeader("Authorization"));
+    assertEquals("JSESSIONID=s2", requests.get(4).getHeader("Cookie"));
+  }
+
+  @Test
+  public void testSessionCookiesDisabled() {
+    server.setResponder("entities/paging", sessionResponder(PAGE_JSON));
+    config.setSessionCookies(false);
+    NavApiCient basicOnly = new NavApiCient(config);
+    try {
+      basicOnly.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+      basicOnly.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+    } finally {
+      basicOnly.close();
+    }
+    for (RecordedRequest request : server.getRequests()) {
+      assertEquals("Basic dXNlcjpwYXNz", request.getHeader("Authorization"));
+      assertNull(request.getHeader("Cookie"));
+    }
+  }
+
+  @Test
+  public void testAsyncRequests() throws Exception {
+    final CountDownLatch concurrent = new CountDownLatch(3);
+    server.setResponder("entities/paging", new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        // only completes if all three requests are in flight together
+        concurrent.countDown();
+        try {
+          assertTrue(concurrent.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        StubNavigatorServer.json(PAGE_JSON).respond(exchange, requestBody);
+      }
+    });
+    List<ListenableFuture<ResultsBatch<Map<String, Object>>>> batches =
+        Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      batches.add(client.getEntityBatchAsync(
+          new MetadataQuery("identity:*", 2, "c" + i)));
+    }
+    ListenableFuture<Collection<Source>> sources =
+        client.getAllSourcesAsync();
+    for (ResultsBatch<Map<String, Object>> batch :
+        Futures.allAsList(batches).get(5, TimeUnit.SECONDS)) {
+      assertEquals("next", batch.getCursorMark());
+    }
+    assertEquals("src1",
+        Iterables.getOnlyElement(sources.get()).getIdentity());
+  }
+
+  @Test
+  public void testAsyncExecutor() throws Exception {
+    server.setJsonResponse("relations/paging", PAGE_JSON);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    config.setAsyncExecutor(executor);
+    NavApiCient async = new NavApiCient(config);
+    try {
+      assertEquals(2, async.getRelationBatchAsync(
+          new MetadataQuery("identity:*", 2, "*")).get().getResults().size());
+      async.close();
+      // the executor belongs to the caller
+      assertFalse(executor.isShutdown());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return responder that starts a new session for every request with
+   *         credentials and rejects requests with an expired session
+   */
+  StubNavigatorServer.Responder sessionResponder(final String json) {
+    final AtomicInteger sessions = new AtomicInteger();
+    return new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+        if (cookie != null && expiredSessions.contains(cookie)) {
+          StubNavigatorServer.send(exchange, 401,
+              "{}".getBytes(Charsets.UTF_8));
+          return;
+        }
+        if (cookie == null) {
+          exchange.getResponseHeaders().add("Set-Cookie",
+              "JSESSIONID=s" + sessions.incrementAndGet() + "; Path=/");
+        }
+        StubNavigatorServer.json(json).respond(exchange, requestBody);
+      }
+    };
+  }
+
+  /**
+   * Get entity batches from the given number of threads at once
+   */
+  private static void getConcurrently(final NavApiCient client, int threads,
+                                      final int batchesPerThread)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> calls = Lists.newArrayList();
+      for (int i = 0; i < threads; i++) {
+        calls.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int j = 0; j < batchesPerThread; j++) {
+              client.getEntityBatch(new MetadataQuery("identity:*", 2, "*"));
+            }
+          }
+        }));
+      }
+      for (Future<?> call : calls) {
+        call.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static StubNavigatorServer.Responder slow(final long delayMs) {
+    return new StubNavigatorServer.Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        try {
+          Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        StubNavigatorServer.json(PAGE_JSON).respond(exchange, requestBody);
+      }
+    };
+  }
+}
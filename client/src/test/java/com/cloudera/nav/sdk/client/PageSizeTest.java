@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+/**
+ * Unit tests for PageSize
+ */
+public class PageSizeTest {
+
+  private ExtractionOptions options;
+  private PagingMetrics metrics;
+
+  @Before
+  public void setUp() {
+    metrics = new PagingMetrics();
+    options = new ExtractionOptions();
+    options.setAdaptivePageSize(true);
+    options.setMinPageSize(10);
+    options.setMaxPageSize(1000);
+    options.setTargetPageLatencyMs(1000);
+    options.setPagingMetrics(metrics);
+  }
+
+  @Test
+  public void testFixed() {
+    PageSize pageSize = new PageSize(100);
+    pageSize.record(100, 100, ms(10), 1000);
+    assertEquals(100, pageSize.get());
+  }
+
+  @Test
+  public void testGrowsWhenFast() {
+    PageSize pageSize = new PageSize(100, options);
+    // at most doubles per page
+    pageSize.record(100, 100, ms(100), 1000);
+    assertEquals(200, pageSize.get());
+    pageSize.record(200, 200, ms(800), 1000);
+    assertEquals(250, pageSize.get());
+    for (int i = 0; i < 10; i++) {
+      pageSize.record(pageSize.get(), pageSize.get(), ms(1), 1000);
+    }
+    assertEquals(1000, pageSize.get());
+  }
+
+  @Test
+  public void testShrinksWhenSlow() {
+    PageSize pageSize = new PageSize(100, options);
+    pageSize.record(100, 100, ms(1250), 1000);
+    assertEquals(80, pageSize.get());
+    for (int i = 0; i < 10; i++) {
+      pageSize.record(pageSize.get(), pageSize.get(), ms(10000), 1000);
+    }
+    assertEquals(10, pageSize.get());
+  }
+
+  @Test
+  public void testIgnoresPartialPages() {
+    PageSize pageSize = new PageSize(100, options);
+    pageSize.record(100, 3, ms(10), 1000);
+    assertEquals(100, pageSize.get());
+  }
+
+  @Test
+  public void testMaxPageBytes() {
+    options.setMaxPageBytes(1000);
+    PageSize pageSize = new PageSize(100, options);
+    pageSize.record(100, 100, ms(10), 1250);
+    assertEquals(80, pageSize.get());
+  }
+
+  @Test
+  public void testInitialLimitWithinBounds() {
+    assertEquals(1000, new PageSize(5000, options).get());
+    assertEquals(10, new PageSize(1, options).get());
+  }
+
+  @Test
+  public void testMetrics() {
+    PageSize pageSize = new PageSize(100, options);
+    pageSize.record(100, 100, ms(500), 1000);
+    pageSize.record(200, 50, ms(300), 500);
+    assertEquals(2, metrics.getPages());
+    assertEquals(150, metrics.getResults());
+    assertEquals(1500, metrics.getResponseBytes());
+    assertEquals(800, metrics.getTotalLatencyMs());
+    assertEquals(300, metrics.getLastLatencyMs());
+    assertEquals(200, metrics.getPageSize());
+  }
+
+  private static long ms(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for spooling raw pages and parsing them in parallel
+ */
+public class PageSpoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testScanCursorMarkFirst() {
+    PageScanner scanner = scan("{\"cursorMark\":\"next\",\"results\":" +
+        "[{\"identity\":\"a\",\"properties\":{\"k\":{\"x\":1}}}," +
+        "{\"identity\":\"b\",\"tags\":[\"{\",\"}\"]}]}", 1);
+    assertEquals("next", scanner.getCursorMark());
+    assertEquals(2, scanner.getCount());
+  }
+
+  @Test
+  public void testScanCursorMarkLast() {
+    PageScanner scanner = scan("{ \"entities\" : [ {\"identity\":\"a\"} ] ," +
+        " \"cursorMark\" : \"AoE\\/x\\\"y\" }", 3);
+    assertEquals("AoE/x\"y", scanner.getCursorMark());
+    assertEquals(1, scanner.getCount());
+  }
+
+  @Test
+  public void testScanNullCursorMark() {
+    PageScanner scanner = scan("{\"cursorMark\":null,\"stats\":" +
+        "{\"results\":[{}]},\"other\":[{}],\"relations\":[]}", 5);
+    assertNull(scanner.getCursorMark());
+    assertEquals(0, scanner.getCount());
+  }
+
+  @Test
+  public void testSpoolAndParse() throws Exception {
+    NavApiCient client = mock(NavApiCient.class);
+    final AtomicInteger requests = new AtomicInteger();
+    when(client.spoolEntityBatch(any(MetadataQuery.class),
+        any(PageSpool.Writer.class))).thenAnswer(new Answer<PageSpool.Page>() {
+      @Override
+      public PageSpool.Page answer(InvocationOnMock invocation)
+          throws IOException {
+        PageSpool.Writer writer =
+            (PageSpool.Writer) invocation.getArguments()[1];
+        int n = requests.incrementAndGet();
+        String results = n == 1 ?
+            "{\"identity\":\"a\"},{\"identity\":\"b\"}" :
+            "{\"identity\":\"c\"}";
+        return writer.write(body("{\"cursorMark\":\"mark" + n +
+            "\",\"results\":[" + results + "]}"));
+      }
+    });
+    MetadataIterable iterable = new MetadataIterable(client,
+        MetadataType.ENTITIES, "identity:*", 2,
+        Collections.<String>emptyList());
+
+    PageSpool spool = iterable.spool(folder.getRoot());
+    assertEquals(2, spool.getPageCount());
+    assertTrue(spool.getBytes() > 0);
+    Set<Object> identities = Collections.synchronizedSet(
+        Sets.<Object>newHashSet());
+    assertEquals(3, spool.parse(executor, collect(identities)));
+    assertEquals(ImmutableSet.<Object>of("a", "b", "c"), identities);
+
+    spool.close();
+    assertEquals(0, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void testFailedWriteIsDiscarded() throws Exception {
+    PageSpool spool = new PageSpool(folder.getRoot(), 1L,
+        MetadataType.RELATIONS);
+    PageSpool.Writer writer = spool.newWriter();
+    writer.write(body("{\"results\":[{\"identity\":\"a\"}]}"));
+    InputStream broken = new InputStream() {
+      private final InputStream partial =
+          body("{\"results\":[{\"identity\":\"x\"}");
+
+      @Override
+      public int read() throws IOException {
+        int b = partial.read();
+        if (b < 0) {
+          throw new IOException("connection reset");
+        }
+        return b;
+      }
+    };
+    try {
+      writer.write(broken);
+      fail("Expected the write to fail");
+    } catch (IOException e) {
+      // expected
+    }
+    writer.write(body("{\"results\":[{\"identity\":\"b\"}]}"));
+    writer.close();
+
+    // the tiny file size starts a new file for every page
+    assertEquals(2, spool.getPageCount());
+    assertEquals(2, folder.getRoot().list().length);
+    Set<Object> identities = Collections.synchronizedSet(
+        Sets.<Object>newHashSet());
+    assertEquals(2, spool.parse(executor, collect(identities)));
+    assertEquals(ImmutableSet.<Object>of("a", "b"), identities);
+    spool.close();
+  }
+
+  @Test
+  public void testParseError() throws Exception {
+    PageSpool spool = new PageSpool(folder.getRoot(),
+        PageSpool.DEFAULT_MAX_FILE_BYTES, MetadataType.ENTITIES);
+    PageSpool.Writer writer = spool.newWriter();
+    writer.write(body("{\"results\":[{\"identity\":\"a\"}]}"));
+    writer.close();
+    try {
+      spool.parse(executor, new MetadataConsumer() {
+        @Override
+        public void accept(MetadataType type, Map<String, Object> result) {
+          throw new IllegalStateException("consumer failed");
+        }
+      });
+      fail("Expected the consumer error");
+    } catch (IllegalStateException e) {
+      assertEquals("consumer failed", e.getMessage());
+    } finally {
+      spool.close();
+    }
+  }
+
+  private static MetadataConsumer collect(final Set<Object> identities) {
+    return new MetadataConsumer() {
+      @Override
+      public void accept(MetadataType type, Map<String, Object> result) {
+        identities.add(result.get("identity"));
+      }
+    };
+  }
+
+  private static InputStream body(String json) {
+    return new ByteArrayInputStream(json.getBytes(Charsets.UTF_8));
+  }
+
+  /**
+   * Feed the response to a scanner in chunks of the given size
+   */
+  private static PageScanner scan(String json, int chunkSize) {
+    byte[] bytes = json.getBytes(Charsets.UTF_8);
+    PageScanner scanner = new PageScanner();
+    for (int i = 0; i < bytes.length; i += chunkSize) {
+      ByteBuffer chunk = ByteBuffer.wrap(bytes, i,
+          Math.min(chunkSize, bytes.length - i));
+      scanner.update(chunk);
+      assertEquals(i, chunk.position());
+    }
+    return scanner;
+  }
+}
@@ -17,6 +17,8 @@
 package com.cloudera.nav.sdk.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.net.URL;
 
@@ -39,5 +41,11 @@ public class PluginConfigurationFactoryTest {
         "http://nav.cloudera.com:7187/api/v7/");
     assertEquals(config.getUsername(), "username");
     assertEquals(config.getPassword(), "password");
+    assertEquals(ClientConfig.DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+        config.getMaxConnectionsPerRoute());
+    assertEquals(ClientConfig.DEFAULT_MAX_TOTAL_CONNECTIONS,
+        config.getMaxTotalConnections());
+    assertTrue(config.isCompressResponses());
+    assertFalse(config.isCompressRequests());
   }
 }
@@ -47,4 +47,25 @@ public class QueryUtilsTest {
         "AND identity:(foo OR bar OR baz)";
     assertEquals(ans, fullQuery);
   }
+
+  @Test
+  public void testIdentityShards() {
+    List<String> shards = QueryUtils.buildIdentityShards(16);
+    assertEquals(17, shards.size());
+    assertEquals("identity:0*", shards.get(0));
+    assertEquals("identity:f*", shards.get(15));
+    assertEquals("NOT identity:(0* OR 1* OR 2* OR 3* OR 4* OR 5* OR 6* OR " +
+        "7* OR 8* OR 9* OR a* OR b* OR c* OR d* OR e* OR f*)", shards.get(16));
+
+    shards = QueryUtils.buildIdentityShards(256);
+    assertEquals(257, shards.size());
+    assertEquals("identity:00*", shards.get(0));
+    assertEquals("identity:0a*", shards.get(10));
+    assertEquals("identity:ff*", shards.get(255));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidIdentityShards() {
+    QueryUtils.buildIdentityShards(32);
+  }
 }
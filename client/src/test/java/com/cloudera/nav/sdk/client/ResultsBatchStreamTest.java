@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.*;
+
+/**
+ * Tests for decoding paging responses with ResultsBatchStream
+ */
+public class ResultsBatchStreamTest {
+
+  private AtomicBoolean closed;
+
+  @Before
+  public void setUp() {
+    closed = new AtomicBoolean();
+  }
+
+  @Test
+  public void testCursorMarkFirst() {
+    ResultsBatchStream stream = stream("{\"cursorMark\":\"next\"," +
+        "\"results\":[{\"identity\":\"a\",\"tags\":[\"t\"]},{\"identity\":\"b\"}]}");
+    assertTrue(stream.hasNext());
+    assertEquals("next", stream.getCursorMark());
+    assertEquals(2, MetadataResultIteratorTest.identities(stream).size());
+    assertEquals(2, stream.getCount());
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testCursorMarkLast() {
+    ResultsBatchStream stream = stream("{\"entities\":[{\"identity\":\"a\"}]," +
+        "\"cursorMark\":\"next\"}");
+    assertNull(stream.getCursorMark());
+    Map<String, Object> result = stream.next();
+    assertEquals("a", result.get("identity"));
+    assertFalse(stream.hasNext());
+    assertEquals("next", stream.getCursorMark());
+    assertTrue(closed.get());
+  }
+
+  @Test
+  public void testNestedValues() {
+    ResultsBatchStream stream = stream("{\"results\":[{\"identity\":\"a\"," +
+        "\"properties\":{\"k\":\"v\"},\"tags\":[\"x\",\"y\"]}]}");
+    Map<String, Object> result = stream.next();
+    assertEquals("v", ((Map<?, ?>) result.get("properties")).get("k"));
+    assertEquals(2, ((List<?>) result.get("tags")).size());
+    assertFalse(stream.hasNext());
+  }
+
+  @Test
+  public void testSkipsUnknownFields() {
+    ResultsBatchStream stream = stream("{\"stats\":{\"results\":[1,2]}," +
+        "\"other\":[{\"identity\":\"x\"}],\"results\":[{\"identity\":\"a\"}]," +
+        "\"cursorMark\":\"next\"}");
+    assertEquals(1, MetadataResultIteratorTest.identities(stream).size());
+    assertEquals("next", stream.getCursorMark());
+  }
+
+  @Test
+  public void testEmptyResults() {
+    ResultsBatchStream stream = stream("{\"results\":[],\"cursorMark\":\"c\"}");
+    assertFalse(stream.hasNext());
+    assertEquals(0, stream.getCount());
+    assertEquals("c", stream.getCursorMark());
+  }
+
+  @Test
+  public void testClose() {
+    ResultsBatchStream stream = stream("{\"results\":[{\"identity\":\"a\"}," +
+        "{\"identity\":\"b\"}]}");
+    stream.next();
+    stream.close();
+    assertTrue(closed.get());
+    assertFalse(stream.hasNext());
+  }
+
+  private ResultsBatchStream stream(String json) {
+    return new ResultsBatchStream(
+        new ByteArrayInputStream(json.getBytes(Charsets.UTF_8)),
+        new Closeable() {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        }, new ObjectMapper(), Map.class);
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CharStreams;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the rolling NDJSON and Avro extraction sinks
+ */
+public class RollingSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private SinkOptions options;
+
+  @Before
+  public void setUp() {
+    options = new SinkOptions();
+    options.setFlushIntervalMs(0);
+  }
+
+  @Test
+  public void testNdjsonRollsByRecords() throws Exception {
+    options.setMaxFileRecords(2);
+    NdjsonSink sink = new NdjsonSink(folder.getRoot(), "dump", options);
+    for (int i = 0; i < 5; i++) {
+      sink.accept(MetadataType.ENTITIES, result("e" + i));
+    }
+    sink.accept(MetadataType.RELATIONS, result("r0"));
+    File manifestFile = sink.commit("marker1");
+
+    RollingSink.Manifest manifest = new ObjectMapper().readValue(manifestFile,
+        RollingSink.Manifest.class);
+    assertEquals("marker1", manifest.getMarker());
+    assertEquals(4, manifest.getFiles().size());
+    List<String> lines = Lists.newArrayList();
+    for (RollingSink.FileEntry entry : manifest.getFiles()) {
+      if (entry.getType() == MetadataType.ENTITIES) {
+        List<String> fileLines = readNdjson(
+            new File(folder.getRoot(), entry.getName()));
+        assertEquals(entry.getRecords(), fileLines.size());
+        lines.addAll(fileLines);
+      }
+    }
+    assertEquals("dump-entities-00000.ndjson.gz",
+        manifest.getFiles().get(0).getName());
+    assertEquals(5, lines.size());
+    assertEquals("{\"identity\":\"e4\",\"tags\":[\"a\",\"b\"]}", lines.get(4));
+    for (String name : folder.getRoot().list()) {
+      assertFalse(name.endsWith(RollingSink.IN_PROGRESS_SUFFIX));
+    }
+  }
+
+  @Test
+  public void testCloseWithoutCommit() throws Exception {
+    NdjsonSink sink = new NdjsonSink(folder.getRoot(), "dump", options);
+    sink.accept(MetadataType.RELATIONS, result("r0"));
+    sink.close();
+    assertEquals(1, sink.getFiles().size());
+    assertFalse(new File(folder.getRoot(),
+        "dump" + RollingSink.MANIFEST_SUFFIX).exists());
+    try {
+      sink.accept(MetadataType.RELATIONS, result("r1"));
+      fail("Expected the closed sink to reject results");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBackgroundFlush() throws Exception {
+    options.setFlushIntervalMs(10);
+    NdjsonSink sink = new NdjsonSink(folder.getRoot(), "dump", options);
+    sink.accept(MetadataType.ENTITIES, result("e0"));
+    File inProgress = new File(folder.getRoot(),
+        "dump-entities-00000.ndjson.gz" + RollingSink.IN_PROGRESS_SUFFIX);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (inProgress.length() < 20 &&
+        System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // the flushed part of the file decompresses while it is being written
+    try (GZIPInputStream in = new GZIPInputStream(
+        new FileInputStream(inProgress))) {
+      byte[] line = new byte[64];
+      int n = in.read(line);
+      assertTrue(new String(line, 0, n, Charsets.UTF_8)
+          .startsWith("{\"identity\":\"e0\""));
+    }
+    sink.close();
+  }
+
+  @Test
+  public void testAvro() throws Exception {
+    options.setMaxFileBytes(1);
+    AvroSink sink = new AvroSink(folder.getRoot(), "dump", options);
+    Map<String, Object> entity = result("e0");
+    entity.put("properties", ImmutableMap.of("k", "v"));
+    entity.put("size", 42);
+    entity.put("deleted", null);
+    sink.accept(MetadataType.ENTITIES, entity);
+    sink.accept(MetadataType.ENTITIES, result("e1"));
+    sink.commit("marker1");
+
+    List<RollingSink.FileEntry> files = sink.getFiles();
+    assertEquals(2, files.size());
+    File file = new File(folder.getRoot(), files.get(0).getName());
+    assertEquals("dump-entities-00000.avro", file.getName());
+    try (DataFileReader<GenericRecord> reader = new DataFileReader<>(file,
+        new GenericDatumReader<GenericRecord>())) {
+      assertEquals("deflate", reader.getMetaString("avro.codec"));
+      assertEquals(AvroSink.getSchema(MetadataType.ENTITIES),
+          reader.getSchema());
+      GenericRecord record = reader.next();
+      assertEquals("e0", record.get("identity").toString());
+      Map<?, ?> attributes = (Map<?, ?>) record.get("attributes");
+      assertEquals(42L, value(attributes, "size"));
+      assertNull(value(attributes, "deleted"));
+      List<?> tags = (List<?>) value(attributes, "tags");
+      assertEquals("b",
+          ((GenericRecord) tags.get(1)).get("value").toString());
+      Map<?, ?> properties = (Map<?, ?>) value(attributes, "properties");
+      assertEquals("v", value(properties, "k").toString());
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  private static Object value(Map<?, ?> values, String key) {
+    for (Map.Entry<?, ?> entry : values.entrySet()) {
+      if (entry.getKey().toString().equals(key)) {
+        return ((GenericRecord) entry.getValue()).get("value");
+      }
+    }
+    throw new AssertionError("No value for " + key);
+  }
+
+  private static Map<String, Object> result(String identity) {
+    Map<String, Object> result = Maps.newLinkedHashMap();
+    result.put("identity", identity);
+    result.put("tags", ImmutableList.of("a", "b"));
+    return result;
+  }
+
+  private static List<String> readNdjson(File file) throws IOException {
+    try (InputStreamReader reader = new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file)), Charsets.UTF_8)) {
+      return CharStreams.readLines(reader);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+/**
+ * Unit tests for SingleFlight
+ */
+public class SingleFlightTest {
+
+  @Test
+  public void testSharedFailure() throws Exception {
+    final SingleFlight<String, String> flights = new SingleFlight<>();
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Callable<String> failing = new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        calls.incrementAndGet();
+        started.countDown();
+        release.await(5, TimeUnit.SECONDS);
+        throw new IllegalStateException("failed");
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> first = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          flights.execute("key", failing);
+        }
+      });
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Future<?> second = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          flights.execute("key", failing);
+        }
+      });
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<?> future : new Future<?>[] { first, second }) {
+        try {
+          future.get();
+          fail("Expected the shared failure");
+        } catch (ExecutionException e) {
+          assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, calls.get());
+    assertEquals(0, flights.size());
+  }
+
+  @Test
+  public void testNotCached() {
+    SingleFlight<String, Integer> flights = new SingleFlight<>();
+    final AtomicInteger calls = new AtomicInteger();
+    Callable<Integer> call = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return calls.incrementAndGet();
+      }
+    };
+    assertEquals(1, flights.execute("key", call).intValue());
+    assertEquals(2, flights.execute("key", call).intValue());
+    assertEquals(3, flights.execute("other", call).intValue());
+    assertEquals(0, flights.size());
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.Source;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for SourceCatalog
+ */
+public class SourceCatalogTest {
+
+  private static final Source HDFS = new Source("HDFS-1", SourceType.HDFS,
+      "Cluster 1", "hdfs://ns1", "src1", 7);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private AtomicInteger loads;
+  private Callable<Collection<Source>> loader;
+
+  @Before
+  public void setUp() {
+    loads = new AtomicInteger();
+    loader = new Callable<Collection<Source>>() {
+      @Override
+      public Collection<Source> call() {
+        loads.incrementAndGet();
+        return Lists.newArrayList(HDFS);
+      }
+    };
+  }
+
+  @Test
+  public void testTtl() {
+    SourceCatalog catalog = new SourceCatalog(loader, 60000L, 60000L, null);
+    SourceSnapshot snapshot = catalog.getSnapshot();
+    assertSame(snapshot, catalog.getSnapshot());
+    assertEquals(1, loads.get());
+    assertEquals(HDFS, snapshot.getSourceForUrl("hdfs://ns1"));
+    assertEquals(HDFS, Iterables.getOnlyElement(
+        snapshot.getSourcesForType(SourceType.HDFS)));
+
+    SourceCatalog expiring = new SourceCatalog(loader, 0L, 60000L, null);
+    assertNotSame(expiring.getSnapshot(), expiring.getSnapshot());
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final SourceCatalog catalog = new SourceCatalog(
+        new Callable<Collection<Source>>() {
+          @Override
+          public Collection<Source> call() throws Exception {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Lists.newArrayList(HDFS);
+          }
+        }, 60000L, 60000L, null);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<SourceSnapshot>> snapshots = Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+        snapshots.add(executor.submit(new Callable<SourceSnapshot>() {
+          @Override
+          public SourceSnapshot call() {
+            return catalog.getSnapshot();
+          }
+        }));
+      }
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      release.countDown();
+      for (Future<SourceSnapshot> snapshot : snapshots) {
+        assertSame(snapshots.get(0).get(), snapshot.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testMisses() {
+    SourceCatalog catalog = new SourceCatalog(loader, 60000L, 60000L, null);
+    SourceSnapshot snapshot = catalog.getSnapshot();
+    for (int i = 0; i < 5; i++) {
+      assertNull(catalog.getSnapshotAfterMiss("hdfs://unknown", snapshot)
+          .getSourceForUrl("hdfs://unknown"));
+    }
+    assertEquals(2, loads.get());
+    catalog.getSnapshotAfterMiss("hdfs://other", catalog.getSnapshot());
+    assertEquals(3, loads.get());
+    catalog.invalidate();
+    catalog.getSnapshotAfterMiss("hdfs://unknown", catalog.getSnapshot());
+    assertEquals(5, loads.get());
+  }
+
+  @Test
+  public void testFailedLoad() {
+    final AtomicInteger attempts = new AtomicInteger();
+    SourceCatalog catalog = new SourceCatalog(
+        new Callable<Collection<Source>>() {
+          @Override
+          public Collection<Source> call() {
+            if (attempts.incrementAndGet() == 1) {
+              throw new IllegalStateException("unavailable");
+            }
+            return Lists.newArrayList(HDFS);
+          }
+        }, 60000L, 60000L, null);
+    try {
+      catalog.getSnapshot();
+      fail("Expected the load to fail");
+    } catch (IllegalStateException e) {
+      assertEquals("unavailable", e.getMessage());
+    }
+    assertEquals(1, catalog.getSnapshot().getSources().size());
+  }
+
+  @Test
+  public void testCacheFile() throws Exception {
+    File file = new File(folder.getRoot(), "sources.json");
+    SourceCatalog catalog = new SourceCatalog(loader, 60000L, 60000L, file);
+    long loadedAt = catalog.getSnapshot().getLoadedAt();
+    assertTrue(file.exists());
+
+    SourceCatalog warm = new SourceCatalog(loader, 60000L, 60000L, file);
+    SourceSnapshot snapshot = warm.getSnapshot();
+    assertEquals(1, loads.get());
+    assertEquals(loadedAt, snapshot.getLoadedAt());
+    Source source = snapshot.getSourceForUrl("hdfs://ns1");
+    assertEquals(HDFS, source);
+    assertEquals(7, source.getSourceExtractIteration().intValue());
+
+    SourceCatalog expired = new SourceCatalog(loader, 0L, 60000L, file);
+    expired.getSnapshot();
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testUnreadableCacheFile() throws Exception {
+    File file = folder.newFile("sources.json");
+    Files.write("not json", file, Charsets.UTF_8);
+    SourceCatalog catalog = new SourceCatalog(loader, 60000L, 60000L, file);
+    assertEquals(1, catalog.getSnapshot().getSources().size());
+    assertEquals(1, loads.get());
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal in-process HTTP server that stands in for the Navigator API in
+ * tests. Responses are registered per request path and every request is
+ * recorded for later inspection.
+ */
+public class StubNavigatorServer implements Closeable {
+
+  /**
+   * Produces the response for a request to a registered path
+   */
+  public interface Responder {
+    void respond(HttpExchange exchange, byte[] requestBody) throws IOException;
+  }
+
+  /**
+   * A request received by the server
+   */
+  public static class RecordedRequest {
+    private final String method;
+    private final String path;
+    private final Headers headers;
+    private final byte[] body;
+    private final int remotePort;
+
+    RecordedRequest(HttpExchange exchange, byte[] body) {
+      this.method = exchange.getRequestMethod();
+      this.path = exchange.getRequestURI().getPath();
+      this.headers = exchange.getRequestHeaders();
+      this.body = body;
+      this.remotePort = exchange.getRemoteAddress().getPort();
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public String getHeader(String name) {
+      return headers.getFirst(name);
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getBodyString() {
+      return new String(body, Charsets.UTF_8);
+    }
+
+    /**
+     * @return client port of the connection the request was received on
+     */
+    public int getRemotePort() {
+      return remotePort;
+    }
+  }
+
+  public static final String API_PATH = "/api/v9/";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Responder> responders =
+      Collections.synchronizedMap(Maps.<String, Responder>newHashMap());
+  private final List<RecordedRequest> requests =
+      Collections.synchronizedList(Lists.<RecordedRequest>newArrayList());
+
+  public StubNavigatorServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        dispatch(exchange);
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * @return base Navigator API url served by this server
+   */
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + API_PATH;
+  }
+
+  /**
+   * Respond to requests for the given path relative to the API url
+   */
+  public void setResponder(String relativePath, Responder responder) {
+    responders.put(API_PATH + relativePath, responder);
+  }
+
+  /**
+   * Respond to requests for the given path with a fixed JSON body
+   */
+  public void setJsonResponse(String relativePath, String json) {
+    setResponder(relativePath, json(json));
+  }
+
+  public List<RecordedRequest> getRequests() {
+    synchronized (requests) {
+      return Lists.newArrayList(requests);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return a responder that always sends the given JSON body
+   */
+  public static Responder json(final String json) {
+    return new Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        send(exchange, 200, json.getBytes(Charsets.UTF_8));
+      }
+    };
+  }
+
+  /**
+   * @return a responder that sends the given JSON body gzip encoded if the
+   *         client accepts gzip
+   */
+  public static Responder gzipJson(final String json) {
+    return new Responder() {
+      @Override
+      public void respond(HttpExchange exchange, byte[] requestBody)
+          throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst(
+            "Accept-Encoding");
+        byte[] body = json.getBytes(Charsets.UTF_8);
+        if (accept != null && accept.contains("gzip")) {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body);
+          }
+          body = bytes.toByteArray();
+          exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        send(exchange, 200, body);
+      }
+    };
+  }
+
+  /**
+   * Send a complete response with a known content length so the connection
+   * can be kept alive
+   */
+  public static void send(HttpExchange exchange, int status, byte[] body)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+  }
+
+  private void dispatch(HttpExchange exchange) throws IOException {
+    byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+    requests.add(new RecordedRequest(exchange, body));
+    Responder responder = responders.get(exchange.getRequestURI().getPath());
+    if (responder == null) {
+      send(exchange, 404, new byte[0]);
+    } else {
+      responder.respond(exchange, body);
+    }
+  }
+}
@@ -15,21 +15,28 @@
  */
 package com.cloudera.nav.sdk.examples.extraction;
 
+import com.cloudera.nav.sdk.client.MetadataConsumer;
 import com.cloudera.nav.sdk.client.MetadataExtractor;
 import com.cloudera.nav.sdk.client.MetadataResultSet;
 import com.cloudera.nav.sdk.client.NavApiCient;
 import com.cloudera.nav.sdk.client.NavigatorPlugin;
+import com.cloudera.nav.sdk.model.MetadataType;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Sample program that runs incremental extraction. Includes
+ * Sample program that runs incremental extraction, extracting entities and
+ * relations concurrently. Includes
  * sample marker for string formatting, and option to read/write marker to a
  * file. Log output shows total number of entities and relations extracted, and
  * how many pages/batches of results were iterated through.
@@ -61,26 +68,29 @@ public class IncrementalExtraction {
     MetadataExtractor extractor = new MetadataExtractor(client, null);
     MetadataResultSet rs = extractor.extractMetadata(startMarker, endMarker);
 
-    // Save the marker to be used next time
-    String nextMarker = rs.getMarker();
-    try (PrintWriter markerWriter = new PrintWriter(markerWritePath, "UTF-8")) {
-      markerWriter.println(nextMarker);
+    // Extract entities and relations concurrently and process them
+    final AtomicLong totalEntities = new AtomicLong();
+    final AtomicLong totalRelations = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    String nextMarker;
+    try {
+      nextMarker = rs.consume(executor, new MetadataConsumer() {
+        @Override
+        public void accept(MetadataType type, Map<String, Object> result) {
+          processNextResult(result);
+          (type == MetadataType.ENTITIES ? totalEntities : totalRelations)
+              .incrementAndGet();
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      executor.shutdown();
     }
 
-    // Iterate through entities and relations and process them
-
-    Iterator<Map<String, Object>> entitiesIt = rs.getEntities().iterator();
-    Integer totalEntities = 0;
-    while(entitiesIt.hasNext()) {
-      processNextResult(entitiesIt.next());
-      totalEntities++;
-    }
-
-    Iterator<Map<String, Object>> relationsIt = rs.getRelations().iterator();
-    Integer totalRelations = 0;
-    while(relationsIt.hasNext()){
-      processNextResult(relationsIt.next());
-      totalRelations++;
+    // Save the marker to be used next time, once everything was processed
+    try (PrintWriter markerWriter = new PrintWriter(markerWritePath, "UTF-8")) {
+      markerWriter.println(nextMarker);
     }
 
     System.out.println("Total number of entities: " + totalEntities);
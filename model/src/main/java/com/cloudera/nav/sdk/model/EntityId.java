@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.google.common.base.Preconditions;
+
+/**
+ * Compact form of an entity or relation identity. Identities generated by
+ * MD5IdGenerator are 32 lower case hex digits and are held as two longs
+ * instead of a String. Any other identity is kept as its String.
+ *
+ * EntityIds are immutable, compare equal if their identities are equal and
+ * are ordered like their identity strings.
+ */
+public final class EntityId implements Comparable<EntityId> {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final long high;
+  private final long low;
+  private final String other;
+
+  private EntityId(long high, long low, String other) {
+    this.high = high;
+    this.low = low;
+    this.other = other;
+  }
+
+  /**
+   * @param high first 16 hex digits of the identity
+   * @param low last 16 hex digits of the identity
+   */
+  public static EntityId of(long high, long low) {
+    return new EntityId(high, low, null);
+  }
+
+  /**
+   * @param identity an identity in any format
+   * @return the compact form of MD5 identities, or an EntityId holding the
+   *         identity as is
+   */
+  @JsonCreator
+  public static EntityId parse(String identity) {
+    Preconditions.checkNotNull(identity);
+    if (identity.length() != 32) {
+      return new EntityId(0, 0, identity);
+    }
+    long high = 0;
+    long low = 0;
+    for (int i = 0; i < 32; i++) {
+      int digit = hexDigit(identity.charAt(i));
+      if (digit < 0) {
+        return new EntityId(0, 0, identity);
+      }
+      if (i < 16) {
+        high = (high << 4) | digit;
+      } else {
+        low = (low << 4) | digit;
+      }
+    }
+    return new EntityId(high, low, null);
+  }
+
+  /**
+   * @return whether the identity is held as two longs
+   */
+  public boolean isCompact() {
+    return other == null;
+  }
+
+  /**
+   * @return first 16 hex digits of a compact identity as a long
+   */
+  public long getHigh() {
+    Preconditions.checkState(other == null, "%s is not compact", other);
+    return high;
+  }
+
+  /**
+   * @return last 16 hex digits of a compact identity as a long
+   */
+  public long getLow() {
+    Preconditions.checkState(other == null, "%s is not compact", other);
+    return low;
+  }
+
+  /**
+   * @return the identity string
+   */
+  @JsonValue
+  @Override
+  public String toString() {
+    if (other != null) {
+      return other;
+    }
+    char[] chars = new char[32];
+    for (int i = 15; i >= 0; i--) {
+      chars[i] = HEX_DIGITS[(int) (high >>> ((15 - i) * 4)) & 0xf];
+      chars[i + 16] = HEX_DIGITS[(int) (low >>> ((15 - i) * 4)) & 0xf];
+    }
+    return new String(chars);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof EntityId)) {
+      return false;
+    }
+    EntityId that = (EntityId) o;
+    if (other != null || that.other != null) {
+      return other != null && other.equals(that.other);
+    }
+    return high == that.high && low == that.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return other != null ? other.hashCode() : hash(high, low);
+  }
+
+  @Override
+  public int compareTo(EntityId that) {
+    if (other == null && that.other == null) {
+      // unsigned order of the digits is the order of the hex strings
+      int cmp = compareUnsigned(high, that.high);
+      return cmp != 0 ? cmp : compareUnsigned(low, that.low);
+    }
+    return toString().compareTo(that.toString());
+  }
+
+  /**
+   * Hash of a compact identity, shared with the EntityId collections so that
+   * they can hash keys without creating EntityIds
+   */
+  static int hash(long high, long low) {
+    long h = high * 0x9E3779B97F4A7C15L + low;
+    h ^= h >>> 32;
+    h *= 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 29));
+  }
+
+  /**
+   * @return the String of a non-compact identity, null if it is compact
+   */
+  String getOther() {
+    return other;
+  }
+
+  private static int compareUnsigned(long a, long b) {
+    return Long.compare(a ^ Long.MIN_VALUE, b ^ Long.MIN_VALUE);
+  }
+
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    // upper case digits are kept as is so that the identity round trips
+    return -1;
+  }
+}
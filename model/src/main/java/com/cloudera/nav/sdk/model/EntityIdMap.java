@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A map keyed by EntityIds that holds compact keys in primitive arrays next
+ * to an array of values. Entries with keys that are not compact are kept in
+ * an ordinary map keyed by Strings. Null values are not supported.
+ *
+ * Not thread-safe.
+ */
+public class EntityIdMap<V> extends EntityIdTable {
+
+  private Object[] values;
+  private Object[] oldValues;
+  private Map<String, V> others;
+
+  public EntityIdMap() {
+    this(0);
+  }
+
+  /**
+   * @param expectedSize number of entries the map holds without growing
+   */
+  public EntityIdMap(int expectedSize) {
+    super(expectedSize);
+    this.values = new Object[capacity()];
+  }
+
+  /**
+   * @return the value of the key, or null if the map has none
+   */
+  @SuppressWarnings("unchecked")
+  public V get(EntityId key) {
+    if (!key.isCompact()) {
+      return others == null ? null : others.get(key.getOther());
+    }
+    int slot = find(key.getHigh(), key.getLow());
+    return slot < 0 ? null : (V) values[slot];
+  }
+
+  public boolean containsKey(EntityId key) {
+    return get(key) != null;
+  }
+
+  /**
+   * @return the previous value of the key, or null if it had none
+   */
+  @SuppressWarnings("unchecked")
+  public V put(EntityId key, V value) {
+    if (value == null) {
+      throw new NullPointerException("EntityIdMap does not hold null values");
+    }
+    if (!key.isCompact()) {
+      if (others == null) {
+        others = Maps.newHashMap();
+      }
+      return others.put(key.getOther(), value);
+    }
+    int slot = insert(key.getHigh(), key.getLow());
+    if (slot < 0) {
+      values[-slot - 1] = value;
+      return null;
+    }
+    V previous = (V) values[slot];
+    values[slot] = value;
+    return previous;
+  }
+
+  /**
+   * @return the removed value, or null if the key had none
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(EntityId key) {
+    if (!key.isCompact()) {
+      return others == null ? null : others.remove(key.getOther());
+    }
+    int slot = find(key.getHigh(), key.getLow());
+    if (slot < 0) {
+      return null;
+    }
+    V previous = (V) values[slot];
+    removeAt(slot);
+    return previous;
+  }
+
+  public int size() {
+    return compactSize() + (others == null ? 0 : others.size());
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public void clear() {
+    clearTable();
+    Arrays.fill(values, null);
+    others = null;
+  }
+
+  /**
+   * @return the keys in no particular order, the map must not be modified
+   *         during iteration
+   */
+  public Iterable<EntityId> keys() {
+    return new Iterable<EntityId>() {
+      @Override
+      public Iterator<EntityId> iterator() {
+        return idIterator(others == null ? null : others.keySet());
+      }
+    };
+  }
+
+  @Override
+  void resizeValues(int capacity) {
+    oldValues = values;
+    values = new Object[capacity];
+  }
+
+  @Override
+  void rehashValue(int oldSlot, int newSlot) {
+    values[newSlot] = oldValues[oldSlot];
+  }
+
+  @Override
+  void endResize() {
+    oldValues = null;
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+  @Override
+  void clearValue(int slot) {
+    values[slot] = null;
+  }
+}
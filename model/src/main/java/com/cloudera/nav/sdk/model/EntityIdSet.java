@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A set of EntityIds that holds compact ids in primitive arrays, about 17
+ * bytes per slot instead of a String and a hash set entry per id. Ids that
+ * are not compact are kept in an ordinary set of Strings.
+ *
+ * Not thread-safe.
+ */
+public class EntityIdSet extends EntityIdTable implements Iterable<EntityId> {
+
+  private Set<String> others;
+
+  public EntityIdSet() {
+    this(0);
+  }
+
+  /**
+   * @param expectedSize number of ids the set holds without growing
+   */
+  public EntityIdSet(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /**
+   * @return true if the set did not contain the id yet
+   */
+  public boolean add(EntityId id) {
+    if (!id.isCompact()) {
+      if (others == null) {
+        others = Sets.newHashSet();
+      }
+      return others.add(id.getOther());
+    }
+    return insert(id.getHigh(), id.getLow()) < 0;
+  }
+
+  /**
+   * Same as {@code add(EntityId.parse(identity))}
+   */
+  public boolean add(String identity) {
+    return add(EntityId.parse(identity));
+  }
+
+  public boolean contains(EntityId id) {
+    if (!id.isCompact()) {
+      return others != null && others.contains(id.getOther());
+    }
+    return find(id.getHigh(), id.getLow()) >= 0;
+  }
+
+  /**
+   * @return true if the set contained the id
+   */
+  public boolean remove(EntityId id) {
+    if (!id.isCompact()) {
+      return others != null && others.remove(id.getOther());
+    }
+    int slot = find(id.getHigh(), id.getLow());
+    if (slot < 0) {
+      return false;
+    }
+    removeAt(slot);
+    return true;
+  }
+
+  public int size() {
+    return compactSize() + (others == null ? 0 : others.size());
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public void clear() {
+    clearTable();
+    others = null;
+  }
+
+  /**
+   * Iterate over the ids in no particular order. The set must not be
+   * modified during iteration.
+   */
+  @Override
+  public Iterator<EntityId> iterator() {
+    return idIterator(others);
+  }
+
+  @Override
+  void resizeValues(int capacity) {
+  }
+
+  @Override
+  void rehashValue(int oldSlot, int newSlot) {
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+  }
+
+  @Override
+  void clearValue(int slot) {
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Open addressing hash table of compact EntityIds held in parallel long
+ * arrays, the common part of EntityIdSet and EntityIdMap. Collisions are
+ * resolved by linear probing, and removal shifts later entries of the probe
+ * sequence back so that no tombstones are needed. Subclasses keep values in
+ * arrays parallel to the slots and are told when entries move.
+ *
+ * Not thread-safe.
+ */
+abstract class EntityIdTable {
+
+  private static final int MIN_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private long[] highs;
+  private long[] lows;
+  private boolean[] used;
+  private int mask;
+  private int count;
+  private int threshold;
+
+  EntityIdTable(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0,
+        "expectedSize must not be negative");
+    allocate(capacityFor(expectedSize));
+  }
+
+  /**
+   * @return number of compact ids in the table
+   */
+  int compactSize() {
+    return count;
+  }
+
+  int capacity() {
+    return used.length;
+  }
+
+  /**
+   * @return slot of the id, or -1 if it is not in the table
+   */
+  int find(long high, long low) {
+    int slot = EntityId.hash(high, low) & mask;
+    while (used[slot]) {
+      if (highs[slot] == high && lows[slot] == low) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Add the id if it is not in the table yet
+   *
+   * @return slot of the id, or -(slot + 1) if it was added
+   */
+  int insert(long high, long low) {
+    int slot = EntityId.hash(high, low) & mask;
+    while (used[slot]) {
+      if (highs[slot] == high && lows[slot] == low) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (count >= threshold) {
+      grow();
+      return insert(high, low);
+    }
+    used[slot] = true;
+    highs[slot] = high;
+    lows[slot] = low;
+    count++;
+    return -(slot + 1);
+  }
+
+  /**
+   * Remove the entry in the given slot, moving later entries of its probe
+   * sequence into the gap
+   */
+  void removeAt(int slot) {
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (used[next]) {
+      int home = EntityId.hash(highs[next], lows[next]) & mask;
+      // move the entry if the gap lies between its home slot and its slot
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        highs[gap] = highs[next];
+        lows[gap] = lows[next];
+        moveValue(next, gap);
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    used[gap] = false;
+    clearValue(gap);
+    count--;
+  }
+
+  void clearTable() {
+    Arrays.fill(used, false);
+    count = 0;
+  }
+
+  /**
+   * Allocate value arrays of the given capacity, keeping the current ones
+   * until {@link #rehashValue} has been called for every entry
+   */
+  abstract void resizeValues(int capacity);
+
+  /**
+   * Called once all entries have been rehashed into the new slots
+   */
+  void endResize() {
+  }
+
+  abstract void rehashValue(int oldSlot, int newSlot);
+
+  abstract void moveValue(int from, int to);
+
+  abstract void clearValue(int slot);
+
+  /**
+   * Iterate over the compact ids in slot order followed by the given ids
+   * that are not compact
+   *
+   * @param others identities of the ids that are not compact, or null
+   */
+  Iterator<EntityId> idIterator(Collection<String> others) {
+    Iterator<EntityId> compact = new AbstractIterator<EntityId>() {
+      private int slot = -1;
+
+      @Override
+      protected EntityId computeNext() {
+        while (++slot < used.length) {
+          if (used[slot]) {
+            return EntityId.of(highs[slot], lows[slot]);
+          }
+        }
+        return endOfData();
+      }
+    };
+    if (others == null) {
+      return compact;
+    }
+    return Iterators.concat(compact, Iterators.transform(others.iterator(),
+        new Function<String, EntityId>() {
+          @Override
+          public EntityId apply(String identity) {
+            return EntityId.parse(identity);
+          }
+        }));
+  }
+
+  private void grow() {
+    long[] oldHighs = highs;
+    long[] oldLows = lows;
+    boolean[] oldUsed = used;
+    allocate(oldUsed.length * 2);
+    resizeValues(oldUsed.length * 2);
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = EntityId.hash(oldHighs[i], oldLows[i]) & mask;
+        while (used[slot]) {
+          slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        highs[slot] = oldHighs[i];
+        lows[slot] = oldLows[i];
+        rehashValue(i, slot);
+      }
+    }
+    endResize();
+  }
+
+  private void allocate(int capacity) {
+    highs = new long[capacity];
+    lows = new long[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+}
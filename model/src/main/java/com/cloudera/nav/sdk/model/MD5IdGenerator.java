@@ -20,6 +20,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
+import java.nio.ByteBuffer;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -43,6 +44,16 @@ public class MD5IdGenerator {
     return h.getIdentity();
   }
 
+  /**
+   * Same as {@link #generateIdentity(String...)} but returns the compact
+   * form of the identity
+   */
+  public static EntityId generateEntityId(String... args) {
+    MD5IdGenerator h = new MD5IdGenerator();
+    h.update(args);
+    return h.getEntityId();
+  }
+
   public static boolean isValidId(String id) {
     return !StringUtils.isEmpty(id) && MD5_PATTERN.matcher(id).matches();
   }
@@ -79,4 +90,12 @@ public class MD5IdGenerator {
     return hasher.hash().toString();
   }
 
+  /**
+   * @return the identity as an EntityId, without formatting it as a String
+   */
+  public EntityId getEntityId() {
+    ByteBuffer bytes = ByteBuffer.wrap(hasher.hash().asBytes());
+    return EntityId.of(bytes.getLong(), bytes.getLong());
+  }
+
 }
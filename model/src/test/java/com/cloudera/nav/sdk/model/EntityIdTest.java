@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests for EntityId and the collections keyed by it
+ */
+public class EntityIdTest {
+
+  @Test
+  public void testParseAndFormat() {
+    String identity = MD5IdGenerator.generateIdentity("foo", "bar");
+    EntityId id = EntityId.parse(identity);
+    assertTrue(id.isCompact());
+    assertEquals(identity, id.toString());
+    assertEquals(MD5IdGenerator.generateEntityId("foo", "bar"), id);
+    assertEquals(id.hashCode(), EntityId.parse(identity).hashCode());
+
+    EntityId max = EntityId.parse("ffffffffffffffff0000000000000001");
+    assertEquals(-1L, max.getHigh());
+    assertEquals(1L, max.getLow());
+    assertEquals("ffffffffffffffff0000000000000001", max.toString());
+  }
+
+  @Test
+  public void testNonCompact() {
+    for (String identity : Lists.newArrayList("12345", "",
+        "ABCDEF0123456789ABCDEF0123456789", "g0000000000000000000000000000000")) {
+      EntityId id = EntityId.parse(identity);
+      assertFalse(id.isCompact());
+      assertEquals(identity, id.toString());
+      assertEquals(EntityId.parse(identity), id);
+    }
+    assertNotEquals(EntityId.parse("abcdef0123456789abcdef0123456789"),
+        EntityId.parse("ABCDEF0123456789ABCDEF0123456789"));
+  }
+
+  @Test
+  public void testOrderMatchesStrings() {
+    List<String> identities = Lists.newArrayList("12345",
+        "0000000000000000ffffffffffffffff", "8000000000000000000000000000000a",
+        "7fffffffffffffff0000000000000000", "zzz");
+    List<EntityId> ids = Lists.newArrayList();
+    for (String identity : identities) {
+      ids.add(EntityId.parse(identity));
+    }
+    Collections.sort(identities);
+    Collections.sort(ids);
+    for (int i = 0; i < ids.size(); i++) {
+      assertEquals(identities.get(i), ids.get(i).toString());
+    }
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    EntityId id = MD5IdGenerator.generateEntityId("foo");
+    String json = mapper.writeValueAsString(id);
+    assertEquals("\"" + id + "\"", json);
+    assertEquals(id, mapper.readValue(json, EntityId.class));
+  }
+
+  @Test
+  public void testSet() {
+    EntityIdSet set = new EntityIdSet();
+    Set<EntityId> expected = Sets.newHashSet();
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      EntityId id = EntityId.of(random.nextInt(100), random.nextInt(100));
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(id), set.remove(id));
+      } else {
+        assertEquals(expected.add(id), set.add(id));
+      }
+    }
+    assertTrue(set.add("custom-id"));
+    assertFalse(set.add("custom-id"));
+    expected.add(EntityId.parse("custom-id"));
+    assertEquals(expected.size(), set.size());
+    for (EntityId id : expected) {
+      assertTrue(set.contains(id));
+    }
+    assertEquals(expected, Sets.newHashSet(set));
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertFalse(set.iterator().hasNext());
+  }
+
+  @Test
+  public void testMap() {
+    EntityIdMap<Integer> map = new EntityIdMap<>(4);
+    Map<EntityId, Integer> expected = Maps.newHashMap();
+    Random random = new Random(7);
+    for (int i = 0; i < 10000; i++) {
+      EntityId id = EntityId.of(random.nextInt(50), random.nextInt(50));
+      if (random.nextInt(3) == 0) {
+        assertEquals(expected.remove(id), map.remove(id));
+      } else {
+        assertEquals(expected.put(id, i), map.put(id, i));
+      }
+    }
+    EntityId custom = EntityId.parse("custom-id");
+    map.put(custom, -1);
+    expected.put(custom, -1);
+    assertEquals(expected.size(), map.size());
+    for (Map.Entry<EntityId, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+    assertEquals(expected.keySet(), Sets.newHashSet(map.keys()));
+    assertNull(map.get(EntityId.of(1000, 1000)));
+    assertEquals(Integer.valueOf(-1), map.remove(custom));
+    assertFalse(map.containsKey(custom));
+  }
+}